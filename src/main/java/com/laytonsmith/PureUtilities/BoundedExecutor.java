@@ -0,0 +1,264 @@
+package com.laytonsmith.PureUtilities;
+
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread pool with a fixed maximum number of threads and, optionally, a maximum
+ * number of waiting tasks. Idle threads are stopped after a few seconds, so an idle
+ * pool doesn't hold any threads. If both the threads and the queue are full, the task
+ * is rejected with a RejectedExecutionException. It is never run by the thread that
+ * submitted it, since that may well be a thread that must not block, such as the
+ * server thread.
+ * <p>
+ * The pool keeps track of how long the most recent tasks took from being submitted to
+ * being finished, see {@link #getStats()}.
+ * @author lsmith
+ */
+public class BoundedExecutor extends ThreadPoolExecutor {
+
+	/**
+	 * The number of task latencies that are kept for the percentiles.
+	 */
+	private static final int LATENCY_SAMPLES = 1024;
+	private final long[] latencies = new long[LATENCY_SAMPLES];
+	private int latencyCount = 0;
+	private int latencyPos = 0;
+	private final AtomicLong submitted = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * Creates a new pool.
+	 * @param threads The maximum number of threads
+	 * @param queueSize The maximum number of tasks that may wait for a thread, or 0
+	 * for no limit.
+	 * @param threadFactory The factory that creates the threads
+	 */
+	public BoundedExecutor(int threads, int queueSize, ThreadFactory threadFactory){
+		super(Math.max(threads, 1), Math.max(threads, 1), 5L, TimeUnit.SECONDS, CreateQueue(queueSize), threadFactory);
+		allowCoreThreadTimeOut(true);
+		setRejectedExecutionHandler(new RejectedExecutionHandler() {
+
+			public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+				if(executor.isShutdown()){
+					throw new RejectedExecutionException("The pool has been shut down");
+				}
+				rejected.incrementAndGet();
+				throw new RejectedExecutionException("All " + executor.getMaximumPoolSize() + " threads are busy, and "
+						+ executor.getQueue().size() + " tasks are already waiting for them");
+			}
+		});
+	}
+
+	private static BlockingQueue<Runnable> CreateQueue(int queueSize){
+		if(queueSize <= 0){
+			return new LinkedBlockingQueue<Runnable>();
+		} else {
+			return new LinkedBlockingQueue<Runnable>(queueSize);
+		}
+	}
+
+	/**
+	 * Changes the maximum number of threads. Tasks that are already running
+	 * are not affected.
+	 * @param threads
+	 */
+	public void setParallelism(int threads){
+		threads = Math.max(threads, 1);
+		//The core size may not be larger than the maximum size, so the order matters
+		if(threads > getMaximumPoolSize()){
+			setMaximumPoolSize(threads);
+			setCorePoolSize(threads);
+		} else {
+			setCorePoolSize(threads);
+			setMaximumPoolSize(threads);
+		}
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		if(command == null){
+			throw new NullPointerException();
+		}
+		submitted.incrementAndGet();
+		super.execute(new TimedTask(command));
+	}
+
+	/**
+	 * Stops accepting new tasks, and waits for the tasks that were already submitted,
+	 * including the ones that are still waiting for a thread, to finish.
+	 * @param timeout The maximum time to wait
+	 * @param unit The unit of the timeout
+	 * @return True if all the tasks finished, false if the timeout elapsed first
+	 * @throws InterruptedException
+	 */
+	public boolean drain(long timeout, TimeUnit unit) throws InterruptedException {
+		shutdown();
+		return awaitTermination(timeout, unit);
+	}
+
+	private synchronized void recordLatency(long nanos){
+		latencies[latencyPos] = nanos;
+		latencyPos = (latencyPos + 1) % LATENCY_SAMPLES;
+		if(latencyCount < LATENCY_SAMPLES){
+			latencyCount++;
+		}
+	}
+
+	/**
+	 * Returns the number of tasks that were rejected, because the pool was full.
+	 * This is cheaper than {@link #getStats()}.
+	 * @return
+	 */
+	public long getRejectedCount(){
+		return rejected.get();
+	}
+
+	/**
+	 * Returns a snapshot of the current state of the pool.
+	 * @return
+	 */
+	public Stats getStats(){
+		long[] sorted;
+		synchronized(this){
+			sorted = Arrays.copyOf(latencies, latencyCount);
+		}
+		Arrays.sort(sorted);
+		return new Stats(getQueue().size(), getActiveCount(), getPoolSize(), getMaximumPoolSize(),
+				submitted.get(), getCompletedTaskCount(), rejected.get(),
+				Percentile(sorted, 50), Percentile(sorted, 95), Percentile(sorted, 99));
+	}
+
+	private static double Percentile(long[] sorted, int percentile){
+		if(sorted.length == 0){
+			return 0;
+		}
+		int index = (int)Math.ceil(percentile / 100.0 * sorted.length) - 1;
+		return sorted[Math.max(index, 0)] / 1000000.0;
+	}
+
+	private final class TimedTask implements Runnable {
+
+		private final Runnable task;
+		private final long submittedAt = System.nanoTime();
+
+		private TimedTask(Runnable task){
+			this.task = task;
+		}
+
+		public void run() {
+			try{
+				task.run();
+			} finally {
+				recordLatency(System.nanoTime() - submittedAt);
+			}
+		}
+	}
+
+	/**
+	 * The state of a pool at some point in time. Latencies are the time from when
+	 * a task was submitted to when it finished, in milliseconds, over the most
+	 * recent tasks.
+	 */
+	public static final class Stats {
+
+		private final int queueDepth;
+		private final int activeThreads;
+		private final int threads;
+		private final int maxThreads;
+		private final long submitted;
+		private final long completed;
+		private final long rejected;
+		private final double p50;
+		private final double p95;
+		private final double p99;
+
+		private Stats(int queueDepth, int activeThreads, int threads, int maxThreads, long submitted,
+				long completed, long rejected, double p50, double p95, double p99){
+			this.queueDepth = queueDepth;
+			this.activeThreads = activeThreads;
+			this.threads = threads;
+			this.maxThreads = maxThreads;
+			this.submitted = submitted;
+			this.completed = completed;
+			this.rejected = rejected;
+			this.p50 = p50;
+			this.p95 = p95;
+			this.p99 = p99;
+		}
+
+		/**
+		 * The number of tasks waiting for a thread.
+		 * @return
+		 */
+		public int getQueueDepth(){
+			return queueDepth;
+		}
+
+		/**
+		 * The number of threads that are running a task.
+		 * @return
+		 */
+		public int getActiveThreads(){
+			return activeThreads;
+		}
+
+		/**
+		 * The number of threads in the pool, including idle ones.
+		 * @return
+		 */
+		public int getThreads(){
+			return threads;
+		}
+
+		public int getMaxThreads(){
+			return maxThreads;
+		}
+
+		public long getSubmitted(){
+			return submitted;
+		}
+
+		/**
+		 * The number of tasks that were run by a pool thread and have finished.
+		 * @return
+		 */
+		public long getCompleted(){
+			return completed;
+		}
+
+		/**
+		 * The number of tasks that were rejected, because the pool was full.
+		 * @return
+		 */
+		public long getRejected(){
+			return rejected;
+		}
+
+		public double getLatencyP50(){
+			return p50;
+		}
+
+		public double getLatencyP95(){
+			return p95;
+		}
+
+		public double getLatencyP99(){
+			return p99;
+		}
+
+		@Override
+		public String toString() {
+			return "queued=" + queueDepth + ", active=" + activeThreads + ", threads=" + threads + "/" + maxThreads
+					+ ", submitted=" + submitted + ", completed=" + completed + ", rejected=" + rejected
+					+ String.format(", latency p50=%.1fms p95=%.1fms p99=%.1fms", p50, p95, p99);
+		}
+	}
+}
@@ -7,10 +7,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -18,11 +16,21 @@ import java.util.concurrent.TimeUnit;
  * is guaranteed to be sequential with respect to other tasks in that
  * queue, but not necessarily with respect to other tasks on other queues.
  * Tasks will block the queue.
+ * <p>
+ * Each running queue uses a thread from a shared pool, and at most {@link #setParallelism(int)}
+ * queues run at once. If there are more queues with tasks than that, the extra queues wait
+ * until another queue is done.
  * @author lsmith
  */
 public class ExecutionQueue {
 	
-	private ExecutorService service;
+	/**
+	 * The number of queues that may run at once, unless otherwise specified.
+	 */
+	public static final int DEFAULT_PARALLELISM = 16;
+	private volatile BoundedExecutor service;
+	private final ThreadFactory threadFactory;
+	private int parallelism = DEFAULT_PARALLELISM;
 	private static int threadCount = 0;
 	private Map<String, Deque<Runnable>> queues;
 	private final Map<String, Object> locks;
@@ -44,7 +52,7 @@ public class ExecutionQueue {
 		if(threadPrefix == null || defaultQueueName == null){
 			throw new NullPointerException();
 		}
-		ThreadFactory threadFactory = new ThreadFactory() {
+		threadFactory = new ThreadFactory() {
 
 			public Thread newThread(Runnable r) {
 				Thread t = new Thread(r, threadPrefix + "-" + (++threadCount));
@@ -63,10 +71,7 @@ public class ExecutionQueue {
 				return t;
 			}
 		};
-		service = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
-                                      5L, TimeUnit.SECONDS,
-                                      new SynchronousQueue<Runnable>(),
-                                      threadFactory);
+		service = newService();
 		queues = new HashMap<String, Deque<Runnable>>();
 		this.defaultQueueName = defaultQueueName;
 		locks = new HashMap<String, Object>();
@@ -164,7 +169,7 @@ public class ExecutionQueue {
 		List<String> q = new ArrayList<String>();
 		for(String queue : queues.keySet()){
 			synchronized(locks.get(queue)){
-				if(queues.containsKey(queue) && queues.get(queue).equals(true)){
+				if(runningQueues.containsKey(queue) && runningQueues.get(queue).equals(true)){
 					q.add(queue);
 				}
 			}
@@ -172,6 +177,51 @@ public class ExecutionQueue {
 		return q;
 	}
 	
+	/**
+	 * Sets the number of queues that may run at once.
+	 * @param parallelism 
+	 */
+	public synchronized void setParallelism(int parallelism){
+		this.parallelism = parallelism;
+		service.setParallelism(parallelism);
+	}
+	
+	/**
+	 * Returns the current state of the thread pool that runs the queues.
+	 * @return 
+	 */
+	public BoundedExecutor.Stats getStats(){
+		return service.getStats();
+	}
+	
+	/**
+	 * Stops accepting new tasks, and waits for the tasks that are already on
+	 * the queues to finish. While this is waiting, pushing a task onto a queue
+	 * that isn't already running throws a RejectedExecutionException. Once it
+	 * returns, the queues use a new pool, so they may be used again, for instance
+	 * after the plugin is enabled again. If the timeout elapsed, the tasks that
+	 * were still running are left to finish on the old pool.
+	 * @param timeout The maximum time to wait
+	 * @param unit The unit of the timeout
+	 * @return True if all the queues finished, false if the timeout elapsed first
+	 * @throws InterruptedException 
+	 */
+	public boolean drain(long timeout, TimeUnit unit) throws InterruptedException {
+		try{
+			return service.drain(timeout, unit);
+		} finally {
+			synchronized(this){
+				service = newService();
+			}
+		}
+	}
+	
+	private synchronized BoundedExecutor newService(){
+		//A queue that is waiting for a thread must never run in the thread that pushed
+		//the task, so the wait list isn't bounded. Its size is bounded by the number of queues anyways.
+		return new BoundedExecutor(parallelism, 0, threadFactory);
+	}
+	
 	/**
 	 * Sets up a queue initially
 	 * @param queueName 
@@ -230,12 +280,19 @@ public class ExecutionQueue {
 			if(!isRunning(queue)){
 				//We need to create a new thread
 				runningQueues.put(queue, true);
-				service.submit(new Runnable() {
+				try{
+					service.submit(new Runnable() {
 
-					public void run() {
-						pumpQueue(queue);
-					}
-				});
+						public void run() {
+							pumpQueue(queue);
+						}
+					});
+				} catch(RejectedExecutionException e){
+					//We've been drained, so this queue will never run
+					runningQueues.put(queue, false);
+					queues.remove(queue);
+					throw e;
+				}
 			}
 		}
 	}
@@ -1,6 +1,7 @@
 
 package com.laytonsmith.PureUtilities;
 
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.List;
 import java.util.Map;
@@ -39,8 +40,9 @@ public interface Persistance {
      * @param key The key for this particular value
      * @param value The value to store. If value is null, the key is simply removed.
      * @return The object that was in this key, or null if the value did not exist.
+     * @throws IOException If the value is saved right away, and the save failed
      */
-    public String setValue(String[] key, String value);
+    public String setValue(String[] key, String value) throws IOException;
     
     /**
      * Returns the value of a particular key
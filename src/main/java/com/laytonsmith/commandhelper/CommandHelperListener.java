@@ -31,17 +31,22 @@ import com.laytonsmith.core.events.EventUtils;
 import com.laytonsmith.core.exceptions.ConfigRuntimeException;
 import com.sk89q.worldguard.bukkit.WorldGuardPlayerListener;
 import com.sk89q.worldguard.bukkit.WorldGuardPlugin;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
 import org.bukkit.event.player.PlayerCommandPreprocessEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerLoginEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.event.server.PluginEnableEvent;
 
 /**
  * Event listener for Hey0's server mod.
@@ -60,6 +65,32 @@ public class CommandHelperListener implements Listener {
      */
     private AliasCore ac;
     private CommandHelperPlugin plugin;
+    /**
+     * The command contexts of the online players, by name.
+     */
+    private final Map<String, CommandContext> contexts = new HashMap<String, CommandContext>();
+    /**
+     * WorldGuard's command listener, or null if WorldGuard isn't installed. This only
+     * changes when plugins are enabled or disabled.
+     */
+    private WorldGuardPlayerListener worldGuardListener = null;
+    private boolean worldGuardResolved = false;
+
+    /**
+     * The things each command from a player needs, which are set up when the player
+     * joins, and thrown away when they quit, instead of being looked up for every command.
+     */
+    private static final class CommandContext {
+        private final Player handle;
+        private final MCPlayer player;
+        private final UserManager userManager;
+
+        private CommandContext(Player handle) {
+            this.handle = handle;
+            this.player = new BukkitMCPlayer(handle);
+            this.userManager = UserManager.GetUserManager(handle.getName());
+        }
+    }
 
     public CommandHelperListener(CommandHelperPlugin plugin) {
         this.plugin = plugin;
@@ -85,7 +116,41 @@ public class CommandHelperListener implements Listener {
         return CommandHelperPlugin.getCore().alias(command, player, scripts);
     }
 
-        
+    /**
+     * Returns the player's command context, creating it if they don't have one yet,
+     * for instance if they were already online when the plugin was loaded.
+     *
+     * @param p
+     * @return
+     */
+    private CommandContext getContext(Player p) {
+        CommandContext context = contexts.get(p.getName());
+        if (context == null || context.handle != p) {
+            context = new CommandContext(p);
+            contexts.put(p.getName(), context);
+        }
+        return context;
+    }
+
+    private WorldGuardPlayerListener getWorldGuardListener() {
+        if (!worldGuardResolved) {
+            WorldGuardPlugin wgp = Static.getWorldGuardPlugin(Target.UNKNOWN);
+            worldGuardListener = wgp == null ? null : new WorldGuardPlayerListener(wgp);
+            worldGuardResolved = true;
+        }
+        return worldGuardListener;
+    }
+
+    /**
+     * Called when the set of plugins changes, since that is the only time that the
+     * WorldGuard hook or the play dirty listeners need to be looked up again.
+     */
+    private void pluginsChanged() {
+        worldGuardResolved = false;
+        worldGuardListener = null;
+        Static.PlayDirty();
+    }
+
 
     /**
      * Called when a player attempts to use a command
@@ -94,8 +159,9 @@ public class CommandHelperListener implements Listener {
      */
     @EventHandler(priority= EventPriority.LOWEST)
     public void onPlayerCommandPreprocess(PlayerCommandPreprocessEvent event) {     
+        CommandContext context = getContext(event.getPlayer());
         if(CommandHelperPlugin.self.interpreterListener
-                .isInInterpreterMode(new BukkitMCPlayer(event.getPlayer()))){
+                .isInInterpreterMode(context.player)){
             //They are in interpreter mode, so we want it to handle this, not everything else.
             return;
         }
@@ -106,21 +172,19 @@ public class CommandHelperListener implements Listener {
         }
         
         if (Implementation.GetServerType() == Implementation.Type.BUKKIT) {
-            WorldGuardPlugin wgp = Static.getWorldGuardPlugin(Target.UNKNOWN);
+            WorldGuardPlayerListener wgpl = getWorldGuardListener();
             //This will cancel the command if the player isn't supposed to run it in this region
-            if(wgp != null){
-                WorldGuardPlayerListener wgpl = new WorldGuardPlayerListener(wgp);
+            if(wgpl != null){
                 wgpl.onPlayerCommandPreprocess(event);
             }
         }
         String cmd = event.getMessage();        
-        MCPlayer player = new BukkitMCPlayer(event.getPlayer());
-        Static.PlayDirty();
+        MCPlayer player = context.player;
         if (cmd.equals("/.") || cmd.equals("/repeat")) {
             return;
         }
         
-        UserManager.GetUserManager(player.getName()).setLastCommand(cmd);
+        context.userManager.setLastCommand(cmd);
 
         if (!Prefs.PlayDirty()) {
             if (event.isCancelled()) {
@@ -129,7 +193,7 @@ public class CommandHelperListener implements Listener {
         } //If we are playing dirty, ignore the cancelled flag
 
         try {
-            if (runAlias(event.getMessage(), player)) {
+            if (CommandHelperPlugin.getCore().alias(cmd, player, context.userManager.getAllScripts())) {
                 event.setCancelled(true);
                 if(Prefs.PlayDirty()){
                     //Super cancel the event
@@ -157,11 +221,28 @@ public class CommandHelperListener implements Listener {
     public void onPlayerQuit(PlayerQuitEvent event) {
         Player player = event.getPlayer();
         UserManager.ClearUser(player.getName());
+        PermissionCache.Invalidate(player.getName());
+        contexts.remove(player.getName());
+    }
+
+    @EventHandler(priority= EventPriority.NORMAL)
+    public void onPlayerChangedWorld(PlayerChangedWorldEvent event) {
+        PermissionCache.Invalidate(event.getPlayer().getName());
     }
 
     @EventHandler(priority= EventPriority.NORMAL)
     public void onPlayerJoin(PlayerJoinEvent event) {
-        Static.HostnameCache(new BukkitMCPlayer(event.getPlayer()));
+        Static.HostnameCache(getContext(event.getPlayer()).player);
+    }
+
+    @EventHandler(priority= EventPriority.MONITOR)
+    public void onPluginEnable(PluginEnableEvent event) {
+        pluginsChanged();
+    }
+
+    @EventHandler(priority= EventPriority.MONITOR)
+    public void onPluginDisable(PluginDisableEvent event) {
+        pluginsChanged();
     }
     
     @EventHandler(priority= EventPriority.NORMAL)
@@ -25,6 +25,7 @@ import com.laytonsmith.abstraction.bukkit.BukkitMCPlayer;
 import com.laytonsmith.core.*;
 import com.laytonsmith.core.events.EventList;
 import com.laytonsmith.core.exceptions.ConfigCompileException;
+import com.laytonsmith.database.ConnectionPool;
 import com.laytonsmith.persistance.DataSourceException;
 import com.laytonsmith.persistance.SerializedPersistance;
 import com.sk89q.wepif.PermissionsResolverManager;
@@ -38,6 +39,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.bukkit.command.Command;
@@ -73,6 +75,10 @@ public class CommandHelperPlugin extends JavaPlugin {
 		}
 	};
 	public final ExecutionQueue executionQueue = new ExecutionQueue("CommandHelper", "default", uncaughtExceptionHandler);
+	/**
+	 * How long to wait for queued tasks to finish when the plugin is disabled, in ms.
+	 */
+	private static final long SHUTDOWN_TIMEOUT = 5000;
 	/**
 	 * Listener for the plugin system.
 	 */
@@ -121,6 +127,10 @@ public class CommandHelperPlugin extends JavaPlugin {
 			//some information from them.
 			File prefsFile = new File("plugins/CommandHelper/preferences.txt");
 			Prefs.init(prefsFile);
+			executionQueue.setParallelism(Prefs.UserlandThreads());
+			if (Static.persist != null) {
+				Static.persist.setWriteBehind(Prefs.PersistanceWriteBehindInterval(), Prefs.PersistanceWriteBehindThreshold());
+			}
 			if (Prefs.UseColors()) {
 				TermColors.EnableColors();
 			} else {
@@ -179,13 +189,31 @@ public class CommandHelperPlugin extends JavaPlugin {
 	 */
 	@Override
 	public void onDisable() {
-		//free up some memory
+		//Let the tasks that are already queued finish, then free up some memory
 		stopExecutionQueue();
+		try {
+			Threader.Shutdown(SHUTDOWN_TIMEOUT);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		if (Static.persist != null) {
+			//Write out anything the write behind thread hasn't gotten to yet
+			Static.persist.close();
+		}
+		ConnectionPool.CloseAll();
 		ac = null;
 		wep = null;
 	}
 
 	public void stopExecutionQueue() {
+		try {
+			if (executionQueue.drain(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				return;
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		Static.getLogger().warning("The execution queues didn't finish in time, the remaining tasks are being discarded.");
 		for (String queue : executionQueue.activeQueues()) {
 			executionQueue.clear(queue);
 		}
@@ -214,7 +242,8 @@ public class CommandHelperPlugin extends JavaPlugin {
 			if (sender instanceof Player) {
 				player = new BukkitMCPlayer((Player) sender);
 			}
-			ac.reload(player);
+			//With incremental reloads on, the scripts are compiled in the background, so the server doesn't freeze
+			ac.reload(player, true);
 //            if(ac.reload(player)){
 //                if(sender instanceof Player){
 //                    Static.SendMessage(player, MCChatColor.GOLD + "Command Helper scripts sucessfully recompiled.");
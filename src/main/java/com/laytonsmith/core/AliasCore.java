@@ -1,9 +1,11 @@
 package com.laytonsmith.core;
 
+import com.laytonsmith.PureUtilities.BoundedExecutor;
 import com.laytonsmith.PureUtilities.TermColors;
 import com.laytonsmith.abstraction.MCChatColor;
 import com.laytonsmith.abstraction.MCCommandSender;
 import com.laytonsmith.abstraction.MCPlayer;
+import com.laytonsmith.abstraction.StaticLayer;
 import com.laytonsmith.commandhelper.CommandHelperPlugin;
 import com.laytonsmith.core.constructs.Target;
 import com.laytonsmith.core.events.EventUtils;
@@ -16,6 +18,11 @@ import com.sk89q.util.StringUtil;
 import com.sk89q.wepif.PermissionsResolverManager;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
@@ -36,12 +43,30 @@ public class AliasCore {
 	private File prefFile;
 	private File mainFile;
 	//AliasConfig config;
-	private List<Script> scripts;
+	private List<Script> scripts = new ArrayList<Script>();
+	private AliasRouter router = new AliasRouter(scripts, false);
 	static final Logger logger = Logger.getLogger("Minecraft");
 	private Set<String> echoCommand = new HashSet<String>();
 	private PermissionsResolverManager perms;
 	public List<File> autoIncludes;
 	public static CommandHelperPlugin parent;
+	private static final String BAD_PATH = "[CommandHelper]: Path to config file is not correct/accessable. Please"
+		+ " check the location and try loading the plugin again.";
+	/**
+	 * The compiled files from the last reload, for incremental reloads.
+	 */
+	private final CompileCache compileCache = new CompileCache();
+	/**
+	 * True while a reload is loading the script files, so only one reload
+	 * loads them at a time.
+	 */
+	private final AtomicBoolean reloading = new AtomicBoolean(false);
+	/**
+	 * Incremented each time a reload is requested. A background reload only
+	 * applies the scripts it loaded if no other reload was requested since,
+	 * otherwise it loads them again.
+	 */
+	private final AtomicInteger reloadGeneration = new AtomicInteger(0);
 
 	/**
 	 * This constructor accepts the configuration settings for the plugin,
@@ -99,7 +124,7 @@ public class AliasCore {
 			}
 
 			//Global aliases override personal ones, so check the list first
-			for (Script s : scripts) {
+			for (Script s : router.getCandidates(command)) {
 				try {
 					if (s.match(command)) {
 						this.addPlayerReference(player);
@@ -170,7 +195,9 @@ public class AliasCore {
 						//RunnableAlias b = ac.getRunnableAliases(command, player);
 						try {
 
-							ac.compile();
+							if (!ac.hasBeenCompiled) {
+								ac.compile();
+							}
 
 							if (ac.match(command)) {
 								Static.getAliasCore().addPlayerReference(player);
@@ -225,12 +252,26 @@ public class AliasCore {
 	 * compile errors, otherwise, null.
 	 */
 	public final void reload(MCPlayer player) {
+		reload(player, false);
+	}
+
+	/**
+	 * Loads the scripts in from the file system. If the incremental-reload
+	 * preference is set, only the files that changed since the last reload
+	 * are compiled again, on several threads, and if background is true,
+	 * the files are read and compiled on a separate thread, so this returns
+	 * right away. Only the switch to the new scripts then happens on the
+	 * server thread. If a reload is requested while a background reload is
+	 * still loading, it doesn't wait for it, but the background reload loads
+	 * the files again before switching to them.
+	 *
+	 * @param player The player that is reloading the scripts, who will see
+	 * the compile errors, or null.
+	 * @param background
+	 */
+	public final void reload(final MCPlayer player, boolean background) {
 		try {
 			CHLog.Log(CHLog.Tags.GENERAL, CHLog.Level.VERBOSE, "Scripts reloading...", Target.UNKNOWN);
-			Globals.clear();
-			Scheduling.ClearScheduledRunners();
-			EventUtils.UnregisterAll();
-			IncludeCache.clearCache(); //Clear the include cache, so it re-pulls files
 			if (!aliasConfig.exists()) {
 				aliasConfig.getParentFile().mkdirs();
 				aliasConfig.createNewFile();
@@ -258,34 +299,177 @@ public class AliasCore {
 			}
 
 			Prefs.init(prefFile);
-			scripts = new ArrayList<Script>();
+			if (Static.persist != null) {
+				//The write behind settings may have changed too
+				Static.persist.setWriteBehind(Prefs.PersistanceWriteBehindInterval(), Prefs.PersistanceWriteBehindThreshold());
+			}
+			boolean incremental = Prefs.IncrementalReload();
+			if (background && incremental) {
+				reloadInBackground(player);
+				return;
+			}
+			if (!reloading.compareAndSet(false, true)) {
+				//Don't block the server thread until the background reload is done, it will pick this one up
+				beginReload();
+				if (player != null) {
+					Static.SendMessage(player, MCChatColor.YELLOW + "The scripts are already being reloaded, they will be reloaded again once that is done.");
+				}
+				return;
+			}
+			try {
+				beginReload();
+				apply(load(incremental), player);
+			} finally {
+				reloading.set(false);
+			}
+		} catch (IOException ex) {
+			logger.log(Level.SEVERE, BAD_PATH);
+		} catch (Throwable t) {
+			t.printStackTrace();
+		}
+
+		setupEconomy();
+	}
+
+	private void reloadInBackground(final MCPlayer player) {
+		beginReload();
+		if (!reloading.compareAndSet(false, true)) {
+			if (player != null) {
+				Static.SendMessage(player, MCChatColor.YELLOW + "The scripts are already being reloaded, they will be reloaded again once that is done.");
+			}
+			return;
+		}
+		loadInBackground(player);
+	}
 
-			LocalPackage localPackages = new LocalPackage();
+	/**
+	 * Loads the script files on a new thread, and then applies them on the
+	 * server thread, unless another reload was requested in the meantime, in
+	 * which case they are loaded again. The caller must have set reloading.
+	 */
+	private void loadInBackground(final MCPlayer player) {
+		new Thread(new Runnable() {
+			public void run() {
+				int current;
+				LocalPackage loaded;
+				try {
+					do {
+						current = reloadGeneration.get();
+						loaded = load(Prefs.IncrementalReload());
+					} while (!isCurrentReload(current));
+				} catch (IOException ex) {
+					reloading.set(false);
+					logger.log(Level.SEVERE, BAD_PATH);
+					return;
+				} catch (Throwable t) {
+					reloading.set(false);
+					t.printStackTrace();
+					return;
+				}
+				final int generation = current;
+				final LocalPackage localPackages = loaded;
+				//The old scripts keep running until everything is compiled
+				try {
+					StaticLayer.SetFutureRunnable(0, new Runnable() {
+						public void run() {
+							if (!isCurrentReload(generation)) {
+								//Another reload was requested while this one was waiting to be applied
+								loadInBackground(player);
+								return;
+							}
+							try {
+								apply(localPackages, player);
+							} catch (Throwable t) {
+								t.printStackTrace();
+							} finally {
+								reloading.set(false);
+							}
+							setupEconomy();
+						}
+					});
+				} catch (RuntimeException e) {
+					//The plugin was probably disabled in the meantime
+					reloading.set(false);
+					throw e;
+				}
+			}
+		}, "CommandHelperReload").start();
+	}
 
+	/**
+	 * Requests a new reload, which makes any reload that is still loading in
+	 * the background out of date.
+	 *
+	 * @return The generation of the new reload
+	 */
+	int beginReload() {
+		return reloadGeneration.incrementAndGet();
+	}
 
-			//Run the main file once           
-			String main = file_get_contents(mainFile.getAbsolutePath());
-			localPackages.appendMS(main, mainFile);
+	/**
+	 * Returns true if no other reload has started since the reload with
+	 * this generation.
+	 *
+	 * @param generation
+	 * @return
+	 */
+	boolean isCurrentReload(int generation) {
+		return generation == reloadGeneration.get();
+	}
 
+	/**
+	 * Reads in all the script files. If incremental is true, the files are
+	 * compiled as well, reusing the results of the last reload for the
+	 * files that haven't changed. This doesn't change the scripts that are
+	 * currently running, so it may be done off of the server thread.
+	 */
+	private LocalPackage load(boolean incremental) throws IOException {
+		LocalPackage localPackages = new LocalPackage();
 
-			String alias_config = file_get_contents(aliasConfig.getAbsolutePath()); //get the file again
-			localPackages.appendMSA(alias_config, aliasConfig);
+		//Run the main file once           
+		String main = file_get_contents(mainFile.getAbsolutePath());
+		localPackages.appendMS(main, mainFile);
 
-			//Now that we've included the default files, search the local_packages directory
-			GetAuxAliases(auxAliases, localPackages);
 
-			autoIncludes = localPackages.getAutoIncludes();
+		String alias_config = file_get_contents(aliasConfig.getAbsolutePath()); //get the file again
+		localPackages.appendMSA(alias_config, aliasConfig);
 
-			localPackages.compileMS(player);
-			localPackages.compileMSA(scripts, player);
+		//Now that we've included the default files, search the local_packages directory
+		GetAuxAliases(auxAliases, localPackages);
 
-		} catch (IOException ex) {
-			logger.log(Level.SEVERE, "[CommandHelper]: Path to config file is not correct/accessable. Please"
-				+ " check the location and try loading the plugin again.");
-		} catch (Throwable t) {
-			t.printStackTrace();
+		if (incremental) {
+			//Only the includes that changed need to be re-pulled
+			IncludeCache.clearChanged();
+			localPackages.precompile(compileCache);
+		} else {
+			compileCache.clear();
+			IncludeCache.clearCache(); //Clear the include cache, so it re-pulls files
 		}
+		return localPackages;
+	}
+
+	/**
+	 * Replaces the running scripts with the ones that were loaded. This must
+	 * be done on the server thread.
+	 */
+	private void apply(LocalPackage localPackages, MCPlayer player) {
+		Globals.clear();
+		Scheduling.ClearScheduledRunners();
+		EventUtils.UnregisterAll();
+		PermissionCache.Clear(); //Permissions may have changed too
+		scripts = new ArrayList<Script>();
+		router = new AliasRouter(scripts, Prefs.CaseSensitive());
+
+		autoIncludes = localPackages.getAutoIncludes();
+		MethodScriptCompiler.freezeAutoIncludes();
+
+		localPackages.compileMS(player);
+		localPackages.compileMSA(scripts, player);
+		//Now that all the aliases are compiled, index them
+		router = new AliasRouter(scripts, Prefs.CaseSensitive());
+	}
 
+	private static void setupEconomy() {
 		if (!Economy.setupEconomy()) {
 			if (Prefs.DebugMode()) {
 				logger.log(Level.WARNING, "[CommandHelper]: Economy could not be initialized. No further"
@@ -400,6 +584,11 @@ public class AliasCore {
 
 			String contents;
 			File file;
+			/**
+			 * The results of compiling the file ahead of time, or null if it
+			 * hasn't been, in which case it is compiled when it's needed.
+			 */
+			private volatile Compiled compiled = null;
 
 			private FileInfo(String contents, File file) {
 				this.contents = contents;
@@ -413,6 +602,128 @@ public class AliasCore {
 			public File file() {
 				return file;
 			}
+
+			private void precompileMS(CompileCache cache) {
+				String hash = CompileCache.Hash(contents);
+				ParseTree tree = cache.getTree(file, hash);
+				if (tree == null) {
+					Map<File, String> includes;
+					IncludeCache.startRecording();
+					try {
+						tree = MethodScriptCompiler.compile(MethodScriptCompiler.lex(contents, file));
+					} catch (ConfigCompileException e) {
+						compiled = new Compiled(null, null, null, e);
+						return;
+					} finally {
+						includes = IncludeCache.stopRecording();
+					}
+					cache.putTree(file, hash, tree, includes);
+				}
+				compiled = new Compiled(tree, null, null, null);
+			}
+
+			private void precompileMSA(CompileCache cache) {
+				String hash = CompileCache.Hash(contents);
+				//The Scripts are always new, only their compiled right sides are reused
+				List<Script> tempScripts;
+				try {
+					tempScripts = MethodScriptCompiler.preprocess(MethodScriptCompiler.lex(contents, file), new Env());
+				} catch (ConfigCompileException e) {
+					compiled = new Compiled(null, null, null, e);
+					return;
+				}
+				Map<Script, ConfigCompileException> errors = new IdentityHashMap<Script, ConfigCompileException>();
+				List<List<ParseTree>> aliases = cache.getAliases(file, hash);
+				if (aliases != null && aliases.size() == tempScripts.size()) {
+					for (int i = 0; i < tempScripts.size(); i++) {
+						try {
+							tempScripts.get(i).compile(aliases.get(i));
+						} catch (ConfigCompileException e) {
+							errors.put(tempScripts.get(i), e);
+						}
+					}
+				} else {
+					Map<File, String> includes;
+					IncludeCache.startRecording();
+					try {
+						for (Script s : tempScripts) {
+							try {
+								s.compile();
+							} catch (ConfigCompileException e) {
+								errors.put(s, e);
+							}
+						}
+					} finally {
+						includes = IncludeCache.stopRecording();
+					}
+					if (errors.isEmpty()) {
+						aliases = new ArrayList<List<ParseTree>>(tempScripts.size());
+						for (Script s : tempScripts) {
+							aliases.add(s.getCompiledRight());
+						}
+						cache.putAliases(file, hash, aliases, includes);
+					}
+				}
+				compiled = new Compiled(null, tempScripts, errors, null);
+			}
+
+			private ParseTree getTree() throws ConfigCompileException {
+				Compiled c = compiled;
+				if (c == null) {
+					return MethodScriptCompiler.compile(MethodScriptCompiler.lex(contents, file));
+				}
+				if (c.error != null) {
+					throw c.error;
+				}
+				return c.tree;
+			}
+
+			private List<Script> getScripts() throws ConfigCompileException {
+				Compiled c = compiled;
+				if (c == null) {
+					return MethodScriptCompiler.preprocess(MethodScriptCompiler.lex(contents, file), new Env());
+				}
+				if (c.error != null) {
+					throw c.error;
+				}
+				return c.scripts;
+			}
+
+			private void compile(Script s) throws ConfigCompileException {
+				Compiled c = compiled;
+				if (c == null) {
+					s.compile();
+					return;
+				}
+				if (c.errors.containsKey(s)) {
+					throw c.errors.get(s);
+				}
+			}
+		}
+
+		private static final class Compiled {
+
+			/**
+			 * The compiled .ms file
+			 */
+			private final ParseTree tree;
+			/**
+			 * The aliases in the .msa file, and the compile errors of the
+			 * ones that didn't compile
+			 */
+			private final List<Script> scripts;
+			private final Map<Script, ConfigCompileException> errors;
+			/**
+			 * The compile error of the whole file, if it couldn't be compiled
+			 */
+			private final ConfigCompileException error;
+
+			private Compiled(ParseTree tree, List<Script> scripts, Map<Script, ConfigCompileException> errors, ConfigCompileException error) {
+				this.tree = tree;
+				this.scripts = scripts;
+				this.errors = errors;
+				this.error = error;
+			}
 		}
 		private List<File> autoIncludes = new ArrayList<File>();
 		private List<FileInfo> ms = new ArrayList<FileInfo>();
@@ -442,15 +753,65 @@ public class AliasCore {
 			ms.add(new FileInfo(s, path));
 		}
 
+		/**
+		 * Compiles all the files on a pool of threads, so that compileMS and
+		 * compileMSA only have to check and run them. Files that haven't
+		 * changed since they were put in the cache aren't compiled again. If a
+		 * file couldn't be compiled here, for instance because an include
+		 * failed, it is compiled by compileMS or compileMSA as usual.
+		 *
+		 * @param cache
+		 */
+		public void precompile(final CompileCache cache) {
+			final AtomicInteger threadID = new AtomicInteger();
+			BoundedExecutor pool = new BoundedExecutor(Runtime.getRuntime().availableProcessors(), 0, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					return new Thread(r, "CommandHelperCompiler-" + threadID.incrementAndGet());
+				}
+			});
+			List<File> files = new ArrayList<File>();
+			List<Future<?>> tasks = new ArrayList<Future<?>>();
+			for (final FileInfo fi : ms) {
+				files.add(fi.file);
+				tasks.add(pool.submit(new Runnable() {
+					public void run() {
+						fi.precompileMS(cache);
+					}
+				}));
+			}
+			for (final FileInfo fi : msa) {
+				files.add(fi.file);
+				tasks.add(pool.submit(new Runnable() {
+					public void run() {
+						fi.precompileMSA(cache);
+					}
+				}));
+			}
+			try {
+				for (Future<?> task : tasks) {
+					try {
+						task.get();
+					} catch (ExecutionException ex) {
+						//The file is left uncompiled, and the error will happen again when it is compiled
+					}
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			} finally {
+				pool.shutdown();
+			}
+			cache.retain(files);
+		}
+
 		public void compileMSA(List<Script> scripts, MCPlayer player) {
 
 			for (FileInfo fi : msa) {
 				List<Script> tempScripts;
 				try {
-					tempScripts = MethodScriptCompiler.preprocess(MethodScriptCompiler.lex(fi.contents, fi.file), new Env());
+					tempScripts = fi.getScripts();
 					for (Script s : tempScripts) {
 						try {
-							s.compile();
+							fi.compile(s);
 							s.checkAmbiguous((ArrayList<Script>) scripts);
 							scripts.add(s);
 						} catch (ConfigCompileException e) {
@@ -481,7 +842,7 @@ public class AliasCore {
 				try {
 					Env env = new Env();
 					MethodScriptCompiler.registerAutoIncludes(env, null);
-					MethodScriptCompiler.execute(MethodScriptCompiler.compile(MethodScriptCompiler.lex(fi.contents, fi.file)), env, null, null);
+					MethodScriptCompiler.execute(fi.getTree(), env, null, null);
 				} catch (ConfigCompileException e) {
 					exception = true;
 					ConfigRuntimeException.DoReport(e, fi.file.getAbsolutePath() + " could not be compiled, due to a compile error.", player);
@@ -0,0 +1,126 @@
+package com.laytonsmith.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the aliases that could possibly match a command, without having to run
+ * {@link Script#match(String)} on every alias. The literal words at the start of
+ * each alias, (/cmd sub in /cmd sub $var = ...) are stored in a trie, so looking up
+ * a command only walks as many nodes as the command has words, and only the aliases
+ * whose literal words all match are returned. These still need to be checked with
+ * Script.match, but there are typically only one or two of them.
+ * @author Layton
+ */
+public class AliasRouter {
+
+    private final List<Script> scripts;
+    private final boolean caseSensitive;
+    private final Node root = new Node();
+
+    private static final class Node {
+        private Map<String, Node> children;
+        /**
+         * The indexes of the scripts whose literal words end at this node
+         */
+        private List<Integer> scripts;
+    }
+
+    /**
+     * Builds the routing index. The order of the scripts is the order they are
+     * checked in, so the first matching script still wins.
+     * @param scripts
+     * @param caseSensitive Whether or not the literal words are compared case sensitively,
+     * which should be the same as {@link Prefs#CaseSensitive()}.
+     */
+    public AliasRouter(List<Script> scripts, boolean caseSensitive) {
+        this.scripts = new ArrayList<Script>(scripts);
+        this.caseSensitive = caseSensitive;
+        for (int i = 0; i < this.scripts.size(); i++) {
+            List<String> prefix = this.scripts.get(i).getLiteralPrefix();
+            if (prefix == null) {
+                //This script can never match anything
+                continue;
+            }
+            Node node = root;
+            for (String word : prefix) {
+                if (node.children == null) {
+                    node.children = new HashMap<String, Node>();
+                }
+                String key = fold(word);
+                Node next = node.children.get(key);
+                if (next == null) {
+                    next = new Node();
+                    node.children.put(key, next);
+                }
+                node = next;
+            }
+            if (node.scripts == null) {
+                node.scripts = new ArrayList<Integer>();
+            }
+            node.scripts.add(i);
+        }
+    }
+
+    /**
+     * Returns the scripts that could match this command, in the order they
+     * should be checked.
+     * @param command
+     * @return
+     */
+    public List<Script> getCandidates(String command) {
+        //This must split the command the same way Script.match does
+        String[] words = command.split(" ");
+        List<Integer> found = new ArrayList<Integer>();
+        Node node = root;
+        int depth = 0;
+        int lists = 0;
+        while (node != null) {
+            if (node.scripts != null) {
+                found.addAll(node.scripts);
+                lists++;
+            }
+            if (node.children == null || depth >= words.length) {
+                break;
+            }
+            node = node.children.get(fold(words[depth]));
+            depth++;
+        }
+        if (lists > 1) {
+            Collections.sort(found);
+        }
+        List<Script> candidates = new ArrayList<Script>(found.size());
+        for (int i : found) {
+            candidates.add(scripts.get(i));
+        }
+        return candidates;
+    }
+
+    /**
+     * Returns all the scripts that this router knows about, in order.
+     * @return
+     */
+    public List<Script> getScripts() {
+        return new ArrayList<Script>(scripts);
+    }
+
+    /**
+     * Folds the case of the word, if we aren't case sensitive. This folds each
+     * character the same way String.equalsIgnoreCase compares them.
+     * @param word
+     * @return
+     */
+    private String fold(String word) {
+        if (caseSensitive) {
+            return word;
+        }
+        char[] chars = word.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+}
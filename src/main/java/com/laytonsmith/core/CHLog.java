@@ -51,7 +51,8 @@ public final class CHLog {
 //        PROCEDURES("procedures", "Logs when a procedure is created", Level.OFF),
         INCLUDES("includes", "Logs what file is requested when include() is used", Level.OFF),
         GENERAL("general", "Anything that doesn't fit in a more specific category is logged here.", Level.ERROR),
-        META("meta", "Functions in the meta class use this tag", Level.OFF)
+        META("meta", "Functions in the meta class use this tag", Level.OFF),
+        USERLAND("userland", "Logs the state of the thread pools that run asynchronous tasks started by scripts", Level.WARNING)
         ;
         
         
@@ -0,0 +1,149 @@
+package com.laytonsmith.core;
+
+import com.laytonsmith.core.functions.IncludeCache;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the compiled form of each script file between reloads, along with a hash of the
+ * contents it was compiled from, and of the files it included while it was compiled, so
+ * that an incremental reload only has to recompile the files that actually changed. Only
+ * the compiled trees are kept, which aren't changed by running them, and not the Scripts
+ * themselves, so each reload still builds new Scripts from them. Only files that compiled
+ * without any errors are kept, so the errors in a broken file are reported again on each
+ * reload.
+ *
+ * @author Layton
+ */
+public class CompileCache {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private final Map<File, Entry> entries = new HashMap<File, Entry>();
+
+    /**
+     * Returns a hash of the contents of a script file.
+     * @param contents
+     * @return
+     */
+    public static String Hash(String contents) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA1");
+        } catch (NoSuchAlgorithmException ex) {
+            //Every JVM is required to support SHA1
+            throw new Error(ex);
+        }
+        byte[] hash = digest.digest(contents.getBytes(UTF8));
+        StringBuilder b = new StringBuilder(hash.length * 2);
+        for (byte by : hash) {
+            b.append(Character.forDigit((by >> 4) & 0xF, 16)).append(Character.forDigit(by & 0xF, 16));
+        }
+        return b.toString();
+    }
+
+    /**
+     * Returns the compiled tree of this .ms file, or null if it hasn't been compiled
+     * from these contents, or one of the files it included has changed since.
+     * @param file
+     * @param hash
+     * @return
+     */
+    public synchronized ParseTree getTree(File file, String hash) {
+        Entry e = getEntry(file, hash);
+        return e == null ? null : e.tree;
+    }
+
+    /**
+     * Returns the compiled right side of each alias in this .msa file, in order, or null if
+     * it hasn't been compiled from these contents, or one of the files it included has changed
+     * since. See {@link Script#compile(List)}.
+     * @param file
+     * @param hash
+     * @return
+     */
+    public synchronized List<List<ParseTree>> getAliases(File file, String hash) {
+        Entry e = getEntry(file, hash);
+        return e == null || e.aliases == null ? null : new ArrayList<List<ParseTree>>(e.aliases);
+    }
+
+    /**
+     * Caches the compiled tree of this .ms file.
+     * @param file
+     * @param hash
+     * @param tree
+     * @param includes The files included while it was compiled, and their hashes,
+     * from {@link IncludeCache#stopRecording()}
+     */
+    public synchronized void putTree(File file, String hash, ParseTree tree, Map<File, String> includes) {
+        entries.put(file, new Entry(hash, includes, tree, null));
+    }
+
+    /**
+     * Caches the compiled right side of each alias in this .msa file.
+     * @param file
+     * @param hash
+     * @param aliases
+     * @param includes The files included while it was compiled, and their hashes,
+     * from {@link IncludeCache#stopRecording()}
+     */
+    public synchronized void putAliases(File file, String hash, List<List<ParseTree>> aliases, Map<File, String> includes) {
+        entries.put(file, new Entry(hash, includes, null, new ArrayList<List<ParseTree>>(aliases)));
+    }
+
+    private Entry getEntry(File file, String hash) {
+        Entry e = entries.get(file);
+        if (e == null || !e.hash.equals(hash)) {
+            return null;
+        }
+        for (Map.Entry<File, String> include : e.includes.entrySet()) {
+            if (include.getValue() == null || !include.getValue().equals(IncludeCache.getHash(include.getKey()))) {
+                //The include has changed, which may change the compiled file too
+                return null;
+            }
+        }
+        return e;
+    }
+
+    /**
+     * Removes the files that are no longer loaded.
+     * @param files The files that are still loaded
+     */
+    public synchronized void retain(Collection<File> files) {
+        Set<File> keep = new HashSet<File>(files);
+        Iterator<File> it = entries.keySet().iterator();
+        while (it.hasNext()) {
+            if (!keep.contains(it.next())) {
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private static final class Entry {
+
+        private final String hash;
+        private final Map<File, String> includes;
+        private final ParseTree tree;
+        private final List<List<ParseTree>> aliases;
+
+        private Entry(String hash, Map<File, String> includes, ParseTree tree, List<List<ParseTree>> aliases) {
+            this.hash = hash;
+            this.includes = new HashMap<File, String>(includes);
+            this.tree = tree;
+            this.aliases = aliases;
+        }
+    }
+}
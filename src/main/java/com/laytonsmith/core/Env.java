@@ -7,6 +7,7 @@ import com.laytonsmith.abstraction.MCCommandSender;
 import com.laytonsmith.abstraction.MCPlayer;
 import com.laytonsmith.core.constructs.IVariableList;
 import com.laytonsmith.core.events.BoundEvent;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -21,6 +22,14 @@ public final class Env implements Cloneable{
      */
     private Map<String, Object> custom = new HashMap<String, Object>();   
     private Map<String, Boolean> flags = new HashMap<String, Boolean>();
+    /*
+     * Cloning an environment doesn't copy the maps, instead both environments
+     * share them until one of them writes to them, at which point that environment
+     * gets its own copy. These flags track which maps are currently shared.
+     */
+    private boolean customShared = false;
+    private boolean flagsShared = false;
+    private boolean procsShared = false;
     private MCCommandSender commandSender = null;
     private IVariableList iVariableList = null;
     private Map<String, Procedure> procs = null;
@@ -29,6 +38,7 @@ public final class Env implements Cloneable{
     private BoundEvent.ActiveEvent event = null;
     private String command = null;
     private ExecutionQueue executionQueue = null;
+    private VariableIndex.Frame dollarVars = null;
     
     /*
      * The constructor has relatively little to do, most things are lazy
@@ -45,6 +55,7 @@ public final class Env implements Cloneable{
      * @param value 
      */
     public void SetFlag(String name, boolean value){
+        ownFlags();
         flags.put(name, value);
     }
     
@@ -54,11 +65,7 @@ public final class Env implements Cloneable{
      * @return 
      */
     public Boolean GetFlag(String name){
-        if(!flags.containsKey(name)){
-            return null;
-        } else {
-            return flags.get(name);
-        }
+        return flags.get(name);
     }
     
     /**
@@ -66,7 +73,17 @@ public final class Env implements Cloneable{
      * @param name 
      */
     public void ClearFlag(String name){
-        flags.remove(name);
+        if(flags.containsKey(name)){
+            ownFlags();
+            flags.remove(name);
+        }
+    }
+    
+    private void ownFlags(){
+        if(flagsShared){
+            flags = new HashMap<String, Boolean>(flags);
+            flagsShared = false;
+        }
     }
     
     /**
@@ -77,10 +94,11 @@ public final class Env implements Cloneable{
      * @param var 
      */
     public void SetCustom(String name, Object var){
-        if(!custom.containsKey("custom")){
-            custom.put("custom", new HashMap<String, Object>());
+        if(customShared){
+            custom = new HashMap<String, Object>(custom);
+            customShared = false;
         }
-        ((Map<String, Object>)custom.get("custom")).put(name, var);        
+        custom.put(name, var);
     }
     
     /**
@@ -89,10 +107,7 @@ public final class Env implements Cloneable{
      * @return 
      */
     public Object GetCustom(String name){
-        if(!custom.containsKey("custom")){
-            custom.put("custom", new HashMap<String, Object>());
-        }
-        return ((Map<String, Object>)custom.get("custom")).get(name);
+        return custom.get(name);
     }
     /**
      * Given the environment, this function returns the CommandSender in the
@@ -155,21 +170,70 @@ public final class Env implements Cloneable{
     }
     
     /**
-     * Returns the Map of known procedures in this environment. If the list
-     * of procedures is currently empty, a new one is created and stored in
-     * the environment.
-     * @param env
+     * Returns a read only view of the known procedures in this environment.
+     * To add a procedure, use AddProc.
      * @return 
      */
     public Map<String, Procedure> GetProcs(){
+        if(procs == null){
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap(procs);
+    }
+    
+    /**
+     * Returns the procedure with the given name, or null if no such procedure
+     * is known in this environment.
+     * @param name
+     * @return 
+     */
+    public Procedure GetProc(String name){
+        if(procs == null){
+            return null;
+        }
+        return procs.get(name);
+    }
+    
+    /**
+     * Adds a procedure to this environment, replacing any procedure with
+     * the same name.
+     * @param proc 
+     */
+    public void AddProc(Procedure proc){
         if(procs == null){
             procs = new HashMap<String, Procedure>();
+        } else if(procsShared){
+            procs = new HashMap<String, Procedure>(procs);
+        }
+        procsShared = false;
+        procs.put(proc.getName(), proc);
+    }
+    
+    /**
+     * Adds all the given procedures to this environment, replacing any procedures
+     * with the same name. The given map must not be modified afterwards. If this
+     * environment doesn't have any procedures yet, the map is shared instead of copied,
+     * so this is cheap to do with the same map for every new environment.
+     * @param procs 
+     */
+    public void InheritProcs(Map<String, Procedure> procs){
+        if(this.procs == procs){
+            return;
+        }
+        if(this.procs == null || this.procs.isEmpty()){
+            this.procs = procs;
+            procsShared = true;
+        } else {
+            Map<String, Procedure> merged = new HashMap<String, Procedure>(this.procs);
+            merged.putAll(procs);
+            this.procs = merged;
+            procsShared = false;
         }
-        return procs;
     }
     
     public void SetProcs(Map<String, Procedure> procs){
         this.procs = procs;
+        procsShared = false;
     }
     
     public String GetLabel(){
@@ -200,26 +264,42 @@ public final class Env implements Cloneable{
         return event;
     }
     
+    /**
+     * Clones this environment. This is a constant time operation, the maps
+     * are shared between the two environments until one of them is written to.
+     * The variable list itself is shared, so code that runs in the clone and must
+     * not see or change the original's variables (closures and events, for instance)
+     * has to give the clone its own copy, or a new list, with SetVarList. Procs get
+     * a new list anyways.
+     * @return
+     * @throws CloneNotSupportedException 
+     */
     @Override
     public Env clone() throws CloneNotSupportedException{	    
         Env clone = (Env)super.clone();
-        clone.custom = new HashMap<String, Object>(this.custom);
-        if(flags != null){
-            clone.flags = new HashMap<String, Boolean>(flags);
-        } else {
-            clone.flags = new HashMap<String, Boolean>();
-        }
-        if(procs != null){
-            clone.procs = new HashMap<String, Procedure>(procs);
-        } else {
-            clone.procs = new HashMap<String, Procedure>();
-        }
-        if(iVariableList != null){
-            clone.iVariableList = (IVariableList) iVariableList.clone();
-        }
+        this.customShared = clone.customShared = true;
+        this.flagsShared = clone.flagsShared = true;
+        this.procsShared = clone.procsShared = true;
         return clone;
     }
 
+    /**
+     * Sets the values of the $variables for the script that is running.
+     * @param frame 
+     */
+    public void SetDollarVars(VariableIndex.Frame frame){
+        this.dollarVars = frame;
+    }
+    
+    /**
+     * Returns the values of the $variables for the script that is running,
+     * or null if there aren't any.
+     * @return 
+     */
+    public VariableIndex.Frame GetDollarVars(){
+        return this.dollarVars;
+    }
+
     public void SetCommand(String command) {
         this.command = command;
     }
@@ -9,6 +9,7 @@ import com.laytonsmith.core.exceptions.ConfigRuntimeException;
 import com.laytonsmith.core.functions.Compiler;
 import com.laytonsmith.core.functions.DataHandling;
 import com.laytonsmith.core.functions.Function;
+import com.laytonsmith.core.functions.FunctionBase;
 import com.laytonsmith.core.functions.FunctionList;
 import com.laytonsmith.core.functions.IncludeCache;
 import java.io.File;
@@ -24,596 +25,490 @@ public final class MethodScriptCompiler {
     
     private MethodScriptCompiler(){}
 
+    /**
+     * Lexes the script. The script is scanned one char at a time, directly out of the
+     * string, and a Target is only created for positions where a token actually starts.
+     * @param config
+     * @param file
+     * @return
+     * @throws ConfigCompileException
+     */
     public static List<Token> lex(String config, File file) throws ConfigCompileException {
-        config = config.replaceAll("\r\n", "\n");
-        config = config + "\n";
-        List<Token> token_list = new ArrayList<Token>();
-        //Set our state variables
-        boolean state_in_quote = false;
-        int quoteLineNumberStart = 1;
-        boolean in_smart_quote = false;
-        int smartQuoteLineNumberStart = 1;
-        boolean in_comment = false;
-        int commentLineNumberStart = 1;
-        boolean comment_is_block = false;
-        boolean in_opt_var = false;
-        StringBuffer buf = new StringBuffer();
-        int line_num = 1;
-        int column = 1;
-        int lastColumn = 0;
-        Target target = Target.UNKNOWN;
-        //first we lex
-        for (int i = 0; i < config.length(); i++) {
-            Character c = config.charAt(i);
-            Character c2 = null;
-            Character c3 = null;
-            if (i < config.length() - 1) {
-                c2 = config.charAt(i + 1);
-            }
-            if(i < config.length() - 2){
-                c3 = config.charAt(i + 2);
-            }
-
-            column += i - lastColumn;
-            lastColumn = i;
-            if (c == '\n') {
-                line_num++;
-                column = 1;
-            }
-            target = new Target(line_num, file, column);
-
-            //Comment handling. If we're inside a string, bypass this though
-	    if(!state_in_quote && !in_smart_quote){
-		    //Block comments start
-		    if(c == '/' && c2 == '*' && !in_comment){
-			in_comment = true;
-			comment_is_block = true;
-			commentLineNumberStart = line_num;
-			i++;
-			continue;
-		    }
-		    //Line comment start
-		    if(c == '#' && !in_comment){
-			in_comment = true;
-			comment_is_block = false;
-			continue;
-		    }
-		    //Block comment end
-		    if (c == '*' && c2 == '/' && in_comment && comment_is_block) {
-			if(in_comment && comment_is_block){
-			    in_comment = false;
-			    comment_is_block = false;
-			    i++;
-			    continue;
-			} else if(!in_comment){
-			    throw new ConfigCompileException("Unexpected block comment end", target);
-			} //else they put it in a line comment, which is fine
-		    }
-		    //Line comment end
-		    if(c == '\n' && in_comment && !comment_is_block){
-			in_comment = false;
-			continue;
-		    }
-	    }
-            //Currently, if they are in a comment, we completely throw this away. Eventually block
-            //comments that were started with /** will be kept and applied to the next identifier, but for the time
-            //being, nothing.
-            if (in_comment) {
-                continue;
-            }
-            //This has to come before subtraction and greater than
-            if (c == '-' && c2 == '>' && !state_in_quote) {
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.DEREFERENCE, "->", target));
-                i++;
-                continue;
-            }
-            //Increment and decrement must come before plus and minus
-            if(c == '+' && c2 == '+' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.INCREMENT, "++", target));
-                i++;
-                continue;                
-            }
-            if(c == '-' && c2 == '-' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.DECREMENT, "--", target));
-                i++;
-                continue;                
-            }
+        if(config.indexOf('\r') != -1){
+            config = config.replace("\r\n", "\n");
+        }
+        List<Token> lexed = new Lexer(config, file).lex();
+        //look at the tokens, and get meaning from them. Also, look for improper symbol locations,
+        //and go ahead and absorb unary +- into the token. The tokens are copied into a new list as
+        //we go, so absorbing a sign doesn't have to shift the rest of the list.
+        List<Token> token_list = new ArrayList<Token>(lexed.size());
+        for (int i = 0; i < lexed.size(); i++) {
+            Token t = lexed.get(i);
+            int size = token_list.size();
+            Token prev2 = size - 2 >= 0 ? token_list.get(size - 2) : new Token(TType.UNKNOWN, "", t.target);
+            Token prev1 = size - 1 >= 0 ? token_list.get(size - 1) : new Token(TType.UNKNOWN, "", t.target);
+            Token next = i + 1 < lexed.size() ? lexed.get(i + 1) : new Token(TType.UNKNOWN, "", t.target);
             
-            if(c == '%' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.MODULO, "%", target));
-                continue;                                
+            if(t.type == TType.UNKNOWN && prev1.type.isPlusMinus() &&
+                    !prev2.type.isIdentifier()){
+                //It is a negative/positive number. Absorb the sign
+                t.value = prev1.value + t.value;
+                token_list.remove(size - 1);
             }
+            token_list.add(t);
             
-            //Math symbols must come after comment parsing, due to /* and */ block comments
-            //Block comments are caught above
-            if(c == '*' && c2 == '*' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.EXPONENTIAL, "**", target));
-                i++;
-                continue;
-            }
-            if(c == '*' && !state_in_quote){ 
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.MULTIPLICATION, "*", target));
-                continue;
-            }
-            if(c == '+' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.ADDITION, "+", target));
-                continue;
-            }
-            if(c == '-' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.SUBTRACTION, "-", target));  
-               continue;
-            }
-            //Protect against commands
-            if(c == '/' && !Character.isLetter(c2) && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.DIVISION, "/", target));  
-                continue;
-            }
-            //Logic symbols
-            if(c == '>' && c2 == '=' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.GTE, ">=", target));  
-                i++;
-                continue;
-            }
-            if(c == '<' && c2 == '=' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.LTE, "<=", target));  
-                i++;
-                continue;
-            }
-            //multiline has to come before gt/lt
-            if(c == '<' && c2 == '<' && c3 == '<' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.MULTILINE_END, "<<<", target));  
-                i++; i++;
-                continue;
-            }
-            if(c == '>' && c2 == '>' && c3 == '>' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.MULTILINE_START, ">>>", target));  
-                i++; i++;
-                continue;
-            }
-            if(c == '<' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.LT, "<", target));  
-                continue;
-            }
-            if(c == '>' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.GT, ">", target));  
-                continue;
-            }
-            if(c == '=' && c2 == '=' && c3 == '=' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.STRICT_EQUALS, "===", target));  
-                i++; i++;
-                continue;
-            }
-            if(c == '!' && c2 == '=' && c3 == '=' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.STRICT_NOT_EQUALS, "!==", target));  
-                i++; i++;
-                continue;
-            }
-            if(c == '=' && c2 == '=' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.EQUALS, "==", target));  
-                i++; i++;
-                continue;
-            }
-            if(c == '!' && c2 == '=' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.NOT_EQUALS, "!=", target));  
-                i++; i++;
-                continue;
-            }
-            if(c == '&' && c2 == '&' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.LOGICAL_AND, "&&", target));  
-                i++;
-                continue;
-            }
-            if(c == '|' && c2 == '|' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.LOGICAL_OR, "||", target));  
-                i++;
-                continue;
-            }
-            if(c == '!' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.LOGICAL_NOT, "!", target));  
-                continue;
-            }
-            if(c == '{' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
+            if (t.type.equals(TType.UNKNOWN)) {
+                if (IsCommand(t.val())) {
+                    t.type = TType.COMMAND;
+                } else if (t.val().equals("\\")) {
+                    t.type = TType.SEPERATOR;
+                } else if (IsVariableName(t.val(), '$')) {
+                    t.type = TType.VARIABLE;
+                } else if (IsVariableName(t.val(), '@')) {
+                    t.type = TType.IVARIABLE;
+                } else if (t.val().equals("$")) {
+                    t.type = TType.FINAL_VAR;
+                } else {
+                    t.type = TType.LIT;
                 }
-                token_list.add(new Token(TType.LCURLY_BRACKET, "{", target));
-                continue;
             }
-            if(c == '}' && !state_in_quote){
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
+            if(t.type.isSymbol() && !t.type.isUnary() && !next.type.isUnary()){
+                if(prev1.type.equals(TType.FUNC_START) || prev1.type.equals(TType.COMMA)
+                || next.type.equals(TType.FUNC_END) || next.type.equals(TType.COMMA)
+                || prev1.type.isSymbol() || next.type.isSymbol()){
+                    throw new ConfigCompileException("Unexpected symbol (" + t.val() + ")", t.getTarget());                    
                 }
-                token_list.add(new Token(TType.RCURLY_BRACKET, "}", target));
-                continue;
-            }
-            //I don't want to use these symbols yet, especially since bitwise operations are rare.
-//            if(c == '&' && !state_in_quote){
-//                if (buf.length() > 0) {
-//                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-//                    buf = new StringBuffer();
-//                }
-//                token_list.add(new Token(TType.BIT_AND, "&", target));  
-//                continue;
-//            }
-//            if(c == '|' && !state_in_quote){
-//                if (buf.length() > 0) {
-//                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-//                    buf = new StringBuffer();
-//                }
-//                token_list.add(new Token(TType.BIT_OR, "|", target));  
-//                continue;
-//            }
-//            if(c == '^' && !state_in_quote){
-//                if (buf.length() > 0) {
-//                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-//                    buf = new StringBuffer();
-//                }
-//                token_list.add(new Token(TType.BIT_XOR, "^", target));  
-//                continue;
-//            }
+            }                            
             
-            if (c == '.' && c2 == '.' && !state_in_quote) {
-                //This one has to come before plain .
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.SLICE, "..", target));
-                i++;
-                continue;
-            }
-            if (c == '.' && !Character.isDigit(c2) && !state_in_quote) {
-                //if it's a number after this, it's a decimal
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.CONCAT, ".", target));
-                continue;
+        }
+        return token_list;
+    }
+
+    /**
+     * Returns true if the value matches /.*, that is, it starts with a slash,
+     * and has no line terminators.
+     * @param value
+     * @return
+     */
+    private static boolean IsCommand(String value){
+        if(value.isEmpty() || value.charAt(0) != '/'){
+            return false;
+        }
+        for(int i = 1; i < value.length(); i++){
+            char c = value.charAt(i);
+            if(c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029'){
+                return false;
             }
-            if (c == ':' && c2 == ':' && !state_in_quote) {
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.DEREFERENCE, "::", target));
-                i++;
-                continue;
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the value matches \$[a-zA-Z0-9_]+ (or the same with @, for ivariables).
+     * @param value
+     * @param prefix
+     * @return
+     */
+    private static boolean IsVariableName(String value, char prefix){
+        if(value.length() < 2 || value.charAt(0) != prefix){
+            return false;
+        }
+        for(int i = 1; i < value.length(); i++){
+            char c = value.charAt(i);
+            if(!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_')){
+                return false;
             }
-            if (c == '[' && !state_in_quote) {
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.LSQUARE_BRACKET, "[", target));
-                in_opt_var = true;
-                continue;
+        }
+        return true;
+    }
+
+    /**
+     * The state of the lexer while it scans a script. The script is treated as if it had an
+     * extra newline at the end, without copying it.
+     */
+    private static final class Lexer {
+        private final String config;
+        private final File file;
+        /**
+         * The length of the script, including the implied newline at the end.
+         */
+        private final int length;
+        private final List<Token> token_list = new ArrayList<Token>();
+        /**
+         * The value of the token being built. This is reused for every token.
+         */
+        private final StringBuilder buf = new StringBuilder();
+        private int line_num = 1;
+        private int column = 1;
+        /**
+         * The target of the current position, or null if it hasn't been needed yet.
+         */
+        private Target target = null;
+
+        private Lexer(String config, File file){
+            this.config = config;
+            this.file = file;
+            this.length = config.length() + 1;
+        }
+
+        private char charAt(int i){
+            return i == config.length() ? '\n' : config.charAt(i);
+        }
+
+        private Target target(){
+            if(target == null){
+                target = new Target(line_num, file, column);
             }
-            //This has to come after == and ===
-            if (c == '=' && !state_in_quote) {
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                if (in_opt_var) {
-                    token_list.add(new Token(TType.OPT_VAR_ASSIGN, "=", target));
-                } else {
-                    token_list.add(new Token(TType.ALIAS_END, "=", target));
-                }
-                continue;
+            return target;
+        }
+
+        private void add(TType type, String value){
+            token_list.add(new Token(type, value, target()));
+        }
+
+        /**
+         * Ends the current token, if there is one, as the given type.
+         * @param type
+         */
+        private void flush(TType type){
+            if (buf.length() > 0) {
+                add(type, buf.toString());
+                buf.setLength(0);
             }
-            if (c == ']' && !state_in_quote) {
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
+        }
+
+        private List<Token> lex() throws ConfigCompileException {
+            //Set our state variables
+            boolean state_in_quote = false;
+            int quoteLineNumberStart = 1;
+            boolean in_smart_quote = false;
+            int smartQuoteLineNumberStart = 1;
+            boolean in_comment = false;
+            int commentLineNumberStart = 1;
+            boolean comment_is_block = false;
+            boolean in_opt_var = false;
+            int lastColumn = 0;
+            //first we lex
+            for (int i = 0; i < length; i++) {
+                char c = charAt(i);
+                //'\0' stands in for "past the end", none of the checks below look for it
+                char c2 = i < length - 1 ? charAt(i + 1) : '\0';
+                char c3 = i < length - 2 ? charAt(i + 2) : '\0';
+
+                column += i - lastColumn;
+                lastColumn = i;
+                if (c == '\n') {
+                    line_num++;
+                    column = 1;
                 }
-                token_list.add(new Token(TType.RSQUARE_BRACKET, "]", target));
-                in_opt_var = false;
-                continue;
-            }
-            if (c == ':' && !state_in_quote) {
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
+                target = null;
+
+                //Comment handling. If we're inside a string, bypass this though
+                if(!state_in_quote && !in_smart_quote){
+                    //Block comments start
+                    if(c == '/' && c2 == '*' && !in_comment){
+                        in_comment = true;
+                        comment_is_block = true;
+                        commentLineNumberStart = line_num;
+                        i++;
+                        continue;
+                    }
+                    //Line comment start
+                    if(c == '#' && !in_comment){
+                        in_comment = true;
+                        comment_is_block = false;
+                        continue;
+                    }
+                    //Block comment end
+                    if (c == '*' && c2 == '/' && in_comment && comment_is_block) {
+                        in_comment = false;
+                        comment_is_block = false;
+                        i++;
+                        continue;
+                    }
+                    //Line comment end
+                    if(c == '\n' && in_comment && !comment_is_block){
+                        in_comment = false;
+                        continue;
+                    }
                 }
-                token_list.add(new Token(TType.LABEL, ":", target));
-                continue;
-            }
-            if (c == ',' && !state_in_quote) {
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
+                //Currently, if they are in a comment, we completely throw this away. Eventually block
+                //comments that were started with /** will be kept and applied to the next identifier, but for the time
+                //being, nothing.
+                if (in_comment) {
+                    continue;
                 }
-                token_list.add(new Token(TType.COMMA, ",", target));
-                continue;
-            }
-            if (c == '(' && !state_in_quote) {
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.FUNC_NAME, buf.toString(), target));
-                    buf = new StringBuffer();
-                } else {
-                    //The previous token, if unknown, should be changed to a FUNC_NAME. If it's not
-                    //unknown, we may be doing standalone parenthesis, so auto tack on the __autoconcat__ function
-                    try {
-                        int count = 1;
-                        while(token_list.get(token_list.size() - count).type == TType.WHITESPACE){
-                            count++;
-                        }
-                        if (token_list.get(token_list.size() - count).type == TType.UNKNOWN) {
-                            token_list.get(token_list.size() - count).type = TType.FUNC_NAME;
-                            //Go ahead and remove the whitespace here too, it breaks things
-                            count--;
-                            for(int a = 0; a < count; a++){
-                                token_list.remove(token_list.size() - 1);
+                if(!state_in_quote){
+                    TType symbol = null;
+                    String value = null;
+                    int skip = 0;
+                    switch(c){
+                        case '-':
+                            //This has to come before subtraction and greater than
+                            if(c2 == '>'){
+                                symbol = TType.DEREFERENCE; value = "->"; skip = 1;
+                            } else if(c2 == '-'){
+                                //Increment and decrement must come before plus and minus
+                                symbol = TType.DECREMENT; value = "--"; skip = 1;
+                            } else {
+                                symbol = TType.SUBTRACTION; value = "-";
+                            }
+                            break;
+                        case '+':
+                            if(c2 == '+'){
+                                symbol = TType.INCREMENT; value = "++"; skip = 1;
+                            } else {
+                                symbol = TType.ADDITION; value = "+";
+                            }
+                            break;
+                        case '%':
+                            symbol = TType.MODULO; value = "%";
+                            break;
+                        case '*':
+                            //Math symbols must come after comment parsing, due to /* and */ block comments
+                            //Block comments are caught above
+                            if(c2 == '*'){
+                                symbol = TType.EXPONENTIAL; value = "**"; skip = 1;
+                            } else {
+                                symbol = TType.MULTIPLICATION; value = "*";
+                            }
+                            break;
+                        case '/':
+                            //Protect against commands
+                            if(!Character.isLetter(c2)){
+                                symbol = TType.DIVISION; value = "/";
                             }
+                            break;
+                        case '>':
+                            //multiline has to come before gt
+                            if(c2 == '='){
+                                symbol = TType.GTE; value = ">="; skip = 1;
+                            } else if(c2 == '>' && c3 == '>'){
+                                symbol = TType.MULTILINE_START; value = ">>>"; skip = 2;
+                            } else {
+                                symbol = TType.GT; value = ">";
+                            }
+                            break;
+                        case '<':
+                            if(c2 == '='){
+                                symbol = TType.LTE; value = "<="; skip = 1;
+                            } else if(c2 == '<' && c3 == '<'){
+                                symbol = TType.MULTILINE_END; value = "<<<"; skip = 2;
+                            } else {
+                                symbol = TType.LT; value = "<";
+                            }
+                            break;
+                        case '=':
+                            if(c2 == '=' && c3 == '='){
+                                symbol = TType.STRICT_EQUALS; value = "==="; skip = 2;
+                            } else if(c2 == '='){
+                                symbol = TType.EQUALS; value = "=="; skip = 2;
+                            }
+                            //A single = is handled below, with the brackets
+                            break;
+                        case '!':
+                            if(c2 == '=' && c3 == '='){
+                                symbol = TType.STRICT_NOT_EQUALS; value = "!=="; skip = 2;
+                            } else if(c2 == '='){
+                                symbol = TType.NOT_EQUALS; value = "!="; skip = 2;
+                            } else {
+                                symbol = TType.LOGICAL_NOT; value = "!";
+                            }
+                            break;
+                        case '&':
+                            if(c2 == '&'){
+                                symbol = TType.LOGICAL_AND; value = "&&"; skip = 1;
+                            }
+                            break;
+                        case '|':
+                            if(c2 == '|'){
+                                symbol = TType.LOGICAL_OR; value = "||"; skip = 1;
+                            }
+                            break;
+                        case '{':
+                            symbol = TType.LCURLY_BRACKET; value = "{";
+                            break;
+                        case '}':
+                            symbol = TType.RCURLY_BRACKET; value = "}";
+                            break;
+                        case '.':
+                            if(c2 == '.'){
+                                //This one has to come before plain .
+                                symbol = TType.SLICE; value = ".."; skip = 1;
+                            } else if(!Character.isDigit(c2)){
+                                //if it's a number after this, it's a decimal
+                                symbol = TType.CONCAT; value = ".";
+                            }
+                            break;
+                        case ':':
+                            if(c2 == ':'){
+                                symbol = TType.DEREFERENCE; value = "::"; skip = 1;
+                            } else {
+                                symbol = TType.LABEL; value = ":";
+                            }
+                            break;
+                        case ',':
+                            symbol = TType.COMMA; value = ",";
+                            break;
+                        case ')':
+                            symbol = TType.FUNC_END; value = ")";
+                            break;
+                    }
+                    if(symbol != null){
+                        flush(TType.UNKNOWN);
+                        add(symbol, value);
+                        i += skip;
+                        continue;
+                    }
+                    if (c == '[') {
+                        flush(TType.UNKNOWN);
+                        add(TType.LSQUARE_BRACKET, "[");
+                        in_opt_var = true;
+                        continue;
+                    }
+                    //This has to come after == and ===
+                    if (c == '=') {
+                        flush(TType.UNKNOWN);
+                        if (in_opt_var) {
+                            add(TType.OPT_VAR_ASSIGN, "=");
                         } else {
-                            token_list.add(new Token(TType.FUNC_NAME, "__autoconcat__", target));
+                            add(TType.ALIAS_END, "=");
                         }
-                    } catch (IndexOutOfBoundsException e) {
-                        //This is the first element on the list, so, it's another autoconcat.
-                        token_list.add(new Token(TType.FUNC_NAME, "__autoconcat__", target));
+                        continue;
                     }
-                }
-                token_list.add(new Token(TType.FUNC_START, "(", target));
-                continue;
-            }
-            if (c == ')' && !state_in_quote) {
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                token_list.add(new Token(TType.FUNC_END, ")", target));
-                continue;
-            }
-            if(Character.isWhitespace(c) && !state_in_quote && c != '\n') {
-                //keep the whitespace, but end the previous token, unless the last character
-                //was also whitespace. All whitespace is added as a single space.                
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
-                }
-                if(token_list.size() > 0 
-                        && token_list.get(token_list.size() - 1).type != TType.WHITESPACE){
-                    token_list.add(new Token(TType.WHITESPACE, " ", target));
-                }
-                continue;
-            }
-            if (c == '\'') {
-                if (state_in_quote && !in_smart_quote) {
-                    token_list.add(new Token(TType.STRING, buf.toString(), target));
-                    buf = new StringBuffer();
-                    state_in_quote = false;
-                    continue;
-                } else if (!state_in_quote) {
-                    state_in_quote = true;
-                    quoteLineNumberStart = line_num;
-                    in_smart_quote = false;
-                    if (buf.length() > 0) {
-                        token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                        buf = new StringBuffer();
+                    if (c == ']') {
+                        flush(TType.UNKNOWN);
+                        add(TType.RSQUARE_BRACKET, "]");
+                        in_opt_var = false;
+                        continue;
                     }
-                    continue;
-                } else {
-                    //we're in a smart quote
-                    buf.append("'");
-                }
-            } else if (c == '"') {
-                if (state_in_quote && in_smart_quote) {
-                    //For now, since this feature isn't fully implemented, just throw an exception
-                    if (true) {
-                        throw new ConfigCompileException("Doubly quoted strings are not yet supported.", target);
+                    if (c == '(') {
+                        if (buf.length() > 0) {
+                            flush(TType.FUNC_NAME);
+                        } else {
+                            //The previous token, if unknown, should be changed to a FUNC_NAME. If it's not
+                            //unknown, we may be doing standalone parenthesis, so auto tack on the __autoconcat__ function
+                            int count = 1;
+                            while(count <= token_list.size() && token_list.get(token_list.size() - count).type == TType.WHITESPACE){
+                                count++;
+                            }
+                            if (count <= token_list.size() && token_list.get(token_list.size() - count).type == TType.UNKNOWN) {
+                                token_list.get(token_list.size() - count).type = TType.FUNC_NAME;
+                                //Go ahead and remove the whitespace here too, it breaks things
+                                count--;
+                                for(int a = 0; a < count; a++){
+                                    token_list.remove(token_list.size() - 1);
+                                }
+                            } else {
+                                //This may also be the first element on the list, so, it's another autoconcat.
+                                add(TType.FUNC_NAME, "__autoconcat__");
+                            }
+                        }
+                        add(TType.FUNC_START, "(");
+                        continue;
                     }
-                    token_list.add(new Token(TType.SMART_STRING, buf.toString(), target));
-                    buf = new StringBuffer();
-                    state_in_quote = false;
-                    continue;
-                } else if (!state_in_quote) {
-                    state_in_quote = true;
-                    in_smart_quote = true;
-                    smartQuoteLineNumberStart = line_num;
-                    if (buf.length() > 0) {
-                        token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                        buf = new StringBuffer();
+                    if(c != '\n' && Character.isWhitespace(c)) {
+                        //keep the whitespace, but end the previous token, unless the last character
+                        //was also whitespace. All whitespace is added as a single space.                
+                        flush(TType.UNKNOWN);
+                        if(token_list.size() > 0 
+                                && token_list.get(token_list.size() - 1).type != TType.WHITESPACE){
+                            add(TType.WHITESPACE, " ");
+                        }
+                        continue;
                     }
-                    continue;
-                } else {
-                    //we're in normal quotes
-                    buf.append('"');
                 }
-            } else if (c == '\\') {
-                //escaped characters
-                if (state_in_quote) {
-                    if (c2 == '\\') {
-                        buf.append("\\");
-                    } else if (c2 == '\'' && !in_smart_quote) {
-                        buf.append("'");
-                    } else if (c2 == '"' && in_smart_quote) {
+                if (c == '\'') {
+                    if (state_in_quote && !in_smart_quote) {
+                        add(TType.STRING, buf.toString());
+                        buf.setLength(0);
+                        state_in_quote = false;
+                        continue;
+                    } else if (!state_in_quote) {
+                        state_in_quote = true;
+                        quoteLineNumberStart = line_num;
+                        in_smart_quote = false;
+                        flush(TType.UNKNOWN);
+                        continue;
+                    } else {
+                        //we're in a smart quote
+                        buf.append('\'');
+                    }
+                } else if (c == '"') {
+                    if (state_in_quote && in_smart_quote) {
+                        //For now, since this feature isn't fully implemented, just throw an exception
+                        throw new ConfigCompileException("Doubly quoted strings are not yet supported.", target());
+                    } else if (!state_in_quote) {
+                        state_in_quote = true;
+                        in_smart_quote = true;
+                        smartQuoteLineNumberStart = line_num;
+                        flush(TType.UNKNOWN);
+                        continue;
+                    } else {
+                        //we're in normal quotes
                         buf.append('"');
-                    } else if (c2 == 'n') {
-                        buf.append("\n");
-                    } else if (c2 == 'u') {
-                        //Grab the next 4 characters, and check to see if they are numbers
-                        StringBuilder unicode = new StringBuilder();
-                        for (int m = 0; m < 4; m++) {
-                            unicode.append(config.charAt(i + 2 + m));
-                        }
-                        try {
-                            Integer.parseInt(unicode.toString(), 16);
-                        } catch (NumberFormatException e) {
-                            throw new ConfigCompileException("Unrecognized unicode escape sequence", target);
+                    }
+                } else if (c == '\\') {
+                    //escaped characters
+                    if (state_in_quote) {
+                        if (c2 == '\\') {
+                            buf.append('\\');
+                        } else if (c2 == '\'' && !in_smart_quote) {
+                            buf.append('\'');
+                        } else if (c2 == '"' && in_smart_quote) {
+                            buf.append('"');
+                        } else if (c2 == 'n') {
+                            buf.append('\n');
+                        } else if (c2 == 'u') {
+                            //Grab the next 4 characters, and check to see if they are numbers
+                            String unicode = new String(new char[]{charAt(i + 2), charAt(i + 3), charAt(i + 4), charAt(i + 5)});
+                            int codePoint;
+                            try {
+                                codePoint = Integer.parseInt(unicode, 16);
+                            } catch (NumberFormatException e) {
+                                throw new ConfigCompileException("Unrecognized unicode escape sequence", target());
+                            }
+                            buf.append(Character.toChars(codePoint));
+                            i += 4;
+                        } else {
+                            //Since we might expand this list later, don't let them
+                            //use unescaped backslashes
+                            throw new ConfigCompileException("The escape sequence \\" + c2 + " is not a recognized escape sequence", target());
                         }
-                        buf.append(Character.toChars(Integer.parseInt(unicode.toString(), 16)));
-                        i += 4;
+
+                        i++;
+                        continue;
                     } else {
-                        //Since we might expand this list later, don't let them
-                        //use unescaped backslashes
-                        throw new ConfigCompileException("The escape sequence \\" + c2 + " is not a recognized escape sequence", target);
+                        //Control character backslash
+                        add(TType.SEPERATOR, "\\");
                     }
-
-                    i++;
+                } else if (state_in_quote) {
+                    buf.append(c);
+                    continue;
+                } else if (c == '\n' && !comment_is_block) {
+                    flush(TType.UNKNOWN);
+                    add(TType.NEWLINE, "\n");
+                    in_comment = false;
+                    comment_is_block = false;
+                    continue;
+                } else { //in a literal
+                    buf.append(c);
                     continue;
-                } else {
-                    //Control character backslash
-                    token_list.add(new Token(TType.SEPERATOR, "\\", target));
-                }
-            } else if (state_in_quote) {
-                buf.append(c);
-                continue;
-            } else if (c == '\n' && !comment_is_block) {
-                if (buf.length() > 0) {
-                    token_list.add(new Token(TType.UNKNOWN, buf.toString(), target));
-                    buf = new StringBuffer();
                 }
-                token_list.add(new Token(TType.NEWLINE, "\n", target));
-                in_comment = false;
-                comment_is_block = false;
-                continue;
-            } else { //in a literal
-                buf.append(c);
-                continue;
-            }
-        } //end lexing
-        if (state_in_quote) {
-            if(in_smart_quote){                
-                throw new ConfigCompileException("Unended string literal. You started the last double quote on line " + smartQuoteLineNumberStart, target);
-            } else {
-                throw new ConfigCompileException("Unended string literal. You started the last single quote on line " + quoteLineNumberStart, target);
-            }
-        }
-        if (in_comment || comment_is_block) {
-            throw new ConfigCompileException("Unended block comment. You started the comment on line " + commentLineNumberStart, target);
-        }
-        //look at the tokens, and get meaning from them. Also, look for improper symbol locations,
-        //and go ahead and absorb unary +- into the token
-        for (int i = 0; i < token_list.size(); i++) {
-            Token t = token_list.get(i);
-            Token prev2 = i - 2 >= 0 ? token_list.get(i - 2) : new Token(TType.UNKNOWN, "", t.target);
-            Token prev1 = i - 1 >= 0 ? token_list.get(i - 1) : new Token(TType.UNKNOWN, "", t.target);
-            Token next = i + 1 < token_list.size() ? token_list.get(i + 1) : new Token(TType.UNKNOWN, "", t.target);
-            
-            if(t.type == TType.UNKNOWN && prev1.type.isPlusMinus() &&
-                    !prev2.type.isIdentifier()){
-                //It is a negative/positive number. Absorb the sign
-                t.value = prev1.value + t.value;
-                token_list.remove(i - 1);
-                i--;
-            }
-            
-            if (t.type.equals(TType.UNKNOWN)) {
-                if (t.val().matches("/.*")) {
-                    t.type = TType.COMMAND;
-                } else if (t.val().matches("\\\\")) {
-                    t.type = TType.SEPERATOR;
-                } else if (t.val().matches("\\$[a-zA-Z0-9_]+")) {
-                    t.type = TType.VARIABLE;
-                } else if (t.val().matches("\\@[a-zA-Z0-9_]+")) {
-                    t.type = TType.IVARIABLE;
-                } else if (t.val().equals("$")) {
-                    t.type = TType.FINAL_VAR;
+            } //end lexing
+            target = null;
+            if (state_in_quote) {
+                if(in_smart_quote){                
+                    throw new ConfigCompileException("Unended string literal. You started the last double quote on line " + smartQuoteLineNumberStart, target());
                 } else {
-                    t.type = TType.LIT;
+                    throw new ConfigCompileException("Unended string literal. You started the last single quote on line " + quoteLineNumberStart, target());
                 }
             }
-            if(t.type.isSymbol() && !t.type.isUnary() && !next.type.isUnary()){
-                if(prev1.type.equals(TType.FUNC_START) || prev1.type.equals(TType.COMMA)
-                || next.type.equals(TType.FUNC_END) || next.type.equals(TType.COMMA)
-                || prev1.type.isSymbol() || next.type.isSymbol()){
-                    throw new ConfigCompileException("Unexpected symbol (" + t.val() + ")", t.getTarget());                    
-                }
-            }                            
-            
+            if (in_comment || comment_is_block) {
+                throw new ConfigCompileException("Unended block comment. You started the comment on line " + commentLineNumberStart, target());
+            }
+            return token_list;
         }
-        return token_list;
     }
 
     /**
@@ -977,7 +872,7 @@ public final class MethodScriptCompiler {
             } else if (t.type.equals(TType.FUNC_NAME)) {
                 CFunction func = new CFunction(t.val(), t.target);
                 //This will throw an exception for us if the function doesn't exist
-                if (!func.val().matches("^_[^_].*")) {
+                if (!func.isProcedure()) {
                     FunctionList.getFunction(func);
                 }
                 ParseTree f = new ParseTree(func);
@@ -1031,7 +926,7 @@ public final class MethodScriptCompiler {
                 }
                 //Check argument number now
                 if (tree.getData().val() != null) {
-                    if (!tree.getData().val().matches("^_[^_].*")) {
+                    if (!CFunction.IsProcedureName(tree.getData().val())) {
                         Integer[] numArgs = FunctionList.getFunction(tree.getData()).numArgs();
                         if (!Arrays.asList(numArgs).contains(Integer.MAX_VALUE) && !Arrays.asList(numArgs).contains(tree.getChildren().size())) {
                             throw new ConfigCompileException("Incorrect number of arguments passed to " + tree.getData().val(), tree.getData().getTarget());
@@ -1088,11 +983,95 @@ public final class MethodScriptCompiler {
         Stack<List<Procedure>> procs = new Stack<List<Procedure>>();
         procs.add(new ArrayList<Procedure>());
         optimize(tree, procs);
+        link(tree, new HashMap<String, Integer>());
         parents.pop();
         tree = parents.pop();
         return tree;
     }
     
+    /**
+     * Walks the (already optimized) tree, and binds each function node to the
+     * Function it refers to, so that the lookup doesn't have to happen each time
+     * the node is evaluated. Procedure calls are left alone, since procs are
+     * defined at runtime, and are resolved against the environment's proc table.
+     * Each ivariable is also given a slot in its scope (the script itself, or the
+     * enclosing proc, which gets a fresh variable list when it runs) which the
+     * variable list uses as a hint to find the variable without a name lookup.
+     * @param tree 
+     * @param scope The variable slots in the current scope
+     */
+    private static void link(ParseTree tree, Map<String, Integer> scope){
+        Construct data = tree.getData();
+        if(data instanceof CIdentifier){
+            link(((CIdentifier)data).contained(), scope);
+        } else if(data instanceof IVariable){
+            IVariable ivar = (IVariable)data;
+            Integer slot = scope.get(ivar.getName());
+            if(slot == null){
+                slot = scope.size();
+                scope.put(ivar.getName(), slot);
+            }
+            ivar.setSlot(slot);
+        } else if(data instanceof CFunction){
+            CFunction cFunction = (CFunction)data;
+            bind(cFunction);
+            if(cFunction.getFunction() instanceof DataHandling.proc){
+                linkProc(tree, scope);
+                return;
+            }
+        }
+        for(ParseTree child : tree.getChildren()){
+            link(child, scope);
+        }
+    }
+    
+    private static void bind(CFunction cFunction){
+        if(!cFunction.isProcedure() && cFunction.getFunction() == null){
+            try{
+                FunctionBase fb = FunctionList.getFunction(cFunction);
+                if(fb instanceof Function){
+                    cFunction.setFunction((Function)fb);
+                }
+            } catch(ConfigCompileException e){
+                //Leave it unlinked. If this node is ever evaluated, the
+                //runtime will report the problem.
+            }
+        }
+    }
+    
+    /**
+     * Links a proc definition. The proc's variable list starts out with the parameters,
+     * in declaration order, followed by @arguments (see {@link Procedure#execute}), so those
+     * get the first slots of the body's scope. The name and the default values of the
+     * parameters are evaluated where the proc is defined, so they stay in the outer scope.
+     * @param tree
+     * @param outer 
+     */
+    private static void linkProc(ParseTree tree, Map<String, Integer> outer){
+        Map<String, Integer> scope = new HashMap<String, Integer>();
+        List<ParseTree> children = tree.getChildren();
+        for(int i = 0; i < children.size() - 1; i++){
+            ParseTree child = children.get(i);
+            if(i > 0 && child.getData() instanceof IVariable){
+                link(child, scope);
+            } else if(i > 0 && child.getData() instanceof CFunction && child.getData().val().equals("assign") && child.numberOfChildren() > 0){
+                bind((CFunction)child.getData());
+                link(child.getChildAt(0), scope);
+                for(int j = 1; j < child.numberOfChildren(); j++){
+                    link(child.getChildAt(j), outer);
+                }
+            } else {
+                link(child, outer);
+            }
+        }
+        if(!scope.containsKey("@arguments")){
+            scope.put("@arguments", scope.size());
+        }
+        if(!children.isEmpty()){
+            link(children.get(children.size() - 1), scope);
+        }
+    }
+    
     /**
      * Recurses down into the tree, attempting to optimize where possible. A few things
      * have strong coupling, for information on these items, see the documentation included
@@ -1269,6 +1248,24 @@ public final class MethodScriptCompiler {
         return execute(root, env, done, script, null);
     }
     
+    /**
+     * The $variable index of each tree that has been executed with constants, so the
+     * tree only has to be walked the first time. The trees are weakly referenced, so
+     * the indexes go away along with the trees.
+     */
+    private static final Map<ParseTree, VariableIndex> dollarVarIndexes
+            = Collections.synchronizedMap(new WeakHashMap<ParseTree, VariableIndex>());
+    
+    private static VariableIndex GetDollarVarIndex(ParseTree root){
+        VariableIndex index = dollarVarIndexes.get(root);
+        if(index == null){
+            //Two threads may both build it, but they build the same index
+            index = VariableIndex.Build(Arrays.asList(root));
+            dollarVarIndexes.put(root, index);
+        }
+        return index;
+    }
+    
     /**
      * Executes a pre-compiled MethodScript, given the specified Script environment,
      * but also provides a method to set the constants in the script.
@@ -1288,13 +1285,7 @@ public final class MethodScriptCompiler {
             for(Variable v : vars){
                 varMap.put(v.getName(), v);
             }
-            for (Construct tempNode : root.getAllData()) {
-                if (tempNode instanceof Variable) {
-                    ((Variable) tempNode).setVal(
-                            Static.resolveConstruct(
-                            Static.resolveDollarVar(varMap.get(((Variable) tempNode).getName()), vars).toString(), tempNode.getTarget()));
-                }
-            }
+            env.SetDollarVars(GetDollarVarIndex(root).bind(varMap, vars));
         }
         StringBuilder b = new StringBuilder();
         Construct returnable = null;
@@ -1317,7 +1308,44 @@ public final class MethodScriptCompiler {
         return Static.resolveConstruct(b.toString().trim(), Target.UNKNOWN);
     }
 
+    /**
+     * The procedures defined by the auto includes, if they have been frozen, or null
+     * if the auto includes are run each time.
+     */
+    private static volatile Map<String, Procedure> autoIncludeProcs = null;
+    
+    /**
+     * If the cache-auto-includes preference is set, runs the auto includes once, and saves the
+     * procedures they define, so that registerAutoIncludes can simply share them with each new
+     * environment, instead of running the auto includes again. This should be called each time
+     * the scripts are reloaded, after the auto include files are known.
+     */
+    public static void freezeAutoIncludes() {
+        autoIncludeProcs = null;
+        if (!Prefs.CacheAutoIncludes()) {
+            return;
+        }
+        Env env = new Env();
+        try {
+            runAutoIncludes(env, null);
+        } catch (ConfigRuntimeException e) {
+            //They'll get this error each time the auto includes are run instead
+            ConfigRuntimeException.React(e);
+            return;
+        }
+        autoIncludeProcs = Collections.unmodifiableMap(new HashMap<String, Procedure>(env.GetProcs()));
+    }
+
     public static void registerAutoIncludes(Env env, Script s) {
+        Map<String, Procedure> frozen = autoIncludeProcs;
+        if (frozen != null) {
+            env.InheritProcs(frozen);
+            return;
+        }
+        runAutoIncludes(env, s);
+    }
+    
+    private static void runAutoIncludes(Env env, Script s) {
         File auto_include = new File("plugins/CommandHelper/auto_include.ms");
         if (auto_include.exists()) {
             MethodScriptCompiler.execute(IncludeCache.get(auto_include, new Target(0, auto_include, 0)), env, null, s);
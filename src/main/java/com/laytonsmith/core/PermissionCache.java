@@ -0,0 +1,146 @@
+package com.laytonsmith.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers the result of {@link Static#hasCHPermission(String, Env)} for a short
+ * time, so that a restricted function called in a loop doesn't ask the permissions
+ * plugin the same questions over and over. Decisions are remembered per player, world,
+ * function and label, for {@link Prefs#PermissionCacheTTL()} milliseconds, and are
+ * forgotten early when the player quits or changes worlds, or the scripts are reloaded.
+ * <p>
+ * The permission nodes that are checked for each function and label are also built
+ * once, instead of on every check.
+ * @author Layton
+ */
+public final class PermissionCache {
+
+    private PermissionCache(){}
+
+    private static final class Decision {
+        private final boolean allowed;
+        private final long expires;
+
+        private Decision(boolean allowed, long expires){
+            this.allowed = allowed;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * The decisions, by player name, then by world, function and label.
+     */
+    private static final ConcurrentMap<String, ConcurrentMap<String, Decision>> decisions
+            = new ConcurrentHashMap<String, ConcurrentMap<String, Decision>>();
+    private static final ConcurrentMap<String, String[]> functionNodes = new ConcurrentHashMap<String, String[]>();
+    private static final ConcurrentMap<String, String[]> labelNodes = new ConcurrentHashMap<String, String[]>();
+
+    private static String Key(String world, String function, String label){
+        return world + '\u0000' + function + '\u0000' + label;
+    }
+
+    /**
+     * Returns the cached decision, or null if there isn't one, or it has expired.
+     * @param player
+     * @param world
+     * @param function
+     * @param label
+     * @return
+     */
+    public static Boolean Get(String player, String world, String function, String label){
+        ConcurrentMap<String, Decision> forPlayer = decisions.get(player);
+        if(forPlayer == null){
+            return null;
+        }
+        String key = Key(world, function, label);
+        Decision d = forPlayer.get(key);
+        if(d == null){
+            return null;
+        }
+        if(d.expires < System.currentTimeMillis()){
+            forPlayer.remove(key, d);
+            return null;
+        }
+        return d.allowed;
+    }
+
+    /**
+     * Remembers the decision, if caching is turned on.
+     * @param player
+     * @param world
+     * @param function
+     * @param label
+     * @param allowed
+     */
+    public static void Put(String player, String world, String function, String label, boolean allowed){
+        int ttl = Prefs.PermissionCacheTTL();
+        if(ttl <= 0){
+            return;
+        }
+        ConcurrentMap<String, Decision> forPlayer = decisions.get(player);
+        if(forPlayer == null){
+            ConcurrentMap<String, Decision> newMap = new ConcurrentHashMap<String, Decision>();
+            forPlayer = decisions.putIfAbsent(player, newMap);
+            if(forPlayer == null){
+                forPlayer = newMap;
+            }
+        }
+        forPlayer.put(Key(world, function, label), new Decision(allowed, System.currentTimeMillis() + ttl));
+    }
+
+    /**
+     * Forgets all the decisions made for this player. This should be called
+     * when the player quits or changes worlds.
+     * @param player
+     */
+    public static void Invalidate(String player){
+        decisions.remove(player);
+    }
+
+    /**
+     * Forgets all the decisions. This should be called when the scripts or
+     * permissions are reloaded.
+     */
+    public static void Clear(){
+        decisions.clear();
+    }
+
+    /**
+     * Returns the permission nodes that allow the use of this function.
+     * These are built when the function is registered.
+     * @param function
+     * @return
+     */
+    public static String[] FunctionNodes(String function){
+        String[] nodes = functionNodes.get(function);
+        if(nodes == null){
+            nodes = new String[]{"ch.func.use." + function, "commandhelper.func.use." + function};
+            functionNodes.put(function, nodes);
+        }
+        return nodes;
+    }
+
+    /**
+     * Returns the permission nodes that allow the use of a command with this label.
+     * If the label is a list of groups (~group1/group2), the groups are returned instead.
+     * @param label
+     * @return
+     */
+    public static String[] LabelNodes(String label){
+        String[] nodes = labelNodes.get(label);
+        if(nodes == null){
+            if(label.startsWith("~")){
+                nodes = label.substring(1).split("/");
+            } else if(label.contains(".")){
+                //We are using a non-standard permission. Don't automatically
+                //add CH's prefix
+                nodes = new String[]{label};
+            } else {
+                nodes = new String[]{"ch.alias." + label, "commandhelper.alias." + label};
+            }
+            labelNodes.put(label, nodes);
+        }
+        return nodes;
+    }
+}
@@ -46,7 +46,14 @@ public final class Prefs {
         PROFILING_FILE("profiling-file"),
         SHOW_SPLASH_SCREEN("show-splash-screen"),
         USE_COLORS("use-colors"),
-        HALT_ON_FAILURE("halt-on-failure");
+        HALT_ON_FAILURE("halt-on-failure"),
+        CACHE_AUTO_INCLUDES("cache-auto-includes"),
+        PERSISTANCE_WRITE_BEHIND_INTERVAL("persistance-write-behind-interval"),
+        PERSISTANCE_WRITE_BEHIND_THRESHOLD("persistance-write-behind-threshold"),
+        PERMISSION_CACHE_TTL("permission-cache-ttl"),
+        USERLAND_THREADS("userland-threads"),
+        USERLAND_QUEUE_SIZE("userland-queue-size"),
+        INCREMENTAL_RELOAD("incremental-reload");
         String name;
         private PNames(String name){
             this.name = name;
@@ -79,6 +86,13 @@ public final class Prefs {
         a.add(new Preference(PNames.SHOW_SPLASH_SCREEN.config(), "true", Preferences.Type.BOOLEAN, "Whether or not to show the splash screen at server startup"));
         a.add(new Preference(PNames.USE_COLORS.config(), (TermColors.SYSTEM == TermColors.SYS.WINDOWS ? "false" : "true"), Preferences.Type.BOOLEAN, "Whether or not to use console colors. If this is a Windows machine, defaults to false, however, it can be toggled manually, and will then respect your setting."));
         a.add(new Preference(PNames.HALT_ON_FAILURE.config(), "false", Preferences.Type.BOOLEAN, "Whether or not to halt compilation of pure mscript files if a compilation failure occurs in any one of the files."));
+        a.add(new Preference(PNames.CACHE_AUTO_INCLUDES.config(), "false", Preferences.Type.BOOLEAN, "If true, the auto include files are only run once, when the scripts are (re)loaded, and the procedures they define are shared by every command and event, instead of the auto includes being run again each time a command is run. Only turn this on if your auto includes only define procedures, because any other code in them will only run once."));
+        a.add(new Preference(PNames.PERSISTANCE_WRITE_BEHIND_INTERVAL.config(), "0", Preferences.Type.INT, "If greater than 0, store_value no longer writes the persistance database to disk immediately. Instead, changes are batched, and written by a background thread at most this many milliseconds later. This makes store_value much faster with large databases, but changes made just before a crash may be lost. If 0, each change is written immediately."));
+        a.add(new Preference(PNames.PERSISTANCE_WRITE_BEHIND_THRESHOLD.config(), "1000", Preferences.Type.INT, "If write behind is enabled, the number of unsaved changes that causes them to be written right away, without waiting for the interval. If 0, only the interval is used."));
+        a.add(new Preference(PNames.PERMISSION_CACHE_TTL.config(), "5000", Preferences.Type.INT, "The number of milliseconds that CommandHelper remembers whether or not a player has permission to use a restricted function, so that the permissions plugin doesn't have to be asked every time the function is called. These are also forgotten when the player quits or changes worlds, or the scripts are reloaded. If 0, permissions are checked every time."));
+        a.add(new Preference(PNames.USERLAND_THREADS.config(), "16", Preferences.Type.INT, "The maximum number of threads that are used to run asynchronous tasks started by scripts, for instance async_read. This is also the maximum number of execution queues that can run at once; other queues wait until one of those is done."));
+        a.add(new Preference(PNames.USERLAND_QUEUE_SIZE.config(), "1000", Preferences.Type.INT, "The maximum number of asynchronous tasks that can be waiting for a thread. If this many tasks are already waiting, starting another one fails with an exception that scripts can catch, instead of the task being run on the thread that started it, which is often the server thread. If 0, there is no limit."));
+        a.add(new Preference(PNames.INCREMENTAL_RELOAD.config(), "false", Preferences.Type.BOOLEAN, "If true, /reloadaliases only recompiles the files (and included files) that have changed since the last reload, and compiles them on several threads, in the background. Only the switch to the new scripts happens on the server thread, once everything is compiled. If false, everything is recompiled each time, and the server waits for the reload to finish."));
         prefs = new Preferences("CommandHelper", Static.getLogger(), a);
         prefs.init(f);
     }
@@ -150,4 +164,32 @@ public final class Prefs {
     public static Boolean HaltOnFailure() {
         return (Boolean)pref(PNames.HALT_ON_FAILURE);
     }
+    
+    public static Boolean CacheAutoIncludes() {
+        return (Boolean)pref(PNames.CACHE_AUTO_INCLUDES);
+    }
+    
+    public static Integer PersistanceWriteBehindInterval() {
+        return (Integer)pref(PNames.PERSISTANCE_WRITE_BEHIND_INTERVAL);
+    }
+    
+    public static Integer PersistanceWriteBehindThreshold() {
+        return (Integer)pref(PNames.PERSISTANCE_WRITE_BEHIND_THRESHOLD);
+    }
+    
+    public static Integer PermissionCacheTTL() {
+        return (Integer)pref(PNames.PERMISSION_CACHE_TTL);
+    }
+    
+    public static Integer UserlandThreads() {
+        return (Integer)pref(PNames.USERLAND_THREADS);
+    }
+    
+    public static Integer UserlandQueueSize() {
+        return (Integer)pref(PNames.USERLAND_QUEUE_SIZE);
+    }
+    
+    public static Boolean IncrementalReload() {
+        return (Boolean)pref(PNames.INCREMENTAL_RELOAD);
+    }
 }
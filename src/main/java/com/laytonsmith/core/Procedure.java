@@ -12,6 +12,7 @@ import com.laytonsmith.core.functions.FunctionList;
 import com.sk89q.util.StringUtil;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -23,7 +24,7 @@ public class Procedure implements Cloneable {
 
     private String name;
     private Map<String, IVariable> varList;
-    private Map<String, Construct> originals = new HashMap<String, Construct>();
+    private Map<String, Construct> originals = new LinkedHashMap<String, Construct>();
     private List<IVariable> varIndex = new ArrayList<IVariable>();
     private ParseTree tree;
     private boolean possiblyConstant = false;
@@ -42,7 +43,7 @@ public class Procedure implements Cloneable {
             this.originals.put(var.getName(), var.ival());
         }
         this.tree = tree;
-        if (!this.name.matches("^_[^_].*")) {
+        if (!CFunction.IsProcedureName(this.name)) {
             throw new ConfigRuntimeException("Procedure names must start with an underscore", ExceptionType.FormatException, t);
         }
         //Let's look through the tree now, and see if this is possibly constant or not.
@@ -145,6 +146,8 @@ public class Procedure implements Cloneable {
             env.GetVarList().set(new IVariable(key, c, Target.UNKNOWN));
             array.push(c);
         }
+        //@arguments comes right after the parameters, which is the slot the compiler reserved for it
+        env.GetVarList().set(new IVariable("@arguments", array, Target.UNKNOWN));
         Script fakeScript = Script.GenerateScript(tree, env.GetLabel());//new Script(null, null);        
         for (int i = 0; i < args.size(); i++) {
             Construct c = args.get(i);
@@ -154,7 +157,6 @@ public class Procedure implements Cloneable {
                 env.GetVarList().set(new IVariable(varname, c, c.getTarget()));
             }
         }
-        env.GetVarList().set(new IVariable("@arguments", array, Target.UNKNOWN));
 
         try {
             fakeScript.eval(tree, env);
@@ -36,6 +36,10 @@ public class Script {
     private List<Token> fullRight;
     private List<Construct> cleft;
     private List<ParseTree> cright;
+    /**
+     * The $variables used in cright, built when it is compiled.
+     */
+    private VariableIndex dollarVars;
     //This should be null if we are running in non-alias mode
     private Map<String, Variable> left_vars;
     boolean hasBeenCompiled = false;
@@ -54,7 +58,7 @@ public class Script {
     }
 
     private Procedure getProc(String name) {
-        return CurrentEnv.GetProcs().get(name);
+        return CurrentEnv.GetProc(name);
     }
     
     public Env getCurrentEnv(){
@@ -81,6 +85,7 @@ public class Script {
         s.compilerError = false;
         s.cright = new ArrayList<ParseTree>();
         s.cright.add(tree);
+        s.dollarVars = VariableIndex.Build(s.cright);
         s.label = label;
         
         return s;
@@ -126,18 +131,9 @@ public class Script {
         }
 
         try {
+            //The values go in the environment, not the tree, since the tree is shared by every run of this script
+            CurrentEnv.SetDollarVars(dollarVars.bind(left_vars, vars));
             for (ParseTree rootNode : cright) {
-                for (Construct tempNode : rootNode.getAllData()) {
-                    if (tempNode instanceof Variable) {
-                        if(left_vars == null){
-                            throw new ConfigRuntimeException("$variables may not be used in this context. Only @variables may be.", null, tempNode.getTarget());
-                        }
-                        ((Variable) tempNode).setVal(
-                                Static.resolveConstruct(
-                                Static.resolveDollarVar(left_vars.get(((Variable) tempNode).getName()), vars).toString(), tempNode.getTarget()));
-                    }
-                }
-                
                 MethodScriptCompiler.registerAutoIncludes(CurrentEnv, this);
                 MethodScriptCompiler.execute(rootNode, CurrentEnv, done, this);
             }
@@ -188,7 +184,7 @@ public class Script {
         Construct ret = eval(c, env);
         if(ret instanceof IVariable){
             IVariable cur = (IVariable)ret;
-            return env.GetVarList().get(cur.getName(), cur.getTarget()).ival();
+            return env.GetVarList().get(cur).ival();
         }
         return ret;
     }
@@ -199,7 +195,8 @@ public class Script {
         CurrentEnv.SetLabel(this.label);
         if (m.getCType() == ConstructType.FUNCTION) {
                 env.SetScript(this);
-                if (m.val().matches("^_[^_].*")) {
+                CFunction cFunction = (CFunction) m;
+                if (cFunction.isProcedure()) {
                     //Not really a function, so we can't put it in Function.
                     Procedure p = getProc(m.val());
                     if (p == null) {
@@ -211,12 +208,17 @@ public class Script {
                     } catch(Exception e){}
                     return p.cexecute(c.getChildren(), newEnv);
                 }
-                final Function f;
-                try{
-                    f = (Function)FunctionList.getFunction(m);
-                } catch(ConfigCompileException e){
-                    //Turn it into a config runtime exception. This shouldn't ever happen though.
-                    throw new ConfigRuntimeException("Unable to find function " + m.val(), m.getTarget());
+                Function f = cFunction.getFunction();
+                if(f == null){
+                    //This node wasn't linked during compilation (it was probably generated
+                    //at runtime) so look it up now, and link it for next time.
+                    try{
+                        f = (Function)FunctionList.getFunction(m);
+                    } catch(ConfigCompileException e){
+                        //Turn it into a config runtime exception. This shouldn't ever happen though.
+                        throw new ConfigRuntimeException("Unable to find function " + m.val(), m.getTarget());
+                    }
+                    cFunction.setFunction(f);
                 }
                 //We have special handling for loop and other control flow functions
                 if(f instanceof assign){
@@ -231,13 +233,16 @@ public class Script {
                     }
                 }
                 
+                List<ParseTree> children = c.getChildren();
                 if(f.useSpecialExec()){
-                    return f.execs(m.getTarget(), env, this, c.getChildren().toArray(new ParseTree[]{}));
+                    return f.execs(m.getTarget(), env, this, children.toArray(new ParseTree[children.size()]));
                 }
 
-                ArrayList<Construct> args = new ArrayList<Construct>();
-                for (ParseTree c2 : c.getChildren()) {
-                    args.add(eval(c2, env));
+                //Evaluate the arguments straight into an array of the correct size,
+                //rather than building up a list and copying it.
+                Construct[] ca = new Construct[children.size()];
+                for (int i = 0; i < ca.length; i++) {
+                    ca[i] = eval(children.get(i), env);
                 }
                 if (f.isRestricted()) {
                     boolean perm = Static.hasCHPermission(f.getName(), env);
@@ -246,26 +251,14 @@ public class Script {
                                 ExceptionType.InsufficientPermissionException, m.getTarget());
                     }
                 }
-                Object[] a = args.toArray();
-                Construct[] ca = new Construct[a.length];
-                for (int i = 0; i < a.length; i++) {
-                    ca[i] = (Construct) a[i];
-                    //CArray, CBoolean, CDouble, CInt, CNull, CString, CVoid, CEntry, CLabel (only to sconcat).
-                    if (!(ca[i] instanceof CArray || ca[i] instanceof CBoolean || ca[i] instanceof CDouble
-                            || ca[i] instanceof CInt || ca[i] instanceof CNull
-                            || ca[i] instanceof CString || ca[i] instanceof CVoid 
-                            || ca[i] instanceof IVariable || ca[i] instanceof CEntry || ca[i] instanceof CLabel)
-                            && (!f.getName().equals("__autoconcat__") && (ca[i] instanceof CLabel))) {
-                        throw new ConfigRuntimeException("Invalid Construct (" 
-                                + ca[i].getClass() + ") being passed as an argument to a function (" 
-                                + f.getName() + ")", null, m.getTarget());
-                    }
-                    if(env.GetFlag("array_get_alt_mode") == Boolean.TRUE && i == 0){
-                        continue;
-                    }
-                    if(f.preResolveVariables() && ca[i] instanceof IVariable){
-                        IVariable cur = (IVariable)ca[i];
-                        ca[i] = env.GetVarList().get(cur.getName(), cur.getTarget()).ival();
+                if (f.preResolveVariables()) {
+                    //In array_get_alt_mode, the first argument must stay an ivariable
+                    int start = env.GetFlag("array_get_alt_mode") == Boolean.TRUE ? 1 : 0;
+                    for (int i = start; i < ca.length; i++) {
+                        if (ca[i] instanceof IVariable) {
+                            IVariable cur = (IVariable)ca[i];
+                            ca[i] = env.GetVarList().get(cur).ival();
+                        }
                     }
                 }
 
@@ -273,12 +266,35 @@ public class Script {
                 return ret;
 
         } else if (m.getCType() == ConstructType.VARIABLE) {            
-            return Static.resolveConstruct(m.val(), m.getTarget());
+            VariableIndex.Frame frame = env.GetDollarVars();
+            Construct value = frame == null ? null : frame.get((Variable) m);
+            return Static.resolveConstruct(value == null ? m.val() : value.toString(), m.getTarget());
         } else {
             return m;
         }
     }
 
+    /**
+     * Returns the literal words at the start of the signature, up to the first variable,
+     * for instance, for /cmd sub $var, this would be [/cmd, sub]. Any command that this
+     * script matches must start with these words. If the signature failed to compile, null
+     * is returned, since this script can't match anything.
+     * @return 
+     */
+    public List<String> getLiteralPrefix() {
+        if(cleft == null){
+            return null;
+        }
+        List<String> prefix = new ArrayList<String>();
+        for(Construct c : cleft){
+            if(c.getCType() == ConstructType.VARIABLE){
+                break;
+            }
+            prefix.add(c.val());
+        }
+        return prefix;
+    }
+
     public boolean match(String command) {
         if(cleft == null){
             //The compilation error happened during the signature declaration, so 
@@ -428,6 +444,37 @@ public class Script {
         return this;
     }
 
+    /**
+     * Compiles this script, but instead of compiling the right side, uses the compiled right
+     * side of an identical script, from {@link #getCompiledRight()}. Running a script doesn't
+     * change its compiled right side, so it can be shared.
+     * @param compiledRight
+     * @return
+     * @throws ConfigCompileException 
+     */
+    public Script compile(List<ParseTree> compiledRight) throws ConfigCompileException {
+        try {
+            verifyLeft();
+            compileLeft();
+        } catch (ConfigCompileException e) {
+            compilerError = true;
+            throw e;
+        }
+        cright = new ArrayList<ParseTree>(compiledRight);
+        dollarVars = VariableIndex.Build(cright);
+        compilerError = false;
+        hasBeenCompiled = true;
+        return this;
+    }
+
+    /**
+     * Returns the compiled right side of this script, or null if it hasn't been compiled.
+     * @return 
+     */
+    public List<ParseTree> getCompiledRight() {
+        return cright == null ? null : Collections.unmodifiableList(cright);
+    }
+
     private boolean verifyLeft() throws ConfigCompileException {
         boolean inside_opt_var = false;
         boolean after_no_def_opt_var = false;
@@ -644,6 +691,7 @@ public class Script {
         for (List<Token> l : right) {
             cright.add(MethodScriptCompiler.compile(l));
         }
+        dollarVars = VariableIndex.Build(cright);
     }
 
     public void checkAmbiguous(List<Script> scripts) throws ConfigCompileException {
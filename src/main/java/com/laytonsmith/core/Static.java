@@ -657,47 +657,42 @@ public final class Static {
         if("*".equals(env.GetLabel())){
             return true;
         }
-        boolean perm = false;
+        //These are cheap to check, and can change at any time, so they aren't cached
+        if (env.GetCommandSender() == null
+                || env.GetCommandSender().isOp()) {
+            return true;
+        }
         PermissionsResolverManager perms = Static.getPermissionsResolverManager();
-        if (perms != null) {
-            if (env.GetCommandSender() instanceof MCPlayer) {
-                perm = perms.hasPermission(env.GetPlayer().getWorld().getName(), env.GetPlayer().getName(), "ch.func.use." + functionName)
-                        || perms.hasPermission(env.GetPlayer().getWorld().getName(), env.GetPlayer().getName(), "commandhelper.func.use." + functionName);
-                if (env.GetLabel() != null && env.GetLabel().startsWith("~")) {
-                    String[] groups = env.GetLabel().substring(1).split("/");
-                    for (String group : groups) {
-                        if (perms.inGroup(env.GetPlayer().getName(), group)) {
-                            perm = true;
-                            break;
-                        }
-                    }
-                } else {
-                    if (env.GetLabel() != null){
-                        if(env.GetLabel().contains(".")){
-                            //We are using a non-standard permission. Don't automatically
-                            //add CH's prefix
-                            if(perms.hasPermission(env.GetPlayer().getWorld().getName(), env.GetPlayer().getName(), env.GetLabel())){
-                                perm = true;
-                            }
-                        } else if((perms.hasPermission(env.GetPlayer().getWorld().getName(), env.GetPlayer().getName(), "ch.alias." + env.GetLabel()))
-                            || perms.hasPermission(env.GetPlayer().getWorld().getName(), env.GetPlayer().getName(), "commandhelper.alias." + env.GetLabel())) {
-                            perm = true;
-                        }
-                    }
-                }
-            } else if (env.GetCommandSender() instanceof MCConsoleCommandSender) {
+        if (perms == null) {
+            return true;
+        }
+        if (!(env.GetCommandSender() instanceof MCPlayer)) {
+            return env.GetCommandSender() instanceof MCConsoleCommandSender;
+        }
+        String player = env.GetPlayer().getName();
+        String world = env.GetPlayer().getWorld().getName();
+        String label = env.GetLabel();
+        Boolean cached = PermissionCache.Get(player, world, functionName, label);
+        if (cached != null) {
+            return cached;
+        }
+        boolean perm = false;
+        for (String node : PermissionCache.FunctionNodes(functionName)) {
+            if (perms.hasPermission(world, player, node)) {
                 perm = true;
+                break;
             }
-        } else {
-            perm = true;
         }
-        if (env.GetLabel() != null && env.GetLabel().equals("*")) {
-            perm = true;
-        }
-        if (env.GetCommandSender() == null
-                || env.GetCommandSender().isOp()) {
-            perm = true;
+        if (!perm && label != null) {
+            boolean groups = label.startsWith("~");
+            for (String node : PermissionCache.LabelNodes(label)) {
+                if (groups ? perms.inGroup(player, node) : perms.hasPermission(world, player, node)) {
+                    perm = true;
+                    break;
+                }
+            }
         }
+        PermissionCache.Put(player, world, functionName, label, perm);
         return perm;
     }
     
@@ -1,21 +1,33 @@
 package com.laytonsmith.core;
 
+import com.laytonsmith.PureUtilities.BoundedExecutor;
+import com.laytonsmith.core.constructs.Target;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The Threader class maintains a pool of threads that are required by the
- * userland code, so that it can be throttled if necessary.
+ * userland code, so that it can be throttled if necessary. The pool has at most
+ * {@link Prefs#UserlandThreads()} threads, and at most {@link Prefs#UserlandQueueSize()}
+ * tasks waiting for them. Once that is full, new tasks are rejected with a
+ * RejectedExecutionException, rather than being run by the thread that submitted
+ * them, which is often the server thread.
  *
  * @author lsmith
  */
 public class Threader {
 
+	/**
+	 * How often a warning is logged while the pool is full, in ms.
+	 */
+	private static final long SATURATION_WARNING_INTERVAL = 10000;
 	private static Threader instance;
-	private static int threadCount = 0;
+	private static final AtomicInteger threadCount = new AtomicInteger();
 
 	/**
 	 * Returns an instance of a Threader. Each threader could be configured
@@ -24,22 +36,74 @@ public class Threader {
 	 *
 	 * @return The threader instance
 	 */
-	public static Threader GetThreader() {
+	public static synchronized Threader GetThreader() {
 		if (instance == null) {
 			instance = new Threader();
 		}
 		return instance;
 	}
-	ExecutorService execService;
+
+	/**
+	 * Stops the threader, after waiting up to timeout ms for the tasks that were
+	 * already submitted to finish. The next call to {@link #GetThreader()} creates
+	 * a new one.
+	 *
+	 * @param timeout
+	 * @return True if all the tasks finished
+	 * @throws InterruptedException
+	 */
+	public static boolean Shutdown(long timeout) throws InterruptedException {
+		Threader t;
+		synchronized (Threader.class) {
+			t = instance;
+			instance = null;
+		}
+		if (t == null) {
+			return true;
+		}
+		boolean drained = t.execService.drain(timeout, TimeUnit.MILLISECONDS);
+		CHLog.Log(CHLog.Tags.USERLAND, CHLog.Level.DEBUG, "Userland thread pool shut down: " + t.execService.getStats(), Target.UNKNOWN);
+		return drained;
+	}
+	BoundedExecutor execService;
+	private long lastSaturationWarning = 0;
 
 	private Threader() {
-		execService = Executors.newCachedThreadPool(new ThreadFactory() {
+		execService = new BoundedExecutor(Prefs.UserlandThreads(), Prefs.UserlandQueueSize(), new ThreadFactory() {
 			public Thread newThread(Runnable r) {
-				Thread t = new Thread(r, "commandhelper-userland-" + (++threadCount));
+				Thread t = new Thread(r, "commandhelper-userland-" + threadCount.incrementAndGet());
 				t.setDaemon(false);
 				return t;
 			}
-		});		
+		});
+	}
+
+	/**
+	 * Returns the current state of the pool.
+	 *
+	 * @return
+	 */
+	public BoundedExecutor.Stats getStats() {
+		return execService.getStats();
+	}
+
+	/**
+	 * Logs a warning that a task was rejected because the pool is full, at most
+	 * once every {@link #SATURATION_WARNING_INTERVAL} ms.
+	 */
+	private void warnSaturated() {
+		if (execService.isShutdown()) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			if (now - lastSaturationWarning < SATURATION_WARNING_INTERVAL) {
+				return;
+			}
+			lastSaturationWarning = now;
+		}
+		CHLog.Log(CHLog.Tags.USERLAND, CHLog.Level.WARNING, "The userland thread pool is full, so asynchronous tasks are"
+				+ " being rejected. Consider raising userland-threads or userland-queue-size. " + execService.getStats(), Target.UNKNOWN);
 	}
 
 	/**
@@ -64,7 +128,12 @@ public class Threader {
 	 * @throws NullPointerException if the task is null
 	 */
 	public <T> Future<T> submit(Callable<T> callable) {
-		return execService.submit(callable);
+		try {
+			return execService.submit(callable);
+		} catch (RejectedExecutionException e) {
+			warnSaturated();
+			throw e;
+		}
 	}
 
 	/**
@@ -80,7 +149,12 @@ public class Threader {
 	 * @throws NullPointerException if the task is null
 	 */
 	public <T> Future<T> submit(Runnable task, T result) {
-		return execService.submit(task, result);
+		try {
+			return execService.submit(task, result);
+		} catch (RejectedExecutionException e) {
+			warnSaturated();
+			throw e;
+		}
 	}
 
 	/**
@@ -95,6 +169,11 @@ public class Threader {
 	 * @throws NullPointerException if the task is null
 	 */
 	public Future<?> submit(Runnable task){
-		return execService.submit(task);
+		try {
+			return execService.submit(task);
+		} catch (RejectedExecutionException e) {
+			warnSaturated();
+			throw e;
+		}
 	}
 }
@@ -8,10 +8,14 @@ import com.laytonsmith.core.constructs.Target;
 import com.laytonsmith.core.constructs.Token;
 import com.laytonsmith.core.exceptions.ConfigCompileException;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * This class manages user aliases, and repeat commands.
@@ -37,6 +41,18 @@ public class UserManager {
     
     String name;
     String lastCommand;
+    /**
+     * The compiled aliases for this user, and the stored aliases they were compiled
+     * from. The aliases can be changed in the persistance database by other means than
+     * addAlias and delAlias, so these are only used while the stored aliases still match.
+     */
+    private List<Script> compiledScripts = null;
+    private List<String> compiledFrom = null;
+    /**
+     * The compiled aliases, keyed by the alias source, so that reloading the aliases
+     * after one is added or removed doesn't require the others to be recompiled.
+     */
+    private Map<String, Script> compiledCache = new HashMap<String, Script>();
     
     private UserManager(String name){
         this.name = name;
@@ -64,7 +80,11 @@ public class UserManager {
             Integer thisX = Integer.parseInt(x[x.length - 1]);
             nextValue = Math.max(thisX + 1, nextValue + 1);
         }
-        persist.setValue(new String[]{"user", name, "aliases", nextValue.toString()}, alias);
+        try {
+            persist.setValue(new String[]{"user", name, "aliases", nextValue.toString()}, alias);
+        } catch (IOException ex) {
+            Logger.getLogger(UserManager.class.getName()).log(Level.SEVERE, null, ex);
+        }
         return nextValue;
     }
     
@@ -90,7 +110,11 @@ public class UserManager {
     }
     
     public void delAlias(int id){
-        Static.getPersistance().setValue(new String[]{"user", name, "aliases", Integer.toString(id)}, null);
+        try {
+            Static.getPersistance().setValue(new String[]{"user", name, "aliases", Integer.toString(id)}, null);
+        } catch (IOException ex) {
+            Logger.getLogger(UserManager.class.getName()).log(Level.SEVERE, null, ex);
+        }
     }
     
     public String getAllAliases(int page){
@@ -115,17 +139,44 @@ public class UserManager {
         return b.toString();
     }
     
+    /**
+     * Returns all of this user's aliases, already compiled. Aliases that fail to compile
+     * are skipped. The stored aliases are checked on each call, and only the aliases that
+     * weren't compiled last time are compiled.
+     * @return 
+     */
     public List<Script> getAllScripts(){
         List<Map.Entry<String, Object>> scripts = Static.getPersistance().getNamespaceValues(new String[]{"user", name, "aliases"});
-        List<Script> list = new ArrayList<Script>();
+        List<String> aliases = new ArrayList<String>(scripts.size());
         for(Map.Entry<String, Object> entry : scripts){
+            aliases.add(entry.getValue() == null ? null : entry.getValue().toString());
+        }
+        if(compiledScripts != null && aliases.equals(compiledFrom)){
+            return compiledScripts;
+        }
+        List<Script> list = new ArrayList<Script>();
+        Map<String, Script> cache = new HashMap<String, Script>();
+        for(String alias : aliases){
+            if(alias == null){
+                continue;
+            }
             try{
-                list.add(getAlias((String)entry.getValue()));
+                Script s = compiledCache.get(alias);
+                if(s == null){
+                    s = getAlias(alias).compile();
+                }
+                cache.put(alias, s);
+                list.add(s);
             } catch(ConfigCompileException e){
                 //Ignore this one
+            } catch(IndexOutOfBoundsException e){
+                //Improperly formatted alias, ignore this one too
             }
         }
-        return list;
+        compiledCache = cache;
+        compiledFrom = aliases;
+        compiledScripts = Collections.unmodifiableList(list);
+        return compiledScripts;
     }
     
     
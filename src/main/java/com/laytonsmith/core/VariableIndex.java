@@ -0,0 +1,112 @@
+package com.laytonsmith.core;
+
+import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.constructs.Target;
+import com.laytonsmith.core.constructs.Variable;
+import com.laytonsmith.core.exceptions.ConfigRuntimeException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of the $variables used in a compiled script. The index is built once, when
+ * the script is compiled, and each time the script is run, the values of the $variables
+ * are bound into a new {@link Frame}, which is stored in the environment. The Variable
+ * nodes in the tree are shared by every run of the script, so they are never changed.
+ *
+ * @author Layton
+ */
+public final class VariableIndex {
+
+    /**
+     * The slot of each Variable node. Nodes with the same name share a slot.
+     */
+    private final Map<Variable, Integer> slots = new IdentityHashMap<Variable, Integer>();
+    private final List<String> names = new ArrayList<String>();
+    private final List<Target> targets = new ArrayList<Target>();
+
+    /**
+     * Builds the index for these trees.
+     * @param trees
+     * @return
+     */
+    public static VariableIndex Build(List<ParseTree> trees) {
+        VariableIndex index = new VariableIndex();
+        Map<String, Integer> byName = new HashMap<String, Integer>();
+        for (ParseTree tree : trees) {
+            index.add(tree, byName);
+        }
+        return index;
+    }
+
+    private void add(ParseTree node, Map<String, Integer> byName) {
+        if (node.getData() instanceof Variable) {
+            Variable v = (Variable) node.getData();
+            Integer slot = byName.get(v.getName());
+            if (slot == null) {
+                slot = names.size();
+                byName.put(v.getName(), slot);
+                names.add(v.getName());
+                targets.add(v.getTarget());
+            }
+            slots.put(v, slot);
+        }
+        for (ParseTree child : node.getChildren()) {
+            add(child, byName);
+        }
+    }
+
+    /**
+     * Returns true if the script doesn't use any $variables.
+     * @return
+     */
+    public boolean isEmpty() {
+        return names.isEmpty();
+    }
+
+    /**
+     * Works out the value of each $variable for this run of the script.
+     * @param signature The variables declared in the signature of the alias, by name, or null if
+     * $variables may not be used in this context.
+     * @param vars The values that were actually given
+     * @return
+     */
+    public Frame bind(Map<String, Variable> signature, List<Variable> vars) {
+        Construct[] values = new Construct[names.size()];
+        for (int i = 0; i < values.length; i++) {
+            if (signature == null) {
+                throw new ConfigRuntimeException("$variables may not be used in this context. Only @variables may be.", null, targets.get(i));
+            }
+            values[i] = Static.resolveConstruct(
+                    Static.resolveDollarVar(signature.get(names.get(i)), vars).toString(), targets.get(i));
+        }
+        return new Frame(this, values);
+    }
+
+    /**
+     * The values of the $variables for one run of a script.
+     */
+    public static final class Frame {
+
+        private final VariableIndex index;
+        private final Construct[] values;
+
+        private Frame(VariableIndex index, Construct[] values) {
+            this.index = index;
+            this.values = values;
+        }
+
+        /**
+         * Returns the value of this Variable node, or null if the node isn't part of
+         * the script this frame was bound for, for instance if it's in an included file.
+         * @param node
+         * @return
+         */
+        public Construct get(Variable node) {
+            Integer slot = index.slots.get(node);
+            return slot == null ? null : values[slot];
+        }
+    }
+}
@@ -25,6 +25,33 @@ public class CArray extends Construct implements ArrayAccess{
     private String mutVal;
     CArray parent = null;
 	private boolean valueDirty = true;
+    /**
+     * If true, the backing list or map is shared with another array, and must
+     * be copied before it is modified. See {@link #copyOnWrite()}.
+     */
+    private boolean shared = false;
+    /**
+     * If true, the nested arrays are shared with another array, and a view of
+     * them is handed out instead. See {@link #unshareChild(Construct)}.
+     */
+    private boolean childrenShared = false;
+    /**
+     * The views of the shared nested arrays that this array has handed out, by the
+     * nested array they are a view of. The views themselves map to themselves, so
+     * reading the same index twice returns the same array.
+     */
+    private Map<CArray, CArray> childViews = null;
+    /**
+     * The largest integer key in the associative array, or null if there
+     * are none, so pushing onto an associative array doesn't have to look at
+     * every key. Only valid if maxIntKeyDirty is false.
+     */
+    private Integer maxIntKey = null;
+    /**
+     * Set when a key that may have been the largest integer key is removed,
+     * in which case maxIntKey is recalculated the next time it's needed.
+     */
+    private boolean maxIntKeyDirty = false;
     
     
     public CArray(Target t){
@@ -48,19 +75,13 @@ public class CArray extends Construct implements ArrayAccess{
             if(items != null){
                 for(Construct item : items){
                     if(item instanceof CEntry){
-                        associative_array.put(normalizeConstruct(((CEntry)item).ckey), ((CEntry)item).construct);
+                        associativePut(normalizeConstruct(((CEntry)item).ckey), ((CEntry)item).construct);
                     } else {
-                        int max = Integer.MIN_VALUE;            
-                        for (String key : associative_array.keySet()) {
-                            try{
-                                int i = Integer.parseInt(key);
-                                max = java.lang.Math.max(max, i);
-                            } catch(NumberFormatException e){}
-                        }
-                        if(max == Integer.MIN_VALUE){
+                        Integer max = getMaxIntKey();
+                        if(max == null){
                             max = -1; //Special case, there are no integer indexes in here yet.
                         }
-                        associative_array.put(Integer.toString(max + 1), item);
+                        associativePut(Integer.toString(max + 1), item);
                         if(item instanceof CArray){
                             ((CArray)item).parent = this;
                         }
@@ -108,26 +129,170 @@ public class CArray extends Construct implements ArrayAccess{
         valueDirty = true;
     }
 
+    /**
+     * Returns a view of this array, which shares the underlying data with this array
+     * until either of them is modified, at which point the modified array makes its
+     * own copy. Nested arrays are treated the same way, so changes made to the view
+     * at any depth are never visible in this array, and vice versa. This makes handing
+     * out many independent copies of the same array cheap, if most of them are only read.
+     * @return 
+     */
+    public CArray copyOnWrite(){
+        CArray view;
+        try {
+            view = (CArray) super.clone();
+        } catch (CloneNotSupportedException ex) {
+            throw new Error(ex);
+        }
+        view.parent = null;
+        view.childViews = null;
+        this.shared = view.shared = true;
+        this.childrenShared = view.childrenShared = true;
+        return view;
+    }
+
+    /**
+     * Copies the backing list or map, if it is currently shared with another array,
+     * putting in the views of the nested arrays that were already handed out.
+     * This must be called before the underlying model is changed. Reading the array
+     * never copies anything.
+     */
+    private void ensureUnshared(){
+        if(shared){
+            if(array != null){
+                array = new ArrayList<Construct>(array);
+                if(childViews != null){
+                    for(int i = 0; i < array.size(); i++){
+                        CArray view = childViews.get(array.get(i));
+                        if(view != null){
+                            array.set(i, view);
+                        }
+                    }
+                }
+            }
+            if(associative_array != null){
+                associative_array = new TreeMap<String, Construct>(associative_array);
+                if(childViews != null){
+                    for(Map.Entry<String, Construct> entry : associative_array.entrySet()){
+                        CArray view = childViews.get(entry.getValue());
+                        if(view != null){
+                            entry.setValue(view);
+                        }
+                    }
+                }
+            }
+            shared = false;
+        }
+    }
+
+    /**
+     * If this is a nested array that is shared with another array, returns this
+     * array's own view of it, otherwise returns it as is. This must be used on every
+     * value that is handed out.
+     * @param c
+     * @return 
+     */
+    private Construct unshareChild(Construct c){
+        if(!childrenShared || !(c instanceof CArray)){
+            return c;
+        }
+        if(childViews == null){
+            childViews = new IdentityHashMap<CArray, CArray>();
+        }
+        CArray view = childViews.get(c);
+        if(view == null){
+            view = ((CArray)c).copyOnWrite();
+            view.parent = this;
+            childViews.put((CArray)c, view);
+            childViews.put(view, view);
+        }
+        return view;
+    }
+
+    /**
+     * Puts the value in the associative array, keeping track of the largest integer key.
+     * @param key
+     * @param c 
+     */
+    private void associativePut(String key, Construct c){
+        associative_array.put(key, c);
+        if(!maxIntKeyDirty){
+            Integer i = IntKey(key);
+            if(i != null && (maxIntKey == null || i > maxIntKey)){
+                maxIntKey = i;
+            }
+        }
+    }
+
+    /**
+     * Returns the largest integer key in the associative array, or null if there
+     * are none.
+     * @return 
+     */
+    private Integer getMaxIntKey(){
+        if(maxIntKeyDirty){
+            maxIntKey = null;
+            for(String key : associative_array.keySet()){
+                Integer i = IntKey(key);
+                if(i != null && (maxIntKey == null || i > maxIntKey)){
+                    maxIntKey = i;
+                }
+            }
+            maxIntKeyDirty = false;
+        }
+        return maxIntKey;
+    }
+
+    /**
+     * Returns the key as an integer, if it is one, or null otherwise. Most keys
+     * that aren't integers are rejected without having to throw an exception.
+     * @param key
+     * @return 
+     */
+    private static Integer IntKey(String key){
+        int length = key.length();
+        if(length == 0){
+            return null;
+        }
+        int start = key.charAt(0) == '-' ? 1 : 0;
+        if(start == length){
+            return null;
+        }
+        for(int i = start; i < length; i++){
+            char c = key.charAt(i);
+            if(c < '0' || c > '9'){
+                return null;
+            }
+        }
+        if(length - start < 10){
+            //It can't overflow
+            return Integer.valueOf(key);
+        }
+        try{
+            return Integer.valueOf(key);
+        } catch(NumberFormatException e){
+            return null;
+        }
+    }
+
     /**
      * Pushes a new Construct onto the array
      * @param c 
      */
     public void push(Construct c) {
+        ensureUnshared();
         if (!associative_mode) {
             array.add(c);
             next_index++;
         } else {
-            int max = 0;            
-            for (String key : associative_array.keySet()) {
-                try{
-                    int i = Integer.parseInt(key);
-                    max = java.lang.Math.max(max, i);
-                } catch(NumberFormatException e){}
+            Integer max = getMaxIntKey();
+            if(max == null || max < 0){
+                max = 0;
             }
             if(c instanceof CEntry){
-                associative_array.put(Integer.toString(max + 1), ((CEntry)c).construct());
+                associativePut(Integer.toString(max + 1), ((CEntry)c).construct());
             } else {
-                associative_array.put(Integer.toString(max + 1), c);
+                associativePut(Integer.toString(max + 1), c);
             }
         }
         if(c instanceof CArray){
@@ -136,6 +301,75 @@ public class CArray extends Construct implements ArrayAccess{
         regenValue();
     }
     
+    /**
+     * Returns an iterator over the values in this array, in order. If the array is changed
+     * while it is being iterated over, the iterator carries on as follows: for a normal array,
+     * the iterator simply moves on to the next index, so values added to the end are visited,
+     * and removing a value shifts the values after it down by one. For an associative array,
+     * the keys are those the array had when the iteration started. Keys added after that are not
+     * visited, keys that have since been removed are skipped, and the current value of each key is
+     * returned. Either way, iterating over the whole array is linear in its size.
+     * @return 
+     */
+    public Iterator<Construct> iterator() {
+        if(!associative_mode){
+            return new Iterator<Construct>() {
+                int index = 0;
+
+                public boolean hasNext() {
+                    return !associative_mode && index < array.size();
+                }
+
+                public Construct next() {
+                    if(!hasNext()){
+                        throw new NoSuchElementException();
+                    }
+                    return get(index++, Target.UNKNOWN);
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException("Not supported.");
+                }
+            };
+        } else {
+            final Iterator<String> keys = new ArrayList<String>(associative_array.keySet()).iterator();
+            return new Iterator<Construct>() {
+                String next = advance();
+
+                private String advance(){
+                    while(keys.hasNext()){
+                        String key = keys.next();
+                        if(associative_mode && associative_array.containsKey(key)){
+                            return key;
+                        }
+                    }
+                    return null;
+                }
+
+                public boolean hasNext() {
+                    if(next != null && !(associative_mode && associative_array.containsKey(next))){
+                        //It was removed since we found it
+                        next = advance();
+                    }
+                    return next != null;
+                }
+
+                public Construct next() {
+                    if(!hasNext()){
+                        throw new NoSuchElementException();
+                    }
+                    String key = next;
+                    next = advance();
+                    return get(key, Target.UNKNOWN);
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException("Not supported.");
+                }
+            };
+        }
+    }
+    
     /**
      * Returns the key set for this array. If it's an associative array, it simply returns
      * the key set of the map, otherwise it generates a set real quick from 0 - size-1, and
@@ -160,6 +394,7 @@ public class CArray extends Construct implements ArrayAccess{
      * @param c 
      */
     public void set(Construct index, Construct c) {
+        ensureUnshared();
         if (!associative_mode) {
             try {
                 int indx = (int) Static.getInt(index);
@@ -176,12 +411,14 @@ public class CArray extends Construct implements ArrayAccess{
                 for (int i = 0; i < array.size(); i++) {
                     associative_array.put(Integer.toString(i), array.get(i));
                 }
+                maxIntKey = array.isEmpty() ? null : array.size() - 1;
+                maxIntKeyDirty = false;
                 associative_mode = true;
                 array = null; // null out the original array container so it can be GC'd
             }
         }
         if (associative_mode) {
-            associative_array.put(normalizeConstruct(index), c);
+            associativePut(normalizeConstruct(index), c);
         }
         if(c instanceof CArray){
             ((CArray)c).parent = this;
@@ -209,7 +446,7 @@ public class CArray extends Construct implements ArrayAccess{
     public Construct get(Construct index, Target t) {
         if(!associative_mode){
             try {
-                return array.get((int)Static.getInt(index));
+                return unshareChild(array.get((int)Static.getInt(index)));
             } catch (IndexOutOfBoundsException e) {
                 throw new ConfigRuntimeException("The element at index \"" + index.val() + "\" does not exist", ExceptionType.IndexOverflowException, t);
             }
@@ -219,7 +456,7 @@ public class CArray extends Construct implements ArrayAccess{
                 if(val instanceof CEntry){
                     return ((CEntry)val).construct();
                 }
-                return val;
+                return unshareChild(val);
             } else {
                 throw new ConfigRuntimeException("The element at index \"" + index.val() + "\" does not exist", ExceptionType.IndexOverflowException, t);
             }
@@ -355,6 +592,10 @@ public class CArray extends Construct implements ArrayAccess{
     public CArray clone() throws CloneNotSupportedException {
         CArray clone = (CArray) super.clone();
         clone.associative_mode = associative_mode;
+        clone.shared = false;
+        if(childViews != null){
+            clone.childViews = new IdentityHashMap<CArray, CArray>(childViews);
+        }
         if(!associative_mode){
             if (array != null) {
                 clone.array = new ArrayList<Construct>(this.array);
@@ -391,6 +632,7 @@ public class CArray extends Construct implements ArrayAccess{
     public Construct remove(Construct construct) {
         String c = normalizeConstruct(construct);
         Construct ret;
+        ensureUnshared();
         if(!associative_mode){
             try{
                 ret = array.remove(Integer.parseInt(c));
@@ -401,9 +643,12 @@ public class CArray extends Construct implements ArrayAccess{
             }
         } else {
             ret = associative_array.remove(c);
+            if(maxIntKey != null && maxIntKey.equals(IntKey(c))){
+                maxIntKeyDirty = true;
+            }
         }
         regenValue();
-        return ret;
+        return unshareChild(ret);
     }
 	
 	/**
@@ -412,6 +657,7 @@ public class CArray extends Construct implements ArrayAccess{
 	 * @param construct 
 	 */
 	public void removeValues(Construct construct){
+		ensureUnshared();
 		if(associative_mode){
 			Iterator<Construct> it;
 			it = associative_array.values().iterator();
@@ -419,6 +665,7 @@ public class CArray extends Construct implements ArrayAccess{
 				Construct c = it.next();
 				if(BasicLogic.equals.doEquals(c, construct)){
 					it.remove();
+					maxIntKeyDirty = true;
 				}
 			}
 		} else {
@@ -437,26 +684,54 @@ public class CArray extends Construct implements ArrayAccess{
         public int compare(String o1, String o2) {
             //Due to a dumb behavior in Double.parseDouble, 
             //we need to check to see if there are non-digit characters in
-            //the keys, and if so, do a string comparison.
-            if(o1.matches(".*[^0-9\\.]+.*") || o2.matches(".*[^0-9\\.]+.*")){
+            //the keys, and if so, do a string comparison. This is called for
+            //every comparison in the map, so the keys are checked by hand,
+            //rather than with a regex, or by catching parse exceptions.
+            int dots1 = countDots(o1);
+            int dots2 = countDots(o2);
+            if(dots1 < 0 || dots2 < 0){
                 return o1.compareTo(o2);
             }
-            try{
-                int i1 = Integer.parseInt(o1);
-                int i2 = Integer.parseInt(o2);
-                //They're both integers, do an integer comparison
-                return new Integer(i1).compareTo(new Integer(i2));
-            } catch(NumberFormatException e){
-                try{                    
-                    double d1 = Double.parseDouble(o1);
-                    double d2 = Double.parseDouble(o2);
-                    //They're both doubles, do a double comparison
-                    return new Double(d1).compareTo(new Double(d2));
-                } catch(NumberFormatException ee){
-                    //Just do a string comparison
-                    return o1.compareTo(o2);
+            if(dots1 == 0 && dots2 == 0){
+                Integer i1 = IntKey(o1);
+                Integer i2 = IntKey(o2);
+                if(i1 != null && i2 != null){
+                    //They're both integers, do an integer comparison
+                    return i1.compareTo(i2);
+                }
+            }
+            if(dots1 <= 1 && dots2 <= 1 && hasDigit(o1) && hasDigit(o2)){
+                //They're both doubles, do a double comparison
+                return Double.compare(Double.parseDouble(o1), Double.parseDouble(o2));
+            }
+            //Just do a string comparison
+            return o1.compareTo(o2);
+        }
+
+        /**
+         * Returns the number of dots in the string, or -1 if it has
+         * characters other than digits and dots.
+         */
+        private int countDots(String s){
+            int dots = 0;
+            for(int i = 0; i < s.length(); i++){
+                char c = s.charAt(i);
+                if(c == '.'){
+                    dots++;
+                } else if(c < '0' || c > '9'){
+                    return -1;
+                }
+            }
+            return dots;
+        }
+
+        private boolean hasDigit(String s){
+            for(int i = 0; i < s.length(); i++){
+                if(s.charAt(i) != '.'){
+                    return true;
                 }
             }
+            return false;
         }
         
     };
@@ -502,12 +777,15 @@ public class CArray extends Construct implements ArrayAccess{
         STRING_CI
     }
     public void sort(final SortType sort){
+        ensureUnshared();
         List<Construct> list = array;
         if(this.associative_mode){
             list = new ArrayList(associative_array.values());
             this.associative_array.clear();
             this.associative_array = null;
             this.associative_mode = false;
+            this.maxIntKey = null;
+            this.maxIntKeyDirty = false;
             CHLog.Log(CHLog.Tags.GENERAL, CHLog.Level.VERBOSE, "Attempting to sort an associative array; key values will be lost.", this.getTarget());
         }
         Collections.sort(array, new Comparator<Construct>() {
@@ -28,6 +28,8 @@ public class CClosure extends Construct {
         this.node = node;
         try {
             this.env = env.clone();
+            //The closure keeps the variables as they were when it was defined
+            this.env.SetVarList(env.GetVarList().clone());
         }
         catch (CloneNotSupportedException ex) {
             throw new ConfigRuntimeException("A failure occured while trying to clone the environment.", t);
@@ -98,6 +100,7 @@ public class CClosure extends Construct {
             Env environment;
             synchronized (this) {
                 environment = env.clone();
+                environment.SetVarList(env.GetVarList().clone());
             }
             if (values != null) {
                 for (int i = 0; i < names.length; i++) {
@@ -2,6 +2,8 @@
 
 package com.laytonsmith.core.constructs;
 
+import com.laytonsmith.core.functions.Function;
+
 /**
  *
  * @author layton
@@ -9,9 +11,55 @@ package com.laytonsmith.core.constructs;
 public class CFunction extends Construct {
     
     public static final long serialVersionUID = 1L;    
+    
+    private final boolean isProcedure;
+    /**
+     * The function this node is bound to, which is resolved once during the
+     * linking pass in the compiler, (or lazily, the first time the node is
+     * evaluated) so that eval doesn't have to look it up on every call. Procedures
+     * are never linked, since they are defined at runtime.
+     */
+    private transient Function function = null;
 
     public CFunction(String name, Target t) {
         super(name, ConstructType.FUNCTION, t);
+        this.isProcedure = IsProcedureName(name);
+    }
+    
+    /**
+     * Returns true if the given name is a procedure name, that is, it starts
+     * with a single underscore. This is equivalent to the regex ^_[^_].*, but
+     * doesn't require compiling a pattern.
+     * @param name
+     * @return 
+     */
+    public static boolean IsProcedureName(String name){
+        return name != null && name.length() >= 2 && name.charAt(0) == '_' && name.charAt(1) != '_';
+    }
+    
+    /**
+     * Returns true if this node is a call to a procedure, rather than a function.
+     * @return 
+     */
+    public boolean isProcedure(){
+        return isProcedure;
+    }
+    
+    /**
+     * Returns the function this node has been linked to, or null if it hasn't
+     * been linked yet (or is a procedure).
+     * @return 
+     */
+    public Function getFunction(){
+        return function;
+    }
+    
+    /**
+     * Links this node to the specified function.
+     * @param function 
+     */
+    public void setFunction(Function function){
+        this.function = function;
     }
 
     @Override
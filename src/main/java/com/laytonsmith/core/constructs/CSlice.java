@@ -2,12 +2,14 @@ package com.laytonsmith.core.constructs;
 
 import com.laytonsmith.core.exceptions.ConfigCompileException;
 import com.laytonsmith.core.exceptions.ConfigRuntimeException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  *
  * @author layton
  */
-public class CSlice extends Construct {
+public class CSlice extends Construct implements Iterable<Construct> {
     private long start;
     private long finish;
     public CSlice(String slice, Target t) throws ConfigCompileException{
@@ -53,6 +55,40 @@ public class CSlice extends Construct {
         return finish;
     }
 
+    /**
+     * Iterates over the numbers from start to finish, inclusive, creating each
+     * one as it's needed, so the range doesn't have to be turned into an array first.
+     * If finish is less than start, there is nothing to iterate over.
+     * @return 
+     */
+    public Iterator<Construct> iterator() {
+        return new Iterator<Construct>() {
+            long next = start;
+            boolean done = finish < start;
+
+            public boolean hasNext() {
+                return !done;
+            }
+
+            public Construct next() {
+                if(done){
+                    throw new NoSuchElementException();
+                }
+                long value = next;
+                if(value == finish){
+                    done = true;
+                } else {
+                    next++;
+                }
+                return new CInt(value, getTarget());
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("Slices are immutable");
+            }
+        };
+    }
+
     @Override
     public boolean isDynamic() {
         return false;
@@ -5,6 +5,8 @@ package com.laytonsmith.core.constructs;
 import com.laytonsmith.core.exceptions.ConfigRuntimeException;
 import com.laytonsmith.core.functions.Exceptions;
 import com.laytonsmith.core.natives.interfaces.ArrayAccess;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  *
@@ -34,6 +36,32 @@ public class CString extends Construct implements Cloneable, ArrayAccess{
         return false;
     }
 
+    /**
+     * Iterates over each character in the string.
+     * @return 
+     */
+    public Iterator<Construct> iterator() {
+        final String value = val();
+        return new Iterator<Construct>() {
+            int i = 0;
+
+            public boolean hasNext() {
+                return i < value.length();
+            }
+
+            public Construct next() {
+                if(!hasNext()){
+                    throw new NoSuchElementException();
+                }
+                return new CString(value.charAt(i++), getTarget());
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("Strings are immutable");
+            }
+        };
+    }
+
     public Construct get(String index, Target t) {
         try{
             int i = (int)Integer.parseInt(index);
@@ -9,6 +9,12 @@ public class IVariable extends Construct implements Cloneable {
     public static final long serialVersionUID = 1L;
     private Construct var_value;
     final private String name;
+    /**
+     * The slot hint for this variable in an IVariableList. This is assigned
+     * by the compiler, and corrected by the variable list if it turns out to be wrong.
+     * -1 means no hint.
+     */
+    private transient int slot = -1;
 
     public IVariable(String name, Target t) {
         super(name, ConstructType.IVARIABLE, t);
@@ -36,6 +42,14 @@ public class IVariable extends Construct implements Cloneable {
         return name;
     }
 
+    public int getSlot() {
+        return slot;
+    }
+
+    public void setSlot(int slot) {
+        this.slot = slot;
+    }
+
     public void setIval(Construct c) {
         var_value = c;
     }
@@ -1,28 +1,97 @@
-
-
 package com.laytonsmith.core.constructs;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
 /**
- *
+ * The variable list is a flat frame of variables, where each variable lives
+ * in a numbered slot. The name to slot mapping is kept alongside the frame, and is
+ * shared between clones until one of them adds a new variable, so cloning a
+ * list only copies the frame itself. IVariable nodes in the parse tree carry a slot
+ * hint (assigned by the compiler, and corrected at runtime) so that most reads
+ * can skip the name lookup entirely.
  * @author Layton
  */
 public class IVariableList {
-    Map<String, IVariable> varList = new HashMap<String, IVariable>();
+    
+    private IVariable[] frame;
+    private int size = 0;
+    private Map<String, Integer> slots;
+    /**
+     * If true, the slots map is shared with another list, and must be copied
+     * before it is modified.
+     */
+    private boolean slotsShared = false;
+    
+    public IVariableList(){
+        frame = new IVariable[8];
+        slots = new HashMap<String, Integer>();
+    }
     
     public void set(IVariable v){
-        varList.put(v.getName(), v);
+        frame[slotOf(v.getName())] = v;
     }
     
     public IVariable get(String name, Target t){
-        if(!varList.containsKey(name)){
-            this.set(new IVariable(name, t));
+        return get(slotOf(name), name, t);
+    }
+    
+    /**
+     * Gets the variable referenced by the given ivariable (usually a node in the parse tree).
+     * This is equivalent to get(ref.getName(), ref.getTarget()), but uses the slot
+     * hint in the reference to find the variable without a name lookup, if possible.
+     * The hint is updated if it turns out to be wrong.
+     * @param ref
+     * @return 
+     */
+    public IVariable get(IVariable ref){
+        int slot = ref.getSlot();
+        if(slot >= 0 && slot < size){
+            IVariable v = frame[slot];
+            if(v != null && v.getName().equals(ref.getName())){
+                v.setTarget(ref.getTarget());
+                return v;
+            }
         }
-        varList.get(name).setTarget(t);
-        return varList.get(name);
+        slot = slotOf(ref.getName());
+        ref.setSlot(slot);
+        return get(slot, ref.getName(), ref.getTarget());
+    }
+    
+    private IVariable get(int slot, String name, Target t){
+        IVariable v = frame[slot];
+        if(v == null){
+            v = new IVariable(name, t);
+            frame[slot] = v;
+        }
+        v.setTarget(t);
+        return v;
+    }
+    
+    /**
+     * Returns the slot for the given name, allocating a new one if this
+     * name hasn't been seen yet.
+     * @param name
+     * @return 
+     */
+    private int slotOf(String name){
+        Integer slot = slots.get(name);
+        if(slot != null){
+            return slot;
+        }
+        if(slotsShared){
+            slots = new HashMap<String, Integer>(slots);
+            slotsShared = false;
+        }
+        if(size == frame.length){
+            IVariable[] newFrame = new IVariable[frame.length * 2];
+            System.arraycopy(frame, 0, newFrame, 0, size);
+            frame = newFrame;
+        }
+        slots.put(name, size);
+        return size++;
     }
 
     @Override
@@ -30,8 +99,11 @@ public class IVariableList {
         StringBuilder b = new StringBuilder();
         b.append("[");
         boolean first = true;
-        for(Map.Entry<String, IVariable> entry : varList.entrySet()){
-            IVariable iv = entry.getValue();
+        for(int i = 0; i < size; i++){
+            IVariable iv = frame[i];
+            if(iv == null){
+                continue;
+            }
             if(first){
                 first = false;
             } else {
@@ -45,14 +117,21 @@ public class IVariableList {
     
     @Override
     public IVariableList clone(){
-        IVariableList clone = new IVariableList();
-        clone.varList = new HashMap<String, IVariable>(varList);
+        IVariableList clone = new IVariableList(this);
         return clone;
     }
+    
+    private IVariableList(IVariableList copy){
+        this.frame = copy.frame.clone();
+        this.size = copy.size;
+        this.slots = copy.slots;
+        this.slotsShared = true;
+        copy.slotsShared = true;
+    }
 
     //only the reflection package should be accessing this
     public Set<String> keySet() {
-        return varList.keySet();
+        return Collections.unmodifiableSet(slots.keySet());
     }
     
     
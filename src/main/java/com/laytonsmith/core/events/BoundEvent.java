@@ -135,12 +135,14 @@ public class BoundEvent implements Comparable<BoundEvent> {
             this.priority = Priority.NORMAL;
         }
 
-        this.prefilter = new HashMap<String, Construct>();
+        Map<String, Construct> prefilters = new HashMap<String, Construct>();
         if (prefilter != null) {
             for (String key : prefilter.keySet()) {
-                this.prefilter.put(key, prefilter.get(key, Target.UNKNOWN));
+                prefilters.put(key, prefilter.get(key, Target.UNKNOWN));
             }
         }
+        //Regexes and expressions are compiled here, once, instead of each time the event fires
+        this.prefilter = Prefilters.Compile(prefilters);
 
         this.originalEnv = env;
         this.tree = tree;
@@ -223,10 +225,9 @@ public class BoundEvent implements Comparable<BoundEvent> {
     //        GenericTree<Construct> root = new GenericTree<Construct>();
     //        root.setRoot(tree);
             Env env = originalEnv.clone();
-            CArray ca = new CArray(Target.UNKNOWN);
-            for (String key : activeEvent.parsedEvent.keySet()) {
-                ca.set(new CString(key, Target.UNKNOWN), activeEvent.parsedEvent.get(key));
-            }
+            //Each run of the event gets its own copy of the variables it was bound with
+            env.SetVarList(originalEnv.GetVarList().clone());
+            CArray ca = activeEvent.getEventArray();
             if(activeEvent.parsedEvent.containsKey("player")){
                 try{
                     MCPlayer p = Static.GetPlayer(activeEvent.parsedEvent.get("player"));
@@ -265,6 +266,7 @@ public class BoundEvent implements Comparable<BoundEvent> {
     public void manual_trigger(CArray event) throws EventException{
         try {
             Env env = originalEnv.clone();
+            env.SetVarList(originalEnv.GetVarList().clone());
             env.GetVarList().set(new IVariable(eventObjName, event, Target.UNKNOWN));
             Map<String, Construct> map = new HashMap<String, Construct>();
             for(String key : event.keySet()){
@@ -323,11 +325,15 @@ public class BoundEvent implements Comparable<BoundEvent> {
      * an ActiveEvent is generated, stored in the environment, and then the script is triggered. This ActiveEvent contains both
      * the underlying event (if needed for things like cancellation or other event manipulation) and the BoundEvent object itself
      * (which can be used to get the event id and other information as needed). For convenience, the parsed event information
-     * is also cached here.
+     * is also cached here, and is shared by all the handlers that receive this event, until the event is modified.
      */
     public static class ActiveEvent{
         private final BindableEvent underlyingEvent;
         private Map<String, Construct> parsedEvent;
+        /**
+         * The parsed event, converted to a CArray. Each handler gets a copy on write view of this.
+         */
+        private CArray eventArray;
         private BoundEvent boundEvent;
         private Boolean cancelled;
         private BoundEvent consumedAt;
@@ -374,6 +380,32 @@ public class BoundEvent implements Comparable<BoundEvent> {
         
         public void setParsedEvent(Map<String, Construct> parsedEvent){
             this.parsedEvent = parsedEvent;
+            this.eventArray = null;
+        }
+        
+        /**
+         * Discards the parsed event, so that it is evaluated again from the underlying
+         * event before the next handler is triggered. This should be called whenever
+         * the underlying event is modified.
+         */
+        public void invalidateParsedEvent(){
+            setParsedEvent(null);
+        }
+        
+        /**
+         * Returns the parsed event as a CArray, which the handler is free to modify. The
+         * array is only built once per parsed event, and each call returns a copy on write
+         * view of it, so changes made by one handler are not seen by the others.
+         * @return 
+         */
+        public CArray getEventArray(){
+            if(eventArray == null){
+                eventArray = new CArray(Target.UNKNOWN);
+                for (String key : parsedEvent.keySet()) {
+                    eventArray.set(new CString(key, Target.UNKNOWN), parsedEvent.get(key));
+                }
+            }
+            return eventArray.copyOnWrite();
         }
 
         public boolean isCancelled() {
@@ -7,6 +7,7 @@ import com.laytonsmith.core.constructs.CString;
 import com.laytonsmith.core.constructs.Construct;
 import com.laytonsmith.core.constructs.Target;
 import com.laytonsmith.core.events.BoundEvent.Priority;
+import com.laytonsmith.core.events.Prefilters.PrefilterType;
 import com.laytonsmith.core.exceptions.ConfigRuntimeException;
 import com.laytonsmith.core.exceptions.EventException;
 import com.laytonsmith.core.exceptions.FunctionReturnException;
@@ -21,8 +22,221 @@ public final class EventUtils {
     
     private EventUtils(){}
 
+    /**
+     * The bound events, by driver. This, and by_name, are only read or changed while
+     * holding the EventUtils class lock.
+     */
     private static final Map<Driver, SortedSet<BoundEvent>> event_handles =
             new EnumMap<Driver, SortedSet<BoundEvent>>(Driver.class);
+    
+    /**
+     * The bound events, by event name.
+     */
+    private static final Map<String, List<BoundEvent>> by_name = new HashMap<String, List<BoundEvent>>();
+    
+    /**
+     * The event names that have been bound or unbound since the dispatch index was
+     * last published.
+     */
+    private static final Set<String> dirty = new HashSet<String>();
+    
+    /**
+     * True if dirty isn't empty, so that readers can check without locking.
+     */
+    private static volatile boolean stale = false;
+    
+    /**
+     * The dispatch index, which maps the event name to the pre-sorted handlers for
+     * that event. This map is never modified once it is published, instead, it is
+     * replaced the next time an event is triggered after events were bound or unbound,
+     * so it can be read from any thread without locking, and binding many events at
+     * once, for instance during a reload, only rebuilds it once.
+     */
+    private static volatile Map<String, HandlerIndex> dispatch = new HashMap<String, HandlerIndex>();
+    
+    private static final BoundEvent[] NO_HANDLERS = new BoundEvent[0];
+
+    /**
+     * The bound events for a single event name, sorted by priority. If the event
+     * is an IndexableEvent, the bound events are also indexed by their value for
+     * the indexed prefilter.
+     */
+    private static final class HandlerIndex {
+        private final BoundEvent[] all;
+        /**
+         * Bound events that don't specify a plain value for the indexed prefilter,
+         * and so have to be tested against every event.
+         */
+        private final BoundEvent[] unindexed;
+        private final Map<String, BoundEvent[]> byValue;
+        
+        private HandlerIndex(Event driver, List<BoundEvent> handlers){
+            all = handlers.toArray(new BoundEvent[handlers.size()]);
+            Arrays.sort(all);
+            if(!(driver instanceof IndexableEvent)){
+                unindexed = all;
+                byValue = null;
+                return;
+            }
+            IndexableEvent ie = (IndexableEvent)driver;
+            List<BoundEvent> unindexedList = new ArrayList<BoundEvent>();
+            Map<String, List<BoundEvent>> byValueList = new HashMap<String, List<BoundEvent>>();
+            for(BoundEvent b : all){
+                String value = GetIndexablePrefilter(ie, b);
+                if(value == null){
+                    unindexedList.add(b);
+                } else {
+                    if(!byValueList.containsKey(value)){
+                        byValueList.put(value, new ArrayList<BoundEvent>());
+                    }
+                    byValueList.get(value).add(b);
+                }
+            }
+            unindexed = unindexedList.toArray(new BoundEvent[unindexedList.size()]);
+            byValue = new HashMap<String, BoundEvent[]>();
+            for(Map.Entry<String, List<BoundEvent>> entry : byValueList.entrySet()){
+                byValue.put(entry.getKey(), entry.getValue().toArray(new BoundEvent[entry.getValue().size()]));
+            }
+        }
+        
+        /**
+         * Returns the bound events that could possibly match this event, in priority order.
+         * @param driver
+         * @param e
+         * @return 
+         */
+        private BoundEvent[] candidates(Event driver, BindableEvent e){
+            if(byValue == null || e == null){
+                return all;
+            }
+            String value = ((IndexableEvent)driver).getIndexValue(e);
+            if(value == null){
+                return all;
+            }
+            BoundEvent[] matching = byValue.get(value);
+            if(matching == null){
+                return unindexed;
+            } else if(unindexed.length == 0){
+                return matching;
+            }
+            //Merge the two, keeping the priority order
+            BoundEvent[] merged = new BoundEvent[matching.length + unindexed.length];
+            int i = 0, j = 0, k = 0;
+            while(i < matching.length && j < unindexed.length){
+                if(matching[i].compareTo(unindexed[j]) < 0){
+                    merged[k++] = matching[i++];
+                } else {
+                    merged[k++] = unindexed[j++];
+                }
+            }
+            while(i < matching.length){
+                merged[k++] = matching[i++];
+            }
+            while(j < unindexed.length){
+                merged[k++] = unindexed[j++];
+            }
+            return merged;
+        }
+    }
+    
+    /**
+     * Returns the value of the bound event's indexed prefilter, if it is a plain
+     * value that must match exactly, or null if the bound event can't be indexed.
+     * @param ie
+     * @param b
+     * @return 
+     */
+    private static String GetIndexablePrefilter(IndexableEvent ie, BoundEvent b){
+        PrefilterMatcher matcher = Prefilters.GetMatcher(b.getPrefilter(), ie.getIndexKey());
+        if(matcher == null){
+            return null;
+        }
+        if(ie.getIndexType() == PrefilterType.STRING_MATCH){
+            return matcher.getPrefilter().val();
+        } else if(ie.getIndexType() == PrefilterType.MACRO){
+            if(matcher.isExpression() || matcher.isRegex()){
+                //Expressions and regexes have to be checked the long way
+                return null;
+            }
+            return matcher.getPrefilter().val();
+        }
+        return null;
+    }
+    
+    /**
+     * Adds a bound event. The caller must hold the class lock.
+     * @param driver
+     * @param b 
+     */
+    private static void Add(Driver driver, BoundEvent b){
+        if (!event_handles.containsKey(driver)) {
+            event_handles.put(driver, new TreeSet<BoundEvent>());
+        }
+        event_handles.get(driver).add(b);
+        if(!by_name.containsKey(b.getEventName())){
+            by_name.put(b.getEventName(), new ArrayList<BoundEvent>());
+        }
+        by_name.get(b.getEventName()).add(b);
+        dirty.add(b.getEventName());
+        stale = true;
+    }
+    
+    /**
+     * Removes a bound event from by_name, once it has been removed from event_handles.
+     * The caller must hold the class lock.
+     * @param b 
+     */
+    private static void Removed(BoundEvent b){
+        List<BoundEvent> handlers = by_name.get(b.getEventName());
+        if(handlers != null){
+            handlers.remove(b);
+            if(handlers.isEmpty()){
+                by_name.remove(b.getEventName());
+            }
+        }
+        dirty.add(b.getEventName());
+        stale = true;
+    }
+    
+    /**
+     * Rebuilds the dispatch index for the event names that changed, publishes it, and
+     * returns it.
+     * @return 
+     */
+    private static synchronized Map<String, HandlerIndex> Republish(){
+        if(!dirty.isEmpty()){
+            Map<String, HandlerIndex> newDispatch = new HashMap<String, HandlerIndex>(dispatch);
+            for(String eventName : dirty){
+                List<BoundEvent> handlers = by_name.get(eventName);
+                if(handlers == null){
+                    newDispatch.remove(eventName);
+                } else {
+                    newDispatch.put(eventName, new HandlerIndex(EventList.getEvent(eventName), handlers));
+                }
+            }
+            dirty.clear();
+            dispatch = newDispatch;
+        }
+        stale = false;
+        return dispatch;
+    }
+    
+    /**
+     * Returns the bound events that could possibly match this event, in priority
+     * order. They still need to be checked with the driver's matches function.
+     * @param eventName
+     * @param driver
+     * @param e The event, or null, if not known, in which case all the bound events
+     * for this event are returned.
+     * @return 
+     */
+    private static BoundEvent[] GetCandidates(String eventName, Event driver, BindableEvent e){
+        HandlerIndex index = (stale ? Republish() : dispatch).get(eventName);
+        if(index == null){
+            return NO_HANDLERS;
+        }
+        return index.candidates(driver, e);
+    }
 
     /**
      * Registers a BoundEvent.
@@ -34,11 +248,9 @@ public final class EventUtils {
         if (event == null) {
             throw new EventException("The event type \"" + b.getEventName() + "\" could not be found.");
         }
-        if (!event_handles.containsKey(event.driver())) {
-            event_handles.put(event.driver(), new TreeSet<BoundEvent>());
+        synchronized(EventUtils.class){
+            Add(event.driver(), b);
         }
-        SortedSet<BoundEvent> set = event_handles.get(event.driver());
-        set.add(b);
         try {
             event.bind();
         } catch (UnsupportedOperationException e) {
@@ -50,7 +262,7 @@ public final class EventUtils {
      * If no event with that id is registered, nothing happens.
      * @param id 
      */
-    public static void UnregisterEvent(String id) {
+    public static synchronized void UnregisterEvent(String id) {
         for (Driver type : event_handles.keySet()) {
             SortedSet<BoundEvent> set = event_handles.get(type);
             Iterator<BoundEvent> i = set.iterator();
@@ -58,6 +270,7 @@ public final class EventUtils {
                 BoundEvent b = i.next();
                 if (b.getId().equals(id)) {
                     i.remove();
+                    Removed(b);
                     return;
                 }
             }
@@ -67,7 +280,7 @@ public final class EventUtils {
     /**
      * Unregisters all event handlers. Runs in O(n)
      */
-    public static void UnregisterAll(String name) {
+    public static synchronized void UnregisterAll(String name) {
         for (Driver type : event_handles.keySet()) {
             SortedSet<BoundEvent> set = event_handles.get(type);
             Iterator<BoundEvent> i = set.iterator();
@@ -75,6 +288,7 @@ public final class EventUtils {
                 BoundEvent b = i.next();
                 if (b.getEventObjName().equals(name)) {
                     i.remove();
+                    Removed(b);
                     return;
                 }
             }
@@ -84,98 +298,125 @@ public final class EventUtils {
     /**
      * This should be used in the case the plugin is disabled, or /reloadalises is run.
      */
-    public static void UnregisterAll() {
+    public static synchronized void UnregisterAll() {
         event_handles.clear();
+        by_name.clear();
+        dirty.clear();
+        stale = false;
+        dispatch = new HashMap<String, HandlerIndex>();
     }
 
     /**
-     * Returns all events driven by type. O(1).
+     * Returns a copy of all the events driven by type, or null if none have been bound.
      * @param type
      * @return 
      */
-    public static SortedSet<BoundEvent> GetEvents(Driver type) {
-        return event_handles.get(type);
+    public static synchronized SortedSet<BoundEvent> GetEvents(Driver type) {
+        SortedSet<BoundEvent> set = event_handles.get(type);
+        return set == null ? null : new TreeSet<BoundEvent>(set);
     }
 
-    public static void ManualTrigger(String eventName, CArray object, boolean serverWide) {
-        for (Driver type : event_handles.keySet()) {
-            SortedSet<BoundEvent> toRun = new TreeSet<BoundEvent>();
-            SortedSet<BoundEvent> bounded = GetEvents(type);
-            Event driver = EventList.getEvent(type, eventName);
-            if (bounded != null) {
-                for (BoundEvent b : bounded) {
-                    if(b.getEventName().equalsIgnoreCase(eventName)){
-                        try {
-                            BindableEvent convertedEvent;
-                            try{
-                                convertedEvent = driver.convert(object);
-                            } catch(ConfigRuntimeException e){
-                                ConfigRuntimeException.React(e, "Did you include all the event parameters?");
-                                continue;
-                            }
-                            if (driver.matches(b.getPrefilter(), convertedEvent)) {
-                                toRun.add(b);
-                            }
-                        } catch (PrefilterNonMatchException ex) {
-                            //Not running this one
-                        }
+    /**
+     * Returns the event with this name, ignoring case, or null if there isn't one.
+     * @param eventName
+     * @return 
+     */
+    private static Event GetEventIgnoreCase(String eventName){
+        Event event = EventList.getEvent(eventName);
+        if(event != null){
+            return event;
+        }
+        for(Driver type : Driver.values()){
+            SortedSet<Event> events = EventList.GetEvents(type);
+            if(events != null){
+                for(Event e : events){
+                    if(e.getName().equalsIgnoreCase(eventName)){
+                        return e;
                     }
                 }
             }
-            //If it's not a serverwide event, or this event doesn't support external events.
-            if (!toRun.isEmpty()) {
-                if (!serverWide || !driver.supportsExternal()) {
-                    FireListeners(toRun, driver, driver.convert(object));
-                } else {
-                    //It's serverwide, so we can just trigger it normally with the driver, and it should trickle back down to us
-                    driver.manualTrigger(driver.convert(object));
+        }
+        return null;
+    }
+
+    public static void ManualTrigger(String eventName, CArray object, boolean serverWide) {
+        //Event names used to be matched ignoring case, so trigger('Player_Join') still works
+        Event driver = GetEventIgnoreCase(eventName);
+        BoundEvent[] bounded = driver == null ? NO_HANDLERS : GetCandidates(driver.getName(), driver, null);
+        List<BoundEvent> toRun = new ArrayList<BoundEvent>();
+        BindableEvent convertedEvent = null;
+        if (bounded.length > 0) {
+            try{
+                convertedEvent = driver.convert(object);
+            } catch(ConfigRuntimeException e){
+                ConfigRuntimeException.React(e, "Did you include all the event parameters?");
+                return;
+            }
+            for (BoundEvent b : bounded) {
+                try {
+                    if (driver.matches(b.getPrefilter(), convertedEvent)) {
+                        toRun.add(b);
+                    }
+                } catch (PrefilterNonMatchException ex) {
+                    //Not running this one
                 }
+            }
+        }
+        //If it's not a serverwide event, or this event doesn't support external events.
+        if (!toRun.isEmpty()) {
+            if (!serverWide || !driver.supportsExternal()) {
+                FireListeners(toRun, driver, convertedEvent);
             } else {
-                //They have fired a non existant event
-                ConfigRuntimeException.DoWarning(new ConfigRuntimeException("Non existant event is being triggered: " + eventName, object.getTarget()));
+                //It's serverwide, so we can just trigger it normally with the driver, and it should trickle back down to us
+                driver.manualTrigger(convertedEvent);
             }
+        } else {
+            //They have fired a non existant event
+            ConfigRuntimeException.DoWarning(new ConfigRuntimeException("Non existant event is being triggered: " + eventName, object.getTarget()));
         }
     }
 
     /**
      * Triggers an event by name. The event name is the primary filter for this event, but
-     * to increase event lookup efficiency, the driver is required. This will run in O(n),
-     * where n is the number of bound events driven by type <code>type</code>.
+     * to increase event lookup efficiency, the driver is required. Only the bound events for
+     * this event name are considered, and if the event is an IndexableEvent, only those
+     * that could match the event's indexed prefilter value are tested.
      * @param type
      * @param e 
      */
     public static void TriggerListener(Driver type, String eventName, BindableEvent e) {
-        SortedSet<BoundEvent> toRun = new TreeSet<BoundEvent>();
         //This is the Event driver
         Event driver = EventList.getEvent(type, eventName);
-        //This is the set of bounded events of this driver type. 
-        //We must now look through the bound events to see if they are
-        //the eventName, and if so, we will also run the prefilter.
-        SortedSet<BoundEvent> bounded = GetEvents(type);
-        if (bounded != null) {
-            for (BoundEvent b : bounded) {
-                try {
-                    if (driver.getName().equals(eventName) && driver.matches(b.getPrefilter(), e)) {
-                        toRun.add(b);
-                    }
-                } catch (PrefilterNonMatchException ex) {
-                    //Not running this one
+        BoundEvent[] bounded = GetCandidates(eventName, driver, e);
+        if (bounded.length == 0) {
+            return;
+        }
+        List<BoundEvent> toRun = new ArrayList<BoundEvent>(bounded.length);
+        for (BoundEvent b : bounded) {
+            try {
+                if (driver.matches(b.getPrefilter(), e)) {
+                    toRun.add(b);
                 }
+            } catch (PrefilterNonMatchException ex) {
+                //Not running this one
             }
         }
 
         FireListeners(toRun, driver, e);
     }
 
-    private static void FireListeners(SortedSet<BoundEvent> toRun, Event driver, BindableEvent e) {
-        //Sort our event handlers by priorities
+    private static void FireListeners(List<BoundEvent> toRun, Event driver, BindableEvent e) {
+        //The event handlers are already sorted by priority
         BoundEvent.ActiveEvent activeEvent = new BoundEvent.ActiveEvent(e);
         for (BoundEvent b : toRun) {
             if(activeEvent.canReceive() || b.getPriority().equals(Priority.MONITOR)){
                 try {
-                    //We must re-set the active event's bound event and parsed event
+                    //We must re-set the active event's bound event, and the parsed event,
+                    //if a previous handler modified the event
                     activeEvent.setBoundEvent(b);
-                    activeEvent.setParsedEvent(driver.evaluate(e));                    
+                    if(activeEvent.getParsedEvent() == null){
+                        activeEvent.setParsedEvent(driver.evaluate(e));
+                    }
                     b.trigger(activeEvent);
                 } catch (FunctionReturnException ex){
                     //We also know how to deal with this
@@ -197,7 +438,7 @@ public final class EventUtils {
         }
     }
 
-    public static Construct DumpEvents() {
+    public static synchronized Construct DumpEvents() {
         CArray ca = new CArray(Target.UNKNOWN);
         for (Driver type : event_handles.keySet()) {
             SortedSet<BoundEvent> set = event_handles.get(type);
@@ -0,0 +1,35 @@
+package com.laytonsmith.core.events;
+
+import com.laytonsmith.core.events.Prefilters.PrefilterType;
+
+/**
+ * Events that implement this interface allow EventUtils to index their bound
+ * events by the value of one of their prefilters. When the event fires, only the
+ * bound events that could possibly match the event's value for that prefilter
+ * (and those that don't specify it) are passed on to matches().
+ * @author layton
+ */
+public interface IndexableEvent {
+    /**
+     * Returns the name of the prefilter bound events are indexed by, for instance,
+     * "player".
+     * @return 
+     */
+    public String getIndexKey();
+    
+    /**
+     * Returns how the prefilter is matched in matches(). Only STRING_MATCH and
+     * MACRO are supported. For MACRO, only prefilters that are plain strings (and not
+     * a regex or expression) are indexed.
+     * @return 
+     */
+    public PrefilterType getIndexType();
+    
+    /**
+     * Returns the value of the indexed prefilter for the given event, or null
+     * if it can't be determined, in which case all bound events are tested.
+     * @param e
+     * @return 
+     */
+    public String getIndexValue(BindableEvent e);
+}
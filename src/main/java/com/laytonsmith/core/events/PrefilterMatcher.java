@@ -0,0 +1,209 @@
+
+
+package com.laytonsmith.core.events;
+
+import com.laytonsmith.core.Static;
+import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.events.Prefilters.PrefilterType;
+import com.laytonsmith.core.exceptions.ConfigRuntimeException;
+import com.laytonsmith.core.functions.Exceptions.ExceptionType;
+import com.sk89q.worldedit.expression.Expression;
+import com.sk89q.worldedit.expression.ExpressionException;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A single prefilter, compiled ahead of time. Since we don't know which type of
+ * match the event will ask for until it actually fires, every form the prefilter
+ * could be used in is prepared up front, that is, if it looks like a regex, the
+ * pattern is compiled, and if it looks like an expression, the expression is compiled,
+ * with the prefilter key as the variable. Errors are saved, and only reported if the
+ * prefilter is actually used that way.
+ * @author layton
+ */
+final class PrefilterMatcher {
+
+    private final Construct prefilter;
+    private final String value;
+    /**
+     * The item id, that is, the item notation without the data value. This is only
+     * worked out the first time the prefilter is used as an item match.
+     */
+    private volatile String itemId;
+    private final boolean isRegex;
+    private final Pattern pattern;
+    private final PatternSyntaxException patternError;
+    private final boolean isExpression;
+    private final Expression expression;
+    private final boolean inequalityMode;
+    private final ExpressionException expressionError;
+
+    public PrefilterMatcher(String key, Construct prefilter){
+        this.prefilter = prefilter;
+        this.value = prefilter.val();
+        isRegex = value.length() >= 2 && value.startsWith("/") && value.endsWith("/");
+        Pattern p = null;
+        PatternSyntaxException pe = null;
+        if(isRegex){
+            try{
+                p = Pattern.compile(value.substring(1, value.length() - 1));
+            } catch(PatternSyntaxException e){
+                pe = e;
+            }
+        }
+        pattern = p;
+        patternError = pe;
+
+        isExpression = value.length() >= 2 && value.startsWith("(") && value.endsWith(")");
+        Expression ex = null;
+        ExpressionException ee = null;
+        boolean inequality = false;
+        if(isExpression){
+            String exp = value.substring(1, value.length() - 1);
+            inequality = exp.contains("<") || exp.contains(">") || exp.contains("==");
+            try{
+                ex = Expression.compile(exp, key);
+            } catch(ExpressionException e){
+                ee = e;
+            }
+        }
+        expression = ex;
+        inequalityMode = inequality;
+        expressionError = ee;
+    }
+
+    /**
+     * Returns the user provided prefilter value.
+     * @return
+     */
+    public Construct getPrefilter(){
+        return prefilter;
+    }
+
+    /**
+     * Returns true if the prefilter is in the regex format, /regex/.
+     * @return
+     */
+    public boolean isRegex(){
+        return isRegex;
+    }
+
+    /**
+     * Returns true if the prefilter is in the expression format, (expression).
+     * @return
+     */
+    public boolean isExpression(){
+        return isExpression;
+    }
+
+    /**
+     * Returns true if the actual value matches this prefilter, using the given match type.
+     * @param actualValue
+     * @param type
+     * @return
+     */
+    public boolean match(Construct actualValue, PrefilterType type){
+        switch(type){
+            case ITEM_MATCH:
+                return ItemMatch(actualValue);
+            case STRING_MATCH:
+                return value.equals(actualValue.val());
+            case MATH_MATCH:
+                return MathMatch(actualValue);
+            case EXPRESSION:
+                return ExpressionMatch(actualValue);
+            case REGEX:
+                return RegexMatch(actualValue);
+            case MACRO:
+                if(isExpression){
+                    return ExpressionMatch(actualValue);
+                } else if(isRegex){
+                    return RegexMatch(actualValue);
+                } else {
+                    return value.equals(actualValue.val());
+                }
+        }
+        return true;
+    }
+
+    private boolean ItemMatch(Construct actualValue){
+        if(itemId == null){
+            itemId = ItemId(value);
+        }
+        return itemId.equalsIgnoreCase(ItemId(actualValue.val()));
+    }
+
+    /**
+     * Returns the item notation without the data value, that is, everything before the
+     * first colon.
+     * @param item
+     * @return
+     */
+    private static String ItemId(String item){
+        int colon = item.indexOf(':');
+        if(colon != -1){
+            item = item.substring(0, colon);
+        }
+        return item.trim();
+    }
+
+    private boolean MathMatch(Construct actualValue){
+        try{
+            double dOne = Static.getNumber(prefilter);
+            double dTwo = Static.getNumber(actualValue);
+            return dOne == dTwo;
+        } catch(ConfigRuntimeException e){
+            return false;
+        }
+    }
+
+    private boolean ExpressionMatch(Construct actualValue){
+        if(!isExpression){
+            throw new ConfigRuntimeException("Prefilter expecting expression type, and \""
+                    + value + "\" does not follow expression format. "
+                    + "(Did you surround it in parenthesis?)",
+                    ExceptionType.FormatException, prefilter.getTarget());
+        }
+        if(expressionError != null){
+            throw new ConfigRuntimeException("Your expression is invalidly formatted",
+                    ExceptionType.FormatException, prefilter.getTarget());
+        }
+        double dvalue;
+        try{
+            dvalue = Static.getDouble(actualValue);
+        } catch(ConfigRuntimeException e){
+            //The value used to be substituted into the expression text, which then
+            //failed to evaluate, so this is still reported as a format problem
+            throw new ConfigRuntimeException("Your expression is invalidly formatted",
+                    ExceptionType.FormatException, prefilter.getTarget());
+        }
+        double val;
+        try{
+            //The compiled expression holds its variables, so it can't be evaluated
+            //by two threads at once.
+            synchronized(expression){
+                val = expression.evaluate(dvalue);
+            }
+        } catch(ExpressionException e){
+            throw new ConfigRuntimeException("Your expression is invalidly formatted",
+                    ExceptionType.FormatException, prefilter.getTarget());
+        }
+        if(inequalityMode){
+            return val != 0;
+        } else {
+            return val == dvalue;
+        }
+    }
+
+    private boolean RegexMatch(Construct actualValue){
+        if(!isRegex){
+            throw new ConfigRuntimeException("Prefilter expecting regex type, and \""
+                    + value + "\" does not follow regex format", ExceptionType.FormatException, prefilter.getTarget());
+        }
+        if(patternError != null){
+            throw new ConfigRuntimeException("Your regex is invalidly formatted: " + patternError.getDescription(),
+                    ExceptionType.FormatException, prefilter.getTarget());
+        }
+        return pattern.matcher(actualValue.val()).matches();
+    }
+}
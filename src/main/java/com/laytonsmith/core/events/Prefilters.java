@@ -2,14 +2,12 @@
 
 package com.laytonsmith.core.events;
 
-import com.laytonsmith.core.Static;
 import com.laytonsmith.core.constructs.*;
-import com.laytonsmith.core.exceptions.ConfigRuntimeException;
-import com.laytonsmith.core.exceptions.PrefilterNonMatchException;
-import com.laytonsmith.core.functions.Exceptions.ExceptionType;
-import com.sk89q.worldedit.expression.Expression;
-import com.sk89q.worldedit.expression.ExpressionException;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
  *
@@ -54,138 +52,99 @@ public final class Prefilters {
         MACRO
     }
     
-    public static void match(Map<String, Construct> map, String key,
-            String actualValue, PrefilterType type) throws PrefilterNonMatchException{
-        match(map, key, new CString(actualValue, Target.UNKNOWN), type);
+    public static boolean match(Map<String, Construct> map, String key,
+            String actualValue, PrefilterType type){
+        return match(map, key, new CString(actualValue, Target.UNKNOWN), type);
     }
     
-    public static void match(Map<String, Construct> map, String key,
-            int actualValue, PrefilterType type) throws PrefilterNonMatchException{
-        match(map, key, new CInt(actualValue, Target.UNKNOWN), type);
+    public static boolean match(Map<String, Construct> map, String key,
+            int actualValue, PrefilterType type){
+        return match(map, key, new CInt(actualValue, Target.UNKNOWN), type);
     }
     
-    public static void match(Map<String, Construct> map, String key,
-            double actualValue, PrefilterType type) throws PrefilterNonMatchException{
-        match(map, key, new CDouble(actualValue, Target.UNKNOWN), type);
+    public static boolean match(Map<String, Construct> map, String key,
+            double actualValue, PrefilterType type){
+        return match(map, key, new CDouble(actualValue, Target.UNKNOWN), type);
     }
     
     /**
      * Given a prototype and the actual user provided value, determines if it matches.
-     * If it doesn't, it throws an exception. If the value is not provided, or it does
-     * match, it returns void, which means that the test passed, and the event matches.
+     * If the value is not provided, or it does match, it returns true, which means
+     * that the test passed, and the event matches. If it doesn't match, false is returned.
+     * If the map was created with {@link #Compile}, the precompiled matcher is used,
+     * otherwise the prefilter is compiled on the fly.
      */
-    public static void match(Map<String, Construct> map, String key,
-            Construct actualValue, PrefilterType type) throws PrefilterNonMatchException{
-        if(map.containsKey(key)){
-            switch(type){
-                case ITEM_MATCH:
-                    ItemMatch(map.get(key), actualValue);
-                    break;
-                case STRING_MATCH:
-                    StringMatch(map.get(key).val(), actualValue.val());
-                    break;
-                case MATH_MATCH:
-                    MathMatch(map.get(key), actualValue);
-                    break;
-                case EXPRESSION:
-                    ExpressionMatch(MathReplace(key, map.get(key), actualValue), actualValue);
-                    break;
-                case REGEX:
-                    RegexMatch(map.get(key), actualValue);
-                    break;
-                case MACRO:
-                    MacroMatch(key, map.get(key), actualValue);
+    public static boolean match(Map<String, Construct> map, String key,
+            Construct actualValue, PrefilterType type){
+        PrefilterMatcher matcher;
+        if(map instanceof CompiledPrefilters){
+            matcher = ((CompiledPrefilters)map).getMatcher(key);
+            if(matcher == null){
+                return true;
             }
+        } else {
+            Construct prefilter = map.get(key);
+            if(prefilter == null){
+                return true;
+            }
+            matcher = new PrefilterMatcher(key, prefilter);
         }
+        return matcher.match(actualValue, type);
     }
     
-    private static void ItemMatch(Construct item1, Construct item2) throws PrefilterNonMatchException{
-        String i1 = item1.val();
-        String i2 = item2.val();
-        if(item1.val().contains(":")){
-            String[] split = item1.val().split(":");
-            i1 = split[0].trim();
-        }
-        if(item2.val().contains(":")){
-            String[] split = item2.val().split(":");
-            i2 = split[0].trim();
-        }
-        if(!i1.trim().equalsIgnoreCase(i2.trim())){
-            throw new PrefilterNonMatchException();
-        }
+    /**
+     * Compiles the given prefilters, so that regexes and expressions don't need to be
+     * recompiled each time the event is fired. The returned map is unmodifiable.
+     * @param prefilter
+     * @return 
+     */
+    public static Map<String, Construct> Compile(Map<String, Construct> prefilter){
+        return new CompiledPrefilters(prefilter);
     }
     
-    private static void StringMatch(String string1, String string2) throws PrefilterNonMatchException{
-        if(!string1.equals(string2)){
-            throw new PrefilterNonMatchException();
+    /**
+     * Returns the compiled matcher for the given key, or null if this prefilter isn't set.
+     * @param map
+     * @param key
+     * @return 
+     */
+    static PrefilterMatcher GetMatcher(Map<String, Construct> map, String key){
+        if(map instanceof CompiledPrefilters){
+            return ((CompiledPrefilters)map).getMatcher(key);
         }
+        Construct prefilter = map.get(key);
+        return prefilter == null ? null : new PrefilterMatcher(key, prefilter);
     }
     
-    private static void MathMatch(Construct one, Construct two) throws PrefilterNonMatchException{
-        try{
-            double dOne = Static.getNumber(one);
-            double dTwo = Static.getNumber(two);
-            if(dOne != dTwo){
-                throw new PrefilterNonMatchException();
+    private static final class CompiledPrefilters extends AbstractMap<String, Construct>{
+        private final Map<String, Construct> prefilter;
+        private final Map<String, PrefilterMatcher> matchers;
+        
+        private CompiledPrefilters(Map<String, Construct> prefilter){
+            this.prefilter = Collections.unmodifiableMap(new HashMap<String, Construct>(prefilter));
+            this.matchers = new HashMap<String, PrefilterMatcher>();
+            for(Map.Entry<String, Construct> entry : prefilter.entrySet()){
+                matchers.put(entry.getKey(), new PrefilterMatcher(entry.getKey(), entry.getValue()));
             }
-        } catch(ConfigRuntimeException e){
-            throw new PrefilterNonMatchException();
         }
-    }
-    
-    private static void ExpressionMatch(Construct expression, Construct dvalue) throws PrefilterNonMatchException{
-        if(expression.val().matches("\\(.*\\)")){
-            String exp = expression.val().substring(1, expression.val().length() - 1);
-            boolean inequalityMode = false;
-            if(exp.contains("<") || exp.contains(">") || exp.contains("==")){
-                inequalityMode = true;
-            }
-            try{
-                double val = Expression.compile(exp).evaluate();
-                if(inequalityMode){
-                    if(val == 0){
-                        throw new PrefilterNonMatchException();
-                    }
-                } else {
-                    if(val != Static.getDouble(dvalue)){
-                        throw new PrefilterNonMatchException();
-                    }
-                }
-            } catch(ExpressionException e){
-                throw new ConfigRuntimeException("Your expression is invalidly formatted", 
-                        ExceptionType.FormatException, expression.getTarget());
-            }
-        } else {
-            throw new ConfigRuntimeException("Prefilter expecting expression type, and \"" 
-                    + expression.val() + "\" does not follow expression format. "
-                    + "(Did you surround it in parenthesis?)", 
-                    ExceptionType.FormatException, expression.getTarget());
+        
+        public PrefilterMatcher getMatcher(String key){
+            return matchers.get(key);
         }
-    }
-    
-    private static void RegexMatch(Construct expression, Construct value) throws PrefilterNonMatchException{
-        if(expression.val().matches("/.*/")){
-            String exp = expression.val().substring(1, expression.val().length() - 1);
-            if(!value.val().matches(exp)){
-                throw new PrefilterNonMatchException();
-            }
-        } else {
-            throw new ConfigRuntimeException("Prefilter expecting regex type, and \"" 
-                    + expression.val() + "\" does not follow regex format", ExceptionType.FormatException, expression.getTarget());
+
+        @Override
+        public Construct get(Object key) {
+            return prefilter.get(key);
         }
-    }
-    
-    private static void MacroMatch(String key, Construct expression, Construct value) throws PrefilterNonMatchException{
-        if(expression.val().matches("\\(.*\\)")){
-            ExpressionMatch(MathReplace(key, expression, value), value);
-        } else if(expression.val().matches("/.*/")){
-            RegexMatch(expression, value);
-        } else {
-            StringMatch(expression.val(), value.val());
+
+        @Override
+        public boolean containsKey(Object key) {
+            return prefilter.containsKey(key);
+        }
+
+        @Override
+        public Set<Entry<String, Construct>> entrySet() {
+            return prefilter.entrySet();
         }
-    }
-    
-    private static Construct MathReplace(String key, Construct expression, Construct value){
-        return new CString(expression.val().replaceAll(key, value.val()), expression.getTarget());
     }
 }
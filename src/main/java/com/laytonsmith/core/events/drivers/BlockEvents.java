@@ -356,10 +356,18 @@ public class BlockEvents {
                     }
                 }
 
-                Prefilters.match(prefilter, "1", sce.getLine(0), Prefilters.PrefilterType.REGEX);
-                Prefilters.match(prefilter, "2", sce.getLine(1), Prefilters.PrefilterType.REGEX);
-                Prefilters.match(prefilter, "3", sce.getLine(2), Prefilters.PrefilterType.REGEX);
-                Prefilters.match(prefilter, "4", sce.getLine(3), Prefilters.PrefilterType.REGEX);
+                if(!Prefilters.match(prefilter, "1", sce.getLine(0), Prefilters.PrefilterType.REGEX)){
+                    return false;
+                }
+                if(!Prefilters.match(prefilter, "2", sce.getLine(1), Prefilters.PrefilterType.REGEX)){
+                    return false;
+                }
+                if(!Prefilters.match(prefilter, "3", sce.getLine(2), Prefilters.PrefilterType.REGEX)){
+                    return false;
+                }
+                if(!Prefilters.match(prefilter, "4", sce.getLine(3), Prefilters.PrefilterType.REGEX)){
+                    return false;
+                }
 
                 return true;
             }
@@ -143,7 +143,9 @@ public class EntityEvents {
         	if(e instanceof MCEntityTargetEvent){
         		MCEntityTargetEvent ete = (MCEntityTargetEvent) e;
         		
-        		Prefilters.match(prefilter, "mobtype", ete.getEntityType().name(), Prefilters.PrefilterType.MACRO);
+        		if(!Prefilters.match(prefilter, "mobtype", ete.getEntityType().name(), Prefilters.PrefilterType.MACRO)){
+        		    return false;
+        		}
         		
         		MCEntity target = ete.getTarget();
         		if (target == null) {
@@ -151,7 +153,9 @@ public class EntityEvents {
         		}
         		
         		if (target instanceof MCPlayer) {
-	        		Prefilters.match(prefilter, "player", ((MCPlayer)target).getName(), Prefilters.PrefilterType.MACRO);
+	        		if(!Prefilters.match(prefilter, "player", ((MCPlayer)target).getName(), Prefilters.PrefilterType.MACRO)){
+	        		    return false;
+	        		}
 	        		
 	        		return true;
 	        	}
@@ -218,7 +218,7 @@ public class PlayerEvents {
     }
     
     @api
-    public static class player_join extends AbstractEvent{
+    public static class player_join extends AbstractEvent implements IndexableEvent {
 
         public String getName() {
             return "player_join";
@@ -239,6 +239,21 @@ public class PlayerEvents {
             return CHVersion.V3_3_0;
         }
         
+        public String getIndexKey() {
+            return "player";
+        }
+
+        public PrefilterType getIndexType() {
+            return PrefilterType.STRING_MATCH;
+        }
+
+        public String getIndexValue(BindableEvent e) {
+            if (e instanceof MCPlayerJoinEvent) {
+                return ((MCPlayerJoinEvent)e).getPlayer().getName();
+            }
+            return null;
+        }
+
         public Driver driver(){
             return Driver.PLAYER_JOIN;
         }
@@ -251,7 +266,9 @@ public class PlayerEvents {
                         return false;
                     }
                 }                
-                Prefilters.match(prefilter, "join_message", ple.getJoinMessage(), Prefilters.PrefilterType.REGEX);
+                if(!Prefilters.match(prefilter, "join_message", ple.getJoinMessage(), Prefilters.PrefilterType.REGEX)){
+                    return false;
+                }
                 return true;
             }
             return false;
@@ -295,7 +312,7 @@ public class PlayerEvents {
     }
     
     @api
-    public static class player_interact extends AbstractEvent{
+    public static class player_interact extends AbstractEvent implements IndexableEvent {
 
         public String getName() {
             return "player_interact";
@@ -322,6 +339,21 @@ public class PlayerEvents {
             return CHVersion.V3_3_0;
         }
 
+        public String getIndexKey() {
+            return "player";
+        }
+
+        public PrefilterType getIndexType() {
+            return PrefilterType.MACRO;
+        }
+
+        public String getIndexValue(BindableEvent e) {
+            if (e instanceof MCPlayerInteractEvent) {
+                return ((MCPlayerInteractEvent)e).getPlayer().getName();
+            }
+            return null;
+        }
+
         public Driver driver() {
             return Driver.PLAYER_INTERACT;
         }
@@ -345,9 +377,15 @@ public class PlayerEvents {
                     }
                 }
                 
-                Prefilters.match(prefilter, "item", Static.ParseItemNotation(pie.getItem()), PrefilterType.ITEM_MATCH);
-                Prefilters.match(prefilter, "block", Static.ParseItemNotation(pie.getClickedBlock()), PrefilterType.ITEM_MATCH);
-                Prefilters.match(prefilter, "player", pie.getPlayer().getName(), PrefilterType.MACRO);
+                if(!Prefilters.match(prefilter, "item", Static.ParseItemNotation(pie.getItem()), PrefilterType.ITEM_MATCH)){
+                    return false;
+                }
+                if(!Prefilters.match(prefilter, "block", Static.ParseItemNotation(pie.getClickedBlock()), PrefilterType.ITEM_MATCH)){
+                    return false;
+                }
+                if(!Prefilters.match(prefilter, "player", pie.getPlayer().getName(), PrefilterType.MACRO)){
+                    return false;
+                }
                 
                 return true;
             }
@@ -402,7 +440,7 @@ public class PlayerEvents {
     }
     
     @api
-    public static class player_spawn extends AbstractEvent {        
+    public static class player_spawn extends AbstractEvent implements IndexableEvent {        
         
         public String getName() {
             return "player_spawn";
@@ -421,6 +459,21 @@ public class PlayerEvents {
                     + "{player|location}";
         }
         
+        public String getIndexKey() {
+            return "player";
+        }
+
+        public PrefilterType getIndexType() {
+            return PrefilterType.MACRO;
+        }
+
+        public String getIndexValue(BindableEvent e) {
+            if (e instanceof MCPlayerRespawnEvent) {
+                return ((MCPlayerRespawnEvent)e).getPlayer().getName();
+            }
+            return null;
+        }
+
         public Driver driver() {
             return Driver.PLAYER_SPAWN;
         }
@@ -432,11 +485,21 @@ public class PlayerEvents {
         public boolean matches(Map<String, Construct> prefilter, BindableEvent e) throws PrefilterNonMatchException {
             if (e instanceof MCPlayerRespawnEvent) {
                 MCPlayerRespawnEvent event = (MCPlayerRespawnEvent) e;
-                Prefilters.match(prefilter, "player", event.getPlayer().getName(), PrefilterType.MACRO);
-                Prefilters.match(prefilter, "x", event.getRespawnLocation().getBlockX(), PrefilterType.EXPRESSION);
-                Prefilters.match(prefilter, "y", event.getRespawnLocation().getBlockY(), PrefilterType.EXPRESSION);
-                Prefilters.match(prefilter, "z", event.getRespawnLocation().getBlockZ(), PrefilterType.EXPRESSION);
-                Prefilters.match(prefilter, "world", event.getRespawnLocation().getWorld().getName(), PrefilterType.STRING_MATCH);
+                if(!Prefilters.match(prefilter, "player", event.getPlayer().getName(), PrefilterType.MACRO)){
+                    return false;
+                }
+                if(!Prefilters.match(prefilter, "x", event.getRespawnLocation().getBlockX(), PrefilterType.EXPRESSION)){
+                    return false;
+                }
+                if(!Prefilters.match(prefilter, "y", event.getRespawnLocation().getBlockY(), PrefilterType.EXPRESSION)){
+                    return false;
+                }
+                if(!Prefilters.match(prefilter, "z", event.getRespawnLocation().getBlockZ(), PrefilterType.EXPRESSION)){
+                    return false;
+                }
+                if(!Prefilters.match(prefilter, "world", event.getRespawnLocation().getWorld().getName(), PrefilterType.STRING_MATCH)){
+                    return false;
+                }
                 return true;
             }
             return false;
@@ -498,7 +561,7 @@ public class PlayerEvents {
         
     
     @api
-    public static class player_death extends AbstractEvent {
+    public static class player_death extends AbstractEvent implements IndexableEvent {
         
         public String getName() {
             return "player_death";
@@ -516,6 +579,21 @@ public class PlayerEvents {
                     + "{player | drops | death_message}";
         }
         
+        public String getIndexKey() {
+            return "player";
+        }
+
+        public PrefilterType getIndexType() {
+            return PrefilterType.MACRO;
+        }
+
+        public String getIndexValue(BindableEvent e) {
+            if (e instanceof MCPlayerDeathEvent) {
+                return ((MCPlayer)((MCPlayerDeathEvent)e).getEntity()).getName();
+            }
+            return null;
+        }
+
         public Driver driver() {
             return Driver.PLAYER_DEATH;
         }
@@ -527,7 +605,9 @@ public class PlayerEvents {
         public boolean matches(Map<String, Construct> prefilter, BindableEvent e) throws PrefilterNonMatchException {
             if (e instanceof MCPlayerDeathEvent) {
                 MCPlayerDeathEvent event = (MCPlayerDeathEvent) e;
-                Prefilters.match(prefilter, "player", ((MCPlayer)event.getEntity()).getName(), PrefilterType.MACRO);
+                if(!Prefilters.match(prefilter, "player", ((MCPlayer)event.getEntity()).getName(), PrefilterType.MACRO)){
+                    return false;
+                }
                 return true;
             }
             return false;
@@ -609,7 +689,7 @@ public class PlayerEvents {
     }
     
     @api
-    public static class player_quit extends AbstractEvent {
+    public static class player_quit extends AbstractEvent implements IndexableEvent {
         
         public String getName() {
             return "player_quit";
@@ -623,6 +703,21 @@ public class PlayerEvents {
                     + "{player|message}";
         }
         
+        public String getIndexKey() {
+            return "player";
+        }
+
+        public PrefilterType getIndexType() {
+            return PrefilterType.MACRO;
+        }
+
+        public String getIndexValue(BindableEvent e) {
+            if (e instanceof MCPlayerQuitEvent) {
+                return ((MCPlayerQuitEvent)e).getPlayer().getName();
+            }
+            return null;
+        }
+
         public Driver driver() {
             return Driver.PLAYER_QUIT;
         }
@@ -636,10 +731,12 @@ public class PlayerEvents {
                 //As a very special case, if this player is currently in interpreter mode, we do not want to
                 //intercept their chat event
                 if(CommandHelperPlugin.self.interpreterListener.isInInterpreterMode(((MCPlayerQuitEvent)e).getPlayer())){
-                    throw new PrefilterNonMatchException();
+                    return false;
                 }
                 
-                Prefilters.match(prefilter, "player", ((MCPlayerQuitEvent)e).getPlayer().getName(), PrefilterType.MACRO);
+                if(!Prefilters.match(prefilter, "player", ((MCPlayerQuitEvent)e).getPlayer().getName(), PrefilterType.MACRO)){
+                    return false;
+                }
                 return true;
             }
             return false;
@@ -699,7 +796,7 @@ public class PlayerEvents {
     }
     
     @api
-    public static class player_chat extends AbstractEvent {
+    public static class player_chat extends AbstractEvent implements IndexableEvent {
         
         public String getName() {
             return "player_chat";
@@ -716,6 +813,21 @@ public class PlayerEvents {
                     + "{player|message}";
         }
         
+        public String getIndexKey() {
+            return "player";
+        }
+
+        public PrefilterType getIndexType() {
+            return PrefilterType.MACRO;
+        }
+
+        public String getIndexValue(BindableEvent e) {
+            if (e instanceof MCPlayerChatEvent) {
+                return ((MCPlayerChatEvent)e).getPlayer().getName();
+            }
+            return null;
+        }
+
         public Driver driver() {
             return Driver.PLAYER_CHAT;
         }
@@ -729,9 +841,11 @@ public class PlayerEvents {
                 //As a very special case, if this player is currently in interpreter mode, we do not want to
                 //intercept their chat event
                 if(CommandHelperPlugin.self.interpreterListener.isInInterpreterMode(((MCPlayerChatEvent)e).getPlayer())){
-                    throw new PrefilterNonMatchException();
+                    return false;
+                }
+                if(!Prefilters.match(prefilter, "player", ((MCPlayerChatEvent)e).getPlayer().getName(), PrefilterType.MACRO)){
+                    return false;
                 }
-                Prefilters.match(prefilter, "player", ((MCPlayerChatEvent)e).getPlayer().getName(), PrefilterType.MACRO);
                 return true;
             }
             return false;
@@ -793,7 +907,7 @@ public class PlayerEvents {
     }
     
     @api
-    public static class player_command extends AbstractEvent {
+    public static class player_command extends AbstractEvent implements IndexableEvent {
         
         public String getName() {
             return "player_command";
@@ -810,6 +924,21 @@ public class PlayerEvents {
                     + "{command}";
         }
         
+        public String getIndexKey() {
+            return "player";
+        }
+
+        public PrefilterType getIndexType() {
+            return PrefilterType.MACRO;
+        }
+
+        public String getIndexValue(BindableEvent e) {
+            if (e instanceof MCPlayerCommandEvent) {
+                return ((MCPlayerCommandEvent)e).getPlayer().getName();
+            }
+            return null;
+        }
+
         public Driver driver() {
             return Driver.PLAYER_COMMAND;
         }
@@ -822,7 +951,9 @@ public class PlayerEvents {
             if (e instanceof MCPlayerCommandEvent) {
                 MCPlayerCommandEvent event = (MCPlayerCommandEvent) e;
                 String command = event.getCommand();
-                Prefilters.match(prefilter, "player", event.getPlayer().getName(), PrefilterType.MACRO);   
+                if(!Prefilters.match(prefilter, "player", event.getPlayer().getName(), PrefilterType.MACRO)){
+                    return false;
+                }
                 if(prefilter.containsKey("command") && !command.equals(event.getCommand())){
                     return false;
                 }
@@ -888,7 +1019,7 @@ public class PlayerEvents {
     }
     
     @api
-    public static class world_changed extends AbstractEvent {
+    public static class world_changed extends AbstractEvent implements IndexableEvent {
         
         public String getName() {
             return "world_changed";
@@ -904,6 +1035,21 @@ public class PlayerEvents {
                     + "{player, from}";
         }
         
+        public String getIndexKey() {
+            return "player";
+        }
+
+        public PrefilterType getIndexType() {
+            return PrefilterType.MACRO;
+        }
+
+        public String getIndexValue(BindableEvent e) {
+            if (e instanceof MCWorldChangedEvent) {
+                return ((MCWorldChangedEvent)e).getPlayer().getName();
+            }
+            return null;
+        }
+
         public Driver driver() {
             return Driver.WORLD_CHANGED;
         }
@@ -915,9 +1061,15 @@ public class PlayerEvents {
         public boolean matches(Map<String, Construct> prefilter, BindableEvent e) throws PrefilterNonMatchException {
             if (e instanceof MCWorldChangedEvent) {
                 MCWorldChangedEvent event = (MCWorldChangedEvent) e;
-                Prefilters.match(prefilter, "player", event.getPlayer().getName(), PrefilterType.MACRO);   
-                Prefilters.match(prefilter, "from", event.getFrom().getName(), PrefilterType.STRING_MATCH);
-                Prefilters.match(prefilter, "to", event.getTo().getName(), PrefilterType.STRING_MATCH);
+                if(!Prefilters.match(prefilter, "player", event.getPlayer().getName(), PrefilterType.MACRO)){
+                    return false;
+                }
+                if(!Prefilters.match(prefilter, "from", event.getFrom().getName(), PrefilterType.STRING_MATCH)){
+                    return false;
+                }
+                if(!Prefilters.match(prefilter, "to", event.getTo().getName(), PrefilterType.STRING_MATCH)){
+                    return false;
+                }
                 return true;
             }
             return false;
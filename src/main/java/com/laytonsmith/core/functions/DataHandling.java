@@ -6,9 +6,11 @@ import com.laytonsmith.core.*;
 import com.laytonsmith.core.constructs.*;
 import com.laytonsmith.core.exceptions.*;
 import com.laytonsmith.core.functions.Exceptions.ExceptionType;
+import com.laytonsmith.core.natives.interfaces.ArrayAccess;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -85,7 +87,7 @@ public class DataHandling {
 			Construct c = args[1];
 			while (c instanceof IVariable) {
 				IVariable cur = (IVariable) c;
-				c = env.GetVarList().get(cur.getName(), cur.getTarget()).ival();
+				c = env.GetVarList().get(cur).ival();
 			}
 			if (args[0] instanceof IVariable) {
 				IVariable v = new IVariable(((IVariable) args[0]).getName(), c, t);
@@ -113,7 +115,7 @@ public class DataHandling {
 			Construct ival = toSet;
 			while (ival instanceof IVariable) {
 				IVariable cur = (IVariable) ival;
-				ival = env.GetVarList().get(cur.getName(), cur.getTarget()).ival();
+				ival = env.GetVarList().get(cur).ival();
 			}
 			Chain c = new Chain();
 			prepare((CArrayReference) arrayAndIndex, c);
@@ -308,45 +310,28 @@ public class DataHandling {
 				if (finish < start) {
 					throw new ConfigRuntimeException("When using the .. notation, the left number may not be greater than the right number. Recieved " + start + " and " + finish, ExceptionType.RangeException, t);
 				}
-				arr = new ArrayHandling.range().exec(t, env, new CInt(start, t), new CInt(finish + 1, t));
 			}
-			if (arr instanceof CArray) {
+			if (arr instanceof CArray || arr instanceof CSlice) {
 				if (iv instanceof IVariable) {
-					CArray one = (CArray) arr;
+					//Slices are iterated lazily, rather than being turned into an array first.
+					//See CArray.iterator() for what happens if the array is changed during the loop.
+					Iterator<Construct> it = arr instanceof CSlice ? ((CSlice) arr).iterator() : ((ArrayAccess) arr).iterator();
 					IVariable two = (IVariable) iv;
-					if (!one.inAssociativeMode()) {
-						for (int i = 0; i < one.size(); i++) {
-							env.GetVarList().set(new IVariable(two.getName(), one.get(i, t), t));
-							try {
-								that.eval(code, env);
-							} catch (LoopBreakException e) {
-								int num = e.getTimes();
-								if (num > 1) {
-									e.setTimes(--num);
-									throw e;
-								}
-								return new CVoid(t);
-							} catch (LoopContinueException e) {
-								i += e.getTimes() - 1;
-								continue;
+					while (it.hasNext()) {
+						env.GetVarList().set(new IVariable(two.getName(), it.next(), t));
+						try {
+							that.eval(code, env);
+						} catch (LoopBreakException e) {
+							int num = e.getTimes();
+							if (num > 1) {
+								e.setTimes(--num);
+								throw e;
 							}
-						}
-					} else {
-						for (int i = 0; i < one.size(); i++) {
-							String index = one.keySet().toArray(new String[]{})[i];
-							env.GetVarList().set(new IVariable(two.getName(), one.get(index, t), t));
-							try {
-								that.eval(code, env);
-							} catch (LoopBreakException e) {
-								int num = e.getTimes();
-								if (num > 1) {
-									e.setTimes(--num);
-									throw e;
-								}
-								return new CVoid(t);
-							} catch (LoopContinueException e) {
-								i += e.getTimes() - 1;
-								continue;
+							return new CVoid(t);
+						} catch (LoopContinueException e) {
+							//Skip the extra values
+							for (int i = 1; i < e.getTimes() && it.hasNext(); i++) {
+								it.next();
 							}
 						}
 					}
@@ -1035,7 +1020,7 @@ public class DataHandling {
 		@Override
 		public Construct execs(Target t, Env env, Script parent, ParseTree... nodes) {
 			Procedure myProc = getProcedure(t, env, parent, nodes);
-			env.GetProcs().put(myProc.getName(), myProc);
+			env.AddProc(myProc);
 			return new CVoid(t);
 		}
 
@@ -1302,7 +1287,7 @@ public class DataHandling {
 				args[i] = parent.seval(nodes[i], env);
 			}
 
-			Procedure proc = env.GetProcs().get(args[0].val());
+			Procedure proc = env.GetProc(args[0].val());
 			if (proc != null) {
 				List<Construct> vars = new ArrayList<Construct>(Arrays.asList(args));
 				vars.remove(0);
@@ -1356,7 +1341,7 @@ public class DataHandling {
 		}
 
 		public Construct exec(Target t, Env env, Construct... args) {
-			return new CBoolean(env.GetProcs().get(args[0].val()) == null ? false : true, t);
+			return new CBoolean(env.GetProc(args[0].val()) == null ? false : true, t);
 		}
 	}
 
@@ -1550,7 +1535,7 @@ public class DataHandling {
 			if (args.length == 1) {
 				if (args[0] instanceof IVariable) {
 					IVariable cur = (IVariable) args[0];
-					Globals.SetGlobal(environment.GetVarList().get(cur.getName(), cur.getTarget()));
+					Globals.SetGlobal(environment.GetVarList().get(cur));
 				} else {
 					throw new ConfigRuntimeException("Expecting a IVariable when only one parameter is specified", ExceptionType.InsufficientArgumentsException, t);
 				}
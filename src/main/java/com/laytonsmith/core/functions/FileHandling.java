@@ -24,6 +24,7 @@ import com.laytonsmith.core.functions.Exceptions.ExceptionType;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 
 /**
@@ -103,7 +104,7 @@ public class FileHandling {
 	public static class async_read extends AbstractFunction{
 
 		public ExceptionType[] thrown() {
-			return new ExceptionType[]{};
+			return new ExceptionType[]{ExceptionType.IOException};
 		}
 
 		public boolean isRestricted() {
@@ -122,6 +123,17 @@ public class FileHandling {
 			} else {
 				callback = ((CClosure)args[1]);
 			}
+			try {
+				submitRead(file, callback, t);
+			} catch (RejectedExecutionException e) {
+				//Running the read here instead would block the server thread
+				throw new ConfigRuntimeException("The file could not be read, because too many asynchronous tasks are already waiting: "
+						+ e.getMessage(), ExceptionType.IOException, t, e);
+			}
+			return new CVoid(t);
+		}
+
+		private static void submitRead(final String file, final CClosure callback, final Target t) {
 			Threader.GetThreader().submit(new Runnable() {
 
 				public void run() {
@@ -162,7 +174,6 @@ public class FileHandling {
 					});
 				}
 			});
-			return new CVoid(t);
 		}
 
 		public String getName() {
@@ -185,7 +196,8 @@ public class FileHandling {
 				+ " If @contents is null, that indicates that an exception occured, and @exception will not be null, but instead have an"
 				+ " exeption array. Otherwise, @contents will contain the file's contents, and @exception will be null. This method is useful"
 				+ " to use in two cases, either you need a remote file via SCP, or a local file is big enough that you notice a delay when"
-				+ " simply using the read() function.";
+				+ " simply using the read() function. If too many asynchronous tasks are already waiting to run, the read"
+				+ " isn't started, and an IOException is thrown right away.";
 		}
 
 		public CHVersion since() {
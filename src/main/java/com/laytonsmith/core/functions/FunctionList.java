@@ -5,6 +5,7 @@ package com.laytonsmith.core.functions;
 import com.laytonsmith.PureUtilities.ClassDiscovery;
 import com.laytonsmith.annotations.api;
 import com.laytonsmith.annotations.api.Platforms;
+import com.laytonsmith.core.PermissionCache;
 import com.laytonsmith.core.Prefs;
 import com.laytonsmith.core.constructs.CFunction;
 import com.laytonsmith.core.constructs.Construct;
@@ -112,6 +113,10 @@ public class FunctionList {
         }
         try{
             functions.get(platform).put(f.getName(), f);
+            if(f instanceof Function && ((Function)f).isRestricted()){
+                //Build the permission nodes now, rather than on the first call
+                PermissionCache.FunctionNodes(f.getName());
+            }
         } catch(UnsupportedOperationException e){
             //This function isn't done yet, and during production this is a serious problem,
             //but it will be caught when we test all the functions, so for now just ignore it,
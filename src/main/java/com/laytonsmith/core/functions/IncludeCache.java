@@ -4,6 +4,7 @@ package com.laytonsmith.core.functions;
 
 import com.laytonsmith.PureUtilities.ZipReader;
 import com.laytonsmith.core.CHLog;
+import com.laytonsmith.core.CompileCache;
 import com.laytonsmith.core.GenericTreeNode;
 import com.laytonsmith.core.MethodScriptCompiler;
 import com.laytonsmith.core.ParseTree;
@@ -14,7 +15,10 @@ import com.laytonsmith.core.exceptions.ConfigCompileException;
 import com.laytonsmith.core.exceptions.ConfigRuntimeException;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  *
@@ -23,23 +27,66 @@ import java.util.HashMap;
 public class IncludeCache {
     private static final CHLog.Tags TAG = CHLog.Tags.INCLUDES;
     private static HashMap<File, ParseTree> cache = new HashMap<File, ParseTree>();
+    /**
+     * The hash of the contents each cached file was compiled from.
+     */
+    private static HashMap<File, String> hashes = new HashMap<File, String>();
+    /**
+     * The files included by this thread, and their hashes, while it is recording.
+     */
+    private static final ThreadLocal<Map<File, String>> recording = new ThreadLocal<Map<File, String>>();
     
-    private static void add(File file, ParseTree tree){
+    private static synchronized void add(File file, ParseTree tree, String hash){
         cache.put(file, tree);
+        hashes.put(file, hash);
+    }
+    
+    private static synchronized ParseTree getCached(File file){
+        return cache.get(file);
+    }
+    
+    /**
+     * Returns the hash of the contents the cached file was compiled from, or null
+     * if it isn't cached, for instance because it changed.
+     * @param file
+     * @return 
+     */
+    public static synchronized String getHash(File file){
+        return hashes.get(file);
+    }
+    
+    /**
+     * Starts recording the files this thread includes, until stopRecording is called.
+     */
+    public static void startRecording(){
+        recording.set(new HashMap<File, String>());
+    }
+    
+    /**
+     * Stops recording, and returns the files this thread included since startRecording
+     * was called, along with the hash of the contents each was compiled from (which is
+     * null if it couldn't be cached).
+     * @return 
+     */
+    public static Map<File, String> stopRecording(){
+        Map<File, String> included = recording.get();
+        recording.remove();
+        return included == null ? new HashMap<File, String>() : included;
     }
     
     public static ParseTree get(File file, Target t){
         CHLog.Log(TAG, CHLog.Level.DEBUG, "Loading " + file.getAbsolutePath(), t);
-        if(!cache.containsKey(file)){
+        ParseTree tree = getCached(file);
+        if(tree == null){
             CHLog.Log(TAG, CHLog.Level.VERBOSE, "Cache does not already contain include file, compiling, then caching.", t);
             //We have to pull the file from the FS, and compile it.
             if(Security.CheckSecurity(file.getAbsolutePath())){
                 CHLog.Log(TAG, CHLog.Level.VERBOSE, "Security check passed", t);
                 try {
                     String s = new ZipReader(file).getFileContents();
-                    ParseTree tree = MethodScriptCompiler.compile(MethodScriptCompiler.lex("g(\n" + s + "\n)", file));
+                    tree = MethodScriptCompiler.compile(MethodScriptCompiler.lex("g(\n" + s + "\n)", file));
                     CHLog.Log(TAG, CHLog.Level.VERBOSE, "Compilation succeeded, adding to cache.", t);
-                    IncludeCache.add(file, tree);
+                    IncludeCache.add(file, tree, CompileCache.Hash(s));
                 } catch (ConfigCompileException ex) {
                     throw new ConfigRuntimeException("There was a compile error when trying to include the script at " + file
                             + "\n" + ex.getMessage() + " :: " + file.getName() + ":" + ex.getLineNum(), 
@@ -53,12 +100,47 @@ public class IncludeCache {
                         Exceptions.ExceptionType.SecurityException, t);
             }
         }
+        Map<File, String> included = recording.get();
+        if(included != null){
+            included.put(file, getHash(file));
+        }
         CHLog.Log(TAG, CHLog.Level.INFO, "Returning " + file.getAbsolutePath() + " from cache", t);
-        return cache.get(file);
+        return tree;
     }
     
-    public static void clearCache(){
+    public static synchronized void clearCache(){
         CHLog.Log(TAG, CHLog.Level.INFO, "Clearing include cache", Target.UNKNOWN);
         cache.clear();
+        hashes.clear();
+    }
+    
+    /**
+     * Removes the files whose contents have changed since they were compiled, or that can
+     * no longer be read, so they are compiled again the next time they are included. The
+     * files are read outside of the lock, so includes can still be run in the meantime.
+     */
+    public static void clearChanged(){
+        Map<File, String> current;
+        synchronized(IncludeCache.class){
+            current = new HashMap<File, String>(hashes);
+        }
+        List<File> changed = new ArrayList<File>();
+        for(Map.Entry<File, String> entry : current.entrySet()){
+            File file = entry.getKey();
+            try {
+                if(!CompileCache.Hash(new ZipReader(file).getFileContents()).equals(entry.getValue())){
+                    changed.add(file);
+                }
+            } catch (IOException ex) {
+                changed.add(file);
+            }
+        }
+        synchronized(IncludeCache.class){
+            for(File file : changed){
+                CHLog.Log(TAG, CHLog.Level.VERBOSE, file.getAbsolutePath() + " has changed, removing it from the cache", Target.UNKNOWN);
+                cache.remove(file);
+                hashes.remove(file);
+            }
+        }
     }
 }
@@ -345,13 +345,13 @@ public class Math {
             if(args.length == 2){
                 if(args[1] instanceof IVariable){
                     IVariable cur2 = (IVariable)args[1];
-                    args[1] = env.GetVarList().get(cur2.getName(), cur2.getTarget());
+                    args[1] = env.GetVarList().get(cur2);
                 }
                 value = Static.getInt(args[1]);
             }
             if(args[0] instanceof IVariable){
                 IVariable cur = (IVariable)args[0];
-                IVariable v = env.GetVarList().get(cur.getName(), cur.getTarget());
+                IVariable v = env.GetVarList().get(cur);
                 Construct newVal;
                 if(Static.anyDoubles(v.ival())){
                     newVal = new CDouble(Static.getDouble(v.ival()) + value, t);
@@ -424,13 +424,13 @@ public class Math {
             if(args.length == 2){
                 if(args[1] instanceof IVariable){
                     IVariable cur2 = (IVariable)args[1];
-                    args[1] = env.GetVarList().get(cur2.getName(), cur2.getTarget());
+                    args[1] = env.GetVarList().get(cur2);
                 }
                 value = Static.getInt(args[1]);
             }
             if(args[0] instanceof IVariable){
                 IVariable cur = (IVariable)args[0];
-                IVariable v = env.GetVarList().get(cur.getName(), cur.getTarget());
+                IVariable v = env.GetVarList().get(cur);
                 Construct newVal;
                 if(Static.anyDoubles(v.ival())){
                     newVal = new CDouble(Static.getDouble(v.ival()) + value, t);
@@ -509,13 +509,13 @@ public class Math {
             if(args.length == 2){
                 if(args[1] instanceof IVariable){
                     IVariable cur2 = (IVariable)args[1];
-                    args[1] = env.GetVarList().get(cur2.getName(), cur2.getTarget());
+                    args[1] = env.GetVarList().get(cur2);
                 }
                 value = Static.getInt(args[1]);
             }
             if(args[0] instanceof IVariable){
                 IVariable cur = (IVariable)args[0];
-                IVariable v = env.GetVarList().get(cur.getName(), cur.getTarget());
+                IVariable v = env.GetVarList().get(cur);
                 Construct newVal;
                 if(Static.anyDoubles(v.ival())){
                     newVal = new CDouble(Static.getDouble(v.ival()) - value, t);
@@ -587,13 +587,13 @@ public class Math {
             if(args.length == 2){
                 if(args[1] instanceof IVariable){
                     IVariable cur2 = (IVariable)args[1];
-                    args[1] = env.GetVarList().get(cur2.getName(), cur2.getTarget());
+                    args[1] = env.GetVarList().get(cur2);
                 }
                 value = Static.getInt(args[1]);
             }
             if(args[0] instanceof IVariable){
                 IVariable cur = (IVariable)args[0];
-                IVariable v = env.GetVarList().get(cur.getName(), cur.getTarget());
+                IVariable v = env.GetVarList().get(cur);
                 Construct newVal;
                 if(Static.anyDoubles(v.ival())){
                     newVal = new CDouble(Static.getDouble(v.ival()) - value, t);
@@ -2,6 +2,7 @@
 
 package com.laytonsmith.core.functions;
 
+import com.laytonsmith.PureUtilities.BoundedExecutor;
 import com.laytonsmith.abstraction.MCCommandSender;
 import com.laytonsmith.abstraction.MCPlayer;
 import com.laytonsmith.annotations.api;
@@ -542,5 +543,68 @@ public class Meta {
         }
         
     }
+    
+    @api public static class get_thread_pool_info extends AbstractFunction{
+
+        public String getName() {
+            return "get_thread_pool_info";
+        }
+
+        public Integer[] numArgs() {
+            return new Integer[]{0};
+        }
+
+        public String docs() {
+            return "array {} Returns information about the thread pools that run asynchronous tasks, for"
+                    + " instance async_read, under the key userland, and the execution queues, under the key queues."
+                    + " Each is an array with the keys: queue_depth, the number of tasks waiting for a thread;"
+                    + " active_threads, the number of threads running a task; threads and max_threads; submitted"
+                    + " and completed, the number of tasks submitted, and finished by the pool; rejected, the number"
+                    + " of tasks that were rejected because the pool was full; and latency_p50, latency_p95 and"
+                    + " latency_p99, percentiles of the time in ms between a recent task being submitted and finishing.";
+        }
+
+        public ExceptionType[] thrown() {
+            return new ExceptionType[]{};
+        }
+
+        public boolean isRestricted() {
+            return true;
+        }
+        public Boolean runAsync() {
+            return null;
+        }
+
+        public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
+            CArray ret = new CArray(t);
+            ret.set("userland", stats(Threader.GetThreader().getStats(), t));
+            if(environment.GetExecutionQueue() == null){
+                ret.set("queues", new CNull(t));
+            } else {
+                ret.set("queues", stats(environment.GetExecutionQueue().getStats(), t));
+            }
+            return ret;
+        }
+
+        private static CArray stats(BoundedExecutor.Stats stats, Target t){
+            CArray ret = new CArray(t);
+            ret.set("queue_depth", new CInt(stats.getQueueDepth(), t));
+            ret.set("active_threads", new CInt(stats.getActiveThreads(), t));
+            ret.set("threads", new CInt(stats.getThreads(), t));
+            ret.set("max_threads", new CInt(stats.getMaxThreads(), t));
+            ret.set("submitted", new CInt(stats.getSubmitted(), t));
+            ret.set("completed", new CInt(stats.getCompleted(), t));
+            ret.set("rejected", new CInt(stats.getRejected(), t));
+            ret.set("latency_p50", new CDouble(stats.getLatencyP50(), t));
+            ret.set("latency_p95", new CDouble(stats.getLatencyP95(), t));
+            ret.set("latency_p99", new CDouble(stats.getLatencyP99(), t));
+            return ret;
+        }
+
+        public CHVersion since() {
+            return CHVersion.V3_3_1;
+        }
+        
+    }
         
 }
@@ -9,6 +9,7 @@ import com.laytonsmith.core.exceptions.CancelCommandException;
 import com.laytonsmith.core.exceptions.ConfigRuntimeException;
 import com.laytonsmith.core.exceptions.MarshalException;
 import com.laytonsmith.core.functions.Exceptions.ExceptionType;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -81,9 +82,9 @@ public class Persistance {
                 }
             }
             CHLog.Log(CHLog.Tags.PERSISTANCE, "Storing: " + key + " -> " + value, t);
-            Static.getPersistance().setValue(new String[]{"storage", key}, value);
             try {
-                Static.getPersistance().save();
+                //setValue saves the value itself, or leaves it to the write behind thread
+                Static.getPersistance().setValue(new String[]{"storage", key}, value);
             } catch (Exception ex) {
                 Logger.getLogger(Persistance.class.getName()).log(Level.SEVERE, null, ex);
                 throw new ConfigRuntimeException(ex.getMessage(), null, t, ex);
@@ -281,7 +282,11 @@ public class Persistance {
         public Construct exec(Target t, Env environment, Construct... args) throws ConfigRuntimeException {
             String namespace = GetNamespace(args, null, getName(), t);
             CHLog.Log(CHLog.Tags.PERSISTANCE, "Clearing value: " + namespace, t);
-            Static.getPersistance().setValue(new String[]{"storage", namespace}, null);
+            try {
+                Static.getPersistance().setValue(new String[]{"storage", namespace}, null);
+            } catch (IOException ex) {
+                Logger.getLogger(Persistance.class.getName()).log(Level.SEVERE, null, ex);
+            }
             return new CVoid(t);
         }
         
@@ -8,9 +8,11 @@ import com.laytonsmith.core.exceptions.ConfigRuntimeException;
 
 /**
  * Things that implement this can be accessed like an array, with array_get, or [].
+ * They can also be iterated over, which yields each value in order, and should
+ * be preferred over calling get() for each index, since that may be much slower.
  * @author Layton
  */
-public interface ArrayAccess extends Mixed {
+public interface ArrayAccess extends Mixed, Iterable<Construct> {
     /**
      * Return the mixed at this location. This should throw an exception if
      * the index does not exist.
@@ -0,0 +1,264 @@
+package com.laytonsmith.database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A small pool of JDBC connections to a single database. Opening a connection is
+ * expensive, so connections are kept open and handed out again, and each connection
+ * keeps a cache of the statements that have been prepared on it, so a query that is
+ * run over and over again is only prepared once per connection.
+ * <p>
+ * Connections are borrowed with {@link #borrow()}, and must be given back with
+ * {@link #release(PooledConnection)}, typically in a finally block. If the connection
+ * failed in a way that means it shouldn't be used again, use {@link #discard(PooledConnection)}
+ * instead. If every connection is in use, {@link #borrow()} waits for one to be released,
+ * but only for so long, see {@link #setBorrowTimeout(long)}.
+ *
+ * @author layton
+ */
+public class ConnectionPool {
+
+    private static final Map<String, ConnectionPool> pools = new HashMap<String, ConnectionPool>();
+
+    /**
+     * Returns the shared pool for this url, creating it if needed. The first call for
+     * a given url decides the credentials and size of the pool.
+     *
+     * @param url The jdbc url
+     * @param info The connection properties, for instance user and password. May be null.
+     * @param maxSize The maximum number of connections that may be open at once
+     * @return
+     */
+    public static synchronized ConnectionPool GetPool(String url, Properties info, int maxSize) {
+        ConnectionPool pool = pools.get(url);
+        if (pool == null) {
+            pool = new ConnectionPool(url, info, maxSize);
+            pools.put(url, pool);
+        }
+        return pool;
+    }
+
+    /**
+     * Closes all the shared pools. They will be recreated if they are requested again.
+     */
+    public static synchronized void CloseAll() {
+        for (ConnectionPool pool : pools.values()) {
+            pool.close();
+        }
+        pools.clear();
+    }
+
+    /**
+     * The number of prepared statements each connection keeps around.
+     */
+    private static final int STATEMENT_CACHE_SIZE = 32;
+    /**
+     * How long borrow waits for a connection by default, in milliseconds.
+     */
+    public static final long DEFAULT_BORROW_TIMEOUT = 30000;
+    private final String url;
+    private final Properties info;
+    private final int maxSize;
+    private final LinkedList<PooledConnection> idle = new LinkedList<PooledConnection>();
+    private final List<PooledConnection> all = new ArrayList<PooledConnection>();
+    /**
+     * The number of connections that are being opened right now. They count towards
+     * the maximum size, but they are opened without holding the lock.
+     */
+    private int opening = 0;
+    private long borrowTimeout = DEFAULT_BORROW_TIMEOUT;
+
+    public ConnectionPool(String url, Properties info, int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        this.url = url;
+        this.info = info == null ? new Properties() : info;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Sets how long {@link #borrow()} waits for a connection to be released, once the
+     * pool is at its maximum size, before it gives up.
+     *
+     * @param timeout The timeout, in milliseconds
+     */
+    public synchronized void setBorrowTimeout(long timeout) {
+        this.borrowTimeout = timeout;
+    }
+
+    /**
+     * Returns an open connection, opening a new one if none are idle. If the pool
+     * is already at its maximum size, this blocks until a connection is released,
+     * or the borrow timeout passes, in which case an SQLException is thrown.
+     *
+     * @return
+     * @throws SQLException
+     */
+    public PooledConnection borrow() throws SQLException {
+        synchronized (this) {
+            long deadline = System.currentTimeMillis() + borrowTimeout;
+            while (true) {
+                while (!idle.isEmpty()) {
+                    PooledConnection c = idle.removeFirst();
+                    if (!c.connection.isClosed()) {
+                        return c;
+                    }
+                    //The database closed it on us
+                    all.remove(c);
+                }
+                if (all.size() + opening < maxSize) {
+                    opening++;
+                    break;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new SQLException("Timed out after " + borrowTimeout + "ms waiting for a connection to " + url);
+                }
+                try {
+                    wait(remaining);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for a connection to " + url);
+                }
+            }
+        }
+        //Connecting can take a while, so other threads can keep using the pool in the meantime
+        PooledConnection c = null;
+        try {
+            c = new PooledConnection(DriverManager.getConnection(url, info));
+            return c;
+        } finally {
+            synchronized (this) {
+                opening--;
+                if (c != null) {
+                    all.add(c);
+                } else {
+                    //Someone else can have a go at it
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the connection to the pool, so it can be used again.
+     *
+     * @param c
+     */
+    public synchronized void release(PooledConnection c) {
+        if (all.contains(c)) {
+            idle.addFirst(c);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Closes the connection, and removes it from the pool. This should be used
+     * instead of {@link #release(PooledConnection)} if the connection is broken.
+     *
+     * @param c
+     */
+    public synchronized void discard(PooledConnection c) {
+        all.remove(c);
+        idle.remove(c);
+        c.close();
+        notifyAll();
+    }
+
+    /**
+     * Closes all the connections in this pool.
+     */
+    public synchronized void close() {
+        for (PooledConnection c : all) {
+            c.close();
+        }
+        all.clear();
+        idle.clear();
+        notifyAll();
+    }
+
+    /**
+     * A connection that belongs to a pool, along with its prepared statements.
+     */
+    public static final class PooledConnection {
+
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements;
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+            this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() > STATEMENT_CACHE_SIZE) {
+                        try {
+                            eldest.getValue().close();
+                        } catch (SQLException ex) {
+                            //Doesn't matter, we're done with it
+                        }
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        /**
+         * Returns the underlying connection. Don't close it, release it to the pool instead.
+         *
+         * @return
+         */
+        public Connection getConnection() {
+            return connection;
+        }
+
+        /**
+         * Returns a prepared statement for this query, reusing the one prepared
+         * previously on this connection if possible. The parameters of a reused
+         * statement are cleared, but the statement must not be closed.
+         *
+         * @param query
+         * @return
+         * @throws SQLException
+         */
+        public PreparedStatement prepare(String query) throws SQLException {
+            PreparedStatement prep = statements.get(query);
+            if (prep == null) {
+                prep = connection.prepareStatement(query);
+                statements.put(query, prep);
+            } else {
+                prep.clearParameters();
+            }
+            return prep;
+        }
+
+        private void close() {
+            for (PreparedStatement prep : statements.values()) {
+                try {
+                    prep.close();
+                } catch (SQLException ex) {
+                    //Doesn't matter, we're done with it
+                }
+            }
+            statements.clear();
+            try {
+                connection.close();
+            } catch (SQLException ex) {
+                Logger.getLogger(ConnectionPool.class.getName()).log(Level.WARNING, null, ex);
+            }
+        }
+    }
+}
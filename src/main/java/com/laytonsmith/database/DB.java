@@ -124,7 +124,9 @@ public abstract class DB {
      * java.util.Set if it is a select or other query that returns a result set,
      * or an Integer if it was an update query, which specifies the number of
      * results affected, or an int if it was an insert query with an
-     * auto-increment.
+     * auto-increment. If the order of the rows of a result set matters, a
+     * java.util.List of rows, each a Map of column name to value, may be
+     * returned instead of the Set.
      *
      * @param c
      * @param query
@@ -1,9 +1,13 @@
 package com.laytonsmith.database;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -21,11 +25,6 @@ public class SQLite extends DB{
     protected String testQuery() {
         return "SELECT 1";
     }
-    
-    private static PreparedStatement GetPreparedStatement(String query, CConnection cconn, Connection conn) throws SQLException{
-        PreparedStatement prep = conn.prepareStatement(query);
-        return prep;        
-    }
 
     @Override
     protected String sanitize(CConnection c, Object o) throws SQLException {       
@@ -41,20 +40,50 @@ public class SQLite extends DB{
             throw new SQLException("Cannot load SQLite. Check your installation and try again");
         }
         
-        Connection conn = DriverManager.getConnection("jdbc:sqlite:" + c.hostname);
-        PreparedStatement prep = SQLite.GetPreparedStatement(query, c, conn);
-        int i = 0;
-        for(Object o : params){
-            i++;
-            prep.setObject(i, o);
+        //SQLite locks the whole file while writing, so one connection per file is enough
+        ConnectionPool pool = ConnectionPool.GetPool("jdbc:sqlite:" + c.hostname, null, 1);
+        ConnectionPool.PooledConnection conn = pool.borrow();
+        boolean valid = false;
+        try {
+            PreparedStatement prep = conn.prepare(query);
+            int i = 0;
+            for(Object o : params){
+                i++;
+                prep.setObject(i, o);
+            }
+            Object ret;
+            if(prep.execute()){
+                //The statement is reused, so the results have to be read now
+                ret = ReadRows(prep.getResultSet());
+            } else {
+                ret = prep.getUpdateCount();
+            }
+            valid = true;
+            return ret;
+        } finally {
+            if(valid){
+                pool.release(conn);
+            } else {
+                pool.discard(conn);
+            }
         }
-        prep.addBatch();
-        if(prep.execute()){
-            return prep.getResultSet();
-        } else {
-            return prep.getUpdateCount();
+    }
+    
+    private static List<Map<String, Object>> ReadRows(ResultSet rs) throws SQLException{
+        try {
+            ResultSetMetaData md = rs.getMetaData();
+            List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+            while(rs.next()){
+                Map<String, Object> row = new LinkedHashMap<String, Object>();
+                for(int i = 1; i <= md.getColumnCount(); i++){
+                    row.put(md.getColumnLabel(i), rs.getObject(i));
+                }
+                rows.add(row);
+            }
+            return rows;
+        } finally {
+            rs.close();
         }
-        //throw new UnsupportedOperationException("Not supported yet.");
-    }   
+    }
     
 }
@@ -10,6 +10,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -71,6 +72,22 @@ public abstract class AbstractDataSource implements DataSource {
 		return list;
 	}
 
+	/**
+	 * The default implementation simply calls set for each value. If an
+	 * implementation can provide a more efficient method, this should be
+	 * overridden.
+	 *
+	 * @param values
+	 * @throws ReadOnlyException
+	 * @throws DataSourceException
+	 * @throws IOException
+	 */
+	public void set(Map<String[], String> values) throws ReadOnlyException, DataSourceException, IOException {
+		for (Map.Entry<String[], String> entry : values.entrySet()) {
+			set(entry.getKey(), entry.getValue());
+		}
+	}
+
 	private void setInvalidModifiers() {
 		DataSourceModifier[] invalid = this.invalidModifiers();
 		if (invalid == null) {
@@ -4,6 +4,7 @@ import com.laytonsmith.core.CHVersion;
 import com.laytonsmith.core.Documentation;
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 /**
  * All data sources must implement this interface. It provides methods to gather
@@ -65,6 +66,16 @@ public interface DataSource extends Documentation {
 	 */
 	public boolean set(String[] key, String value) throws ReadOnlyException, DataSourceException, IOException;
 
+	/**
+	 * Sets several values in the data source at once. Null values remove
+	 * the key, as with {@link #set(String[], String)}.
+	 *
+	 * @param values
+	 * @throws ReadOnlyException If this data source is inherently read
+	 * only, it will throw a read only exception if this method is called.
+	 */
+	public void set(Map<String[], String> values) throws ReadOnlyException, DataSourceException, IOException;
+
 	/**
 	 * Instructs this data source to repopulate its internal structure based
 	 * on this data provided. The method will be called if the data source
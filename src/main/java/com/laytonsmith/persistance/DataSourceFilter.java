@@ -11,11 +11,12 @@ import java.io.StringReader;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -45,13 +46,50 @@ public class DataSourceFilter {
 	 */
 	private static Pattern captureUsage = Pattern.compile("\\$(\\d+)");
 	/**
-	 * Since data lookups are expensive, cache them.
+	 * The most lookups that are cached. Keys often contain things like player
+	 * names, so the caches would otherwise grow forever.
 	 */
-	private Map<String, URI> cache = new TreeMap<String, URI>();
+	private static final int CACHE_SIZE = 10000;
+	/**
+	 * Since data lookups are expensive, cache them. This is synchronized, because
+	 * the network looks up connections from several threads at once.
+	 */
+	private Map<String, URI> cache = Collections.synchronizedMap(new LRUCache<URI>());
 	/**
 	 * Namespace lookups are also expensive, so let's also cache the results.
 	 */
-	private Map<String, List<URI>> namespaceCache = new TreeMap<String, List<URI>>();
+	private Map<String, List<URI>> namespaceCache = Collections.synchronizedMap(new LRUCache<List<URI>>());
+	/**
+	 * The filters whose first part is a plain word, by that word. Only these, and the
+	 * {@link #unindexed} filters, need to be tried against a key starting with that word.
+	 */
+	private Map<String, List<Pattern>> byFirstPart = new HashMap<String, List<Pattern>>();
+	/**
+	 * The filters whose first part has a wildcard or capture in it, which need
+	 * to be tried against every key.
+	 */
+	private List<Pattern> unindexed = new ArrayList<Pattern>();
+	/**
+	 * The original filter with the wildcards and captures removed, which is what
+	 * the key is compared against when several filters match.
+	 */
+	private Map<Pattern, String> stripped = new HashMap<Pattern, String>();
+	/**
+	 * The compiled regex for each filter part that has a wildcard or capture in it.
+	 */
+	private Map<String, Pattern> partPatterns = new HashMap<String, Pattern>();
+
+	private static class LRUCache<V> extends LinkedHashMap<String, V> {
+
+		public LRUCache() {
+			super(16, 0.75f, true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	}
 
 	/**
 	 * Creates a new data source filter. This is represented by a file that
@@ -229,6 +267,37 @@ public class DataSourceFilter {
 			original.put(m, "**");
 			namespaced.put(new String[]{"**"}, defaultURI.toString());
 		}
+		//Now that all the filters are known, work out everything about them that
+		//doesn't depend on the key being looked up, so lookups don't have to.
+		for (Pattern pattern : mappings.keySet()) {
+			String key = original.get(pattern);
+			String first = key.split("\\.")[0];
+			if (isPlain(first)) {
+				if (!byFirstPart.containsKey(first)) {
+					byFirstPart.put(first, new ArrayList<Pattern>());
+				}
+				byFirstPart.get(first).add(pattern);
+			} else {
+				unindexed.add(pattern);
+			}
+			stripped.put(pattern, key.replaceAll("\\*", "").replaceAll("[\\(\\)]", ""));
+		}
+		for (String[] key : namespaced.keySet()) {
+			for (String part : key) {
+				if (!isPlain(part) && !partPatterns.containsKey(part)) {
+					partPatterns.put(part, Pattern.compile(toRegex(part) + "$"));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns true if this part of a filter has no wildcards or captures.
+	 * @param part
+	 * @return
+	 */
+	private static boolean isPlain(String part) {
+		return !part.contains("*") && !part.contains("(") && !part.contains(")");
 	}
 	
 	private String toRegex(String key){
@@ -285,8 +354,9 @@ public class DataSourceFilter {
 	 * @return
 	 */
 	public List<URI> getAllConnections(String key) throws UnresolvedCaptureException {
-		if(namespaceCache.containsKey(key)){
-			return new ArrayList<URI>(namespaceCache.get(key));
+		List<URI> cached = namespaceCache.get(key);
+		if(cached != null){
+			return new ArrayList<URI>(cached);
 		}
 		Map<String[], String> matches = new HashMap<String[], String>();
 		String [] split = key.split("\\.");
@@ -303,9 +373,8 @@ public class DataSourceFilter {
 					String requestedPart = split[comparing];
 					String myPart = comparison[comparing];
 					if(myPart.contains("*")){
-						//It's got a wildcard, so we need to convert it to a regex and compare from there
-						String regexPart = toRegex(myPart);
-						if(!requestedPart.matches(regexPart)){							
+						//It's got a wildcard, so we need to use its regex and compare from there
+						if(!partPatterns.get(myPart).matcher(requestedPart).matches()){
 							continue outer;
 						}
 					} else {
@@ -345,7 +414,7 @@ public class DataSourceFilter {
 					//We can piggyback off of the toRegex function to get it. Note
 					//that it could potentially have multiple captures, so we have
 					//to walk through it entirely.
-					Matcher m = Pattern.compile(toRegex(match[i]) + "$").matcher(split[i]);
+					Matcher m = partPatterns.get(match[i]).matcher(split[i]);
 					if(m.find()){
 						for(int g = 1; g <= m.groupCount(); g++){
 							uri = uri.replaceAll("\\$" + (g + captureGroup), m.group(g));
@@ -383,11 +452,21 @@ public class DataSourceFilter {
 	public URI getConnection(String key) {
 		//Since looking through these patterns, doing the matches, calculating string distance are all
 		//fairly expensive operations, let's improve the runtime complexity by using a cache
-		if (cache.containsKey(key)) {
-			return cache.get(key);
+		URI cached = cache.get(key);
+		if (cached != null) {
+			return cached;
 		}
 		List<Pattern> matches = new ArrayList<Pattern>();
-		for (Pattern p : mappings.keySet()) {
+		int dot = key.indexOf('.');
+		List<Pattern> candidates = byFirstPart.get(dot == -1 ? key : key.substring(0, dot));
+		if (candidates != null) {
+			for (Pattern p : candidates) {
+				if (p.matcher(key).matches()) {
+					matches.add(p);
+				}
+			}
+		}
+		for (Pattern p : unindexed) {
 			if (p.matcher(key).matches()) {
 				matches.add(p);
 			}
@@ -408,8 +487,7 @@ public class DataSourceFilter {
 				//So, for instance, if the key is a.b.c.d, then this matches a.*.c.d better than a.*.*.d
 				//The easiest way to detect this is to simply remove *() characters, and do a Levenshtein distance on the strings, and
 				//whichever one is lowest, is the closest.
-				String originalKey = original.get(p);
-				int dist = StringUtils.LevenshteinDistance(key, originalKey.replaceAll("\\*", "").replaceAll("[\\(\\)]", ""));
+				int dist = StringUtils.LevenshteinDistance(key, stripped.get(p));
 				//TODO: Unfortunately, the properties file doesn't keep crap in order for us, so right now,
 				//if there is a tie, it is undefined what will happen. Instead of letting this happen
 				//without a warning, we want to issue a warning, though we will arbitrarily select one.
@@ -1,12 +1,13 @@
 package com.laytonsmith.persistance;
 
 import com.laytonsmith.PureUtilities.Pair;
-import com.laytonsmith.core.GenericTreeNode;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 /**
  * This class represents a data source model. The underlying model is just a map
@@ -17,21 +18,67 @@ import java.util.Map;
  * it may choose to not use this class. Note: Not all data sources
  * can store a key in both namespace.value and namespace.value.other, in that case,
  * to make namespace.value's actual value, it should be stored as namespace.value.~
+ * <p>
+ * Internally, the model is a tree with one level per part of the key, and the children
+ * of each node are stored in a hash map, so getting or setting a key only takes as many
+ * lookups as the key has parts, no matter how many siblings each part has.
  * @author lsmith
  */
 public final class DataSourceModel {
-    private GenericTreeNode<Pair<String, String>> tree = new GenericTreeNode<Pair<String, String>>();   
-        
+
+    private static final class Node {
+        private final String key;
+        private String value;
+        /**
+         * The children, in the order they were added, or null if there are none yet.
+         */
+        private Map<String, Node> children;
+
+        private Node(String key){
+            this.key = key;
+        }
+
+        private boolean hasChildren(){
+            return children != null && !children.isEmpty();
+        }
+
+        private Node getChild(String key){
+            return children == null ? null : children.get(key);
+        }
+
+        private Node getOrAddChild(String key){
+            if(children == null){
+                children = new LinkedHashMap<String, Node>();
+            }
+            Node child = children.get(key);
+            if(child == null){
+                child = new Node(key);
+                children.put(key, child);
+            }
+            return child;
+        }
+
+        /**
+         * A node is a key if it has a value, or if it's a leaf.
+         * @return
+         */
+        private boolean isKey(){
+            return value != null || !hasChildren();
+        }
+    }
+
+    private final Node root = new Node(null);
+
     public DataSourceModel(Map<String, Object> model){
         //We have to do a depth first traversal here to get all the keys
         if(model != null){
-            build(model, tree);
+            build(model, root);
         }
     }
-    
+
     /**
      * This constructor assumes that the key is fully specified in dot notation.
-     * @param list 
+     * @param list
      */
     public DataSourceModel(List<Pair<String, String>> list){
         for(Pair<String, String> pair : list){
@@ -39,8 +86,8 @@ public final class DataSourceModel {
             set(key, pair.getValue());
         }
     }
-    
-    private void build(Object node, GenericTreeNode<Pair<String, String>> treeNode){
+
+    private void build(Object node, Node treeNode){
         if(node instanceof Map){
             //We need to iterate through all the keys, creating children as we go
             for(String key : ((Map<String, Object>)node).keySet()){
@@ -48,136 +95,183 @@ public final class DataSourceModel {
                     //Special case, this is a reserved key
                     build(((Map<String, Object>)node).get(key), treeNode);
                 } else {
-                    GenericTreeNode<Pair<String, String>> newNode = 
-                            new GenericTreeNode<Pair<String, String>>(new Pair<String, String>(key, null));
-                    treeNode.addChild(newNode);
-                    build(((Map<String, Object>)node).get(key), newNode);
+                    build(((Map<String, Object>)node).get(key), treeNode.getOrAddChild(key));
                 }
             }
         } else {
             //This is the node we want to put the data in
-            treeNode.data.setValue(node.toString());
+            treeNode.value = node.toString();
         }
     }
-    
+
     public Map<String, Object> toMap(){
         Map<String, Object> map = new HashMap<String, Object>();
-        for(GenericTreeNode<Pair<String, String>> child : tree.getChildren()){
-            decompose(map, child);
+        if(root.hasChildren()){
+            for(Node child : root.children.values()){
+                decompose(map, child);
+            }
         }
         return map;
     }
-    
+
     public List<Pair<String[], String>> toList(){
         List<Pair<String[], String>> list = new ArrayList<Pair<String[], String>>();
         //TODO
         return list;
     }
-    
-    private void decompose(Map<String, Object> node, GenericTreeNode<Pair<String, String>> treeNode){
+
+    private void decompose(Map<String, Object> node, Node treeNode){
         if(treeNode.hasChildren()){
-            //If it's not a leaf node, we need to add a new child to the map. 
+            //If it's not a leaf node, we need to add a new child to the map.
             //However, if the data isn't null, we need to add the data now as a _ key
             Map<String, Object> map = new HashMap<String, Object>();
-            if(treeNode.getData().getValue() != null){
-                map.put("_", treeNode.getData().getValue());
+            if(treeNode.value != null){
+                map.put("_", treeNode.value);
             }
-            node.put(treeNode.getData().getKey(), map);
-            for(GenericTreeNode<Pair<String, String>> child : treeNode.getChildren()){
+            node.put(treeNode.key, map);
+            for(Node child : treeNode.children.values()){
                 decompose(map, child);
             }
         } else {
             //It's a leaf node, so we just put the data in the map and call it a day
-            node.put(treeNode.getData().getKey(), treeNode.getData().getValue());
+            node.put(treeNode.key, treeNode.value);
         }
     }
-    
+
     public String get(String [] key){
-        return getValue(new ArrayList<String>(Arrays.asList(key)), tree);
+        Node node = find(key, key.length);
+        return node == null ? null : node.value;
     }
-    
+
     public void set(String [] key, String value){
-        setValue(new ArrayList<String>(Arrays.asList(key)), tree, value);
+        if(key.length == 0){
+            root.value = value;
+            return;
+        }
+        if(value == null){
+            //Removing the key removes the whole node, including anything under it
+            Node parent = find(key, key.length - 1);
+            if(parent != null && parent.children != null){
+                parent.children.remove(key[key.length - 1]);
+            }
+            return;
+        }
+        Node node = root;
+        for(String part : key){
+            node = node.getOrAddChild(part);
+        }
+        node.value = value;
     }
-    
+
     public void clearKey(String [] key){
 	    set(key, null);
     }
-    
-    private String getValue(List<String> keys, GenericTreeNode<Pair<String, String>> treeNode){
-        String value = null;
-        if(!keys.isEmpty()){
-            String key = keys.get(0);
-            keys.remove(0);
-            for(GenericTreeNode<Pair<String, String>> child : treeNode.getChildren()){
-                if(child.getData().getKey().equals(key)){
-                    return getValue(keys, child);
-                }
-            }
-        } else {
-            value = treeNode.getData().getValue();
-        }
-        return value;
-    }
-    
-    private void setValue(List<String> keys, GenericTreeNode<Pair<String, String>> treeNode, String value){
-        if(keys.isEmpty()){
-            treeNode.getData().setValue(value);
-        } else {
-            GenericTreeNode<Pair<String, String>> found = null;
-            String key = keys.get(0);
-            keys.remove(0);
-            for(GenericTreeNode<Pair<String, String>> child : treeNode.getChildren()){
-                if(child.getData().getKey().equals(key)){
-                    found = child;
-                    break;
-                }
-            }
-            if(found == null){
-                found = new GenericTreeNode<Pair<String, String>>(new Pair<String, String>(key, null));
-                treeNode.addChild(found);
-            }
-	    if(value == null){
-		    if(keys.isEmpty()){
-			    //We need to remove this node.
-			    for(int i = 0; i < treeNode.getNumberOfChildren(); i++){
-				    GenericTreeNode<Pair<String, String>> node = treeNode.getChildAt(i);
-				    if(node.getData().getKey().equals(key)){
-					    treeNode.removeChildAt(i);
-					    break;
-				    }
-			    }
-			    return;
-		    }
-	    }
-            setValue(keys, found, value);
+
+    /**
+     * Returns the node for the first depth parts of the key, or null if there isn't one.
+     * @param key
+     * @param depth
+     * @return
+     */
+    private Node find(String [] key, int depth){
+        Node node = root;
+        for(int i = 0; i < depth && node != null; i++){
+            node = node.getChild(key[i]);
         }
+        return node;
     }
 
     public List<String[]> keySet() {
         List<String[]> keys = new ArrayList<String[]>();
-        for(GenericTreeNode child : tree.getChildren()){
-            traverse(child, new ArrayList<String>(), keys);
+        Iterator<String[]> it = keyIterator(new String[0]);
+        while(it.hasNext()){
+            keys.add(it.next());
         }
         return keys;
     }
-    
-    private void traverse(GenericTreeNode<Pair<String, String>> treeNode, List<String> ongoingKey, List<String[]> keys){        
-        if(treeNode.hasChildren()){
-            ongoingKey.add(treeNode.getData().getKey());
-            if(treeNode.getData().getValue() != null){
-                //Data and children
-                keys.add(ongoingKey.toArray(new String[ongoingKey.size()]));
+
+    /**
+     * Returns an iterator over the keys in this namespace, including the namespace
+     * itself, if it is a key. Unlike {@link #keySet()}, the keys are found as the
+     * iterator is walked, so finding the keys in a small namespace doesn't require
+     * going through all the keys in the model. The model must not be modified while
+     * the iterator is in use.
+     * @param namespace The namespace, or an empty array for all the keys
+     * @return
+     */
+    public Iterator<String[]> keyIterator(String [] namespace){
+        return new KeyIterator(namespace, find(namespace, namespace.length));
+    }
+
+    /**
+     * Walks the tree depth first, keeping a stack of the child iterators of each
+     * node on the current path.
+     */
+    private static final class KeyIterator implements Iterator<String[]> {
+        private final List<String> path;
+        private final List<Iterator<Node>> stack = new ArrayList<Iterator<Node>>();
+        private String[] next;
+
+        private KeyIterator(String [] namespace, Node start){
+            path = new ArrayList<String>(namespace.length + 4);
+            for(String part : namespace){
+                path.add(part);
             }
-            for(GenericTreeNode<Pair<String, String>> child : treeNode.getChildren()){
-                //recurse down now
-                traverse(child, ongoingKey, keys);
+            if(start == null){
+                return;
             }
-        } else {
-            //This is it, we're done here, so we can put the key in the list now, then pop off the last element in the ongoingKey
-            ongoingKey.add(treeNode.getData().getKey());
-            keys.add(ongoingKey.toArray(new String[ongoingKey.size()]));
-            ongoingKey.remove(ongoingKey.size() - 1);
+            if(namespace.length > 0 && start.isKey()){
+                next = namespace.clone();
+            }
+            if(start.hasChildren()){
+                stack.add(start.children.values().iterator());
+            }
+            if(next == null){
+                next = advance();
+            }
+        }
+
+        private String[] advance(){
+            while(!stack.isEmpty()){
+                Iterator<Node> it = stack.get(stack.size() - 1);
+                if(!it.hasNext()){
+                    stack.remove(stack.size() - 1);
+                    if(!path.isEmpty()){
+                        path.remove(path.size() - 1);
+                    }
+                    continue;
+                }
+                Node node = it.next();
+                path.add(node.key);
+                String[] key = node.isKey() ? path.toArray(new String[path.size()]) : null;
+                if(node.hasChildren()){
+                    //Its key stays on the path until its children are done
+                    stack.add(node.children.values().iterator());
+                } else {
+                    path.remove(path.size() - 1);
+                }
+                if(key != null){
+                    return key;
+                }
+            }
+            return null;
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public String[] next() {
+            if(next == null){
+                throw new NoSuchElementException();
+            }
+            String[] ret = next;
+            next = advance();
+            return ret;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("Not supported.");
         }
     }
 }
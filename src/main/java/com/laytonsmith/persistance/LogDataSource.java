@@ -0,0 +1,360 @@
+package com.laytonsmith.persistance;
+
+import com.laytonsmith.PureUtilities.StringUtils;
+import com.laytonsmith.annotations.datasource;
+import com.laytonsmith.core.CHVersion;
+import com.laytonsmith.persistance.io.ConnectionMixinFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A data source that stores its data as an append only log of changes. Each set
+ * appends a single record to the end of the file, instead of rewriting the whole
+ * file, and the current value of each key is kept in memory. When the data is loaded,
+ * the log is replayed from the start, and a partially written record at the end of the
+ * file (from a crash during a write, for instance) is discarded. Once the log contains
+ * more overwritten or removed records than live ones, it is compacted, by writing out
+ * only the live records to a new file, and renaming that over the log.
+ * <p>
+ * Each record is a single line, either "S key value" for a set, or "D key" for a removal,
+ * where the key and value are escaped so that they never contain spaces or newlines.
+ * A compacted log starts with a "G generation" record, which is different each time the
+ * log is compacted, so that a data source that is only reading the new records can tell
+ * that the log was compacted by someone else.
+ *
+ * @author lsmith
+ */
+@datasource("log")
+public class LogDataSource extends AbstractDataSource {
+
+	private static final String CHARSET = "UTF-8";
+	/**
+	 * Compaction won't happen until there are at least this many stale records,
+	 * so small logs aren't constantly rewritten.
+	 */
+	private static final int MIN_COMPACTION_GARBAGE = 1000;
+	private final File file;
+	/**
+	 * The live data, that is, the result of replaying the log.
+	 */
+	private Map<String, String> data = new HashMap<String, String>();
+	/**
+	 * The number of records in the log that have been overwritten or removed since.
+	 */
+	private int garbage = 0;
+	/**
+	 * How far into the log we have replayed. Everything after this is either
+	 * new (if someone else is writing to the file) or a partially written record.
+	 */
+	private long readOffset = 0;
+	/**
+	 * The generation of the log that was replayed, or an empty string if the log
+	 * hasn't been compacted yet.
+	 */
+	private String generation = "";
+
+	public LogDataSource(URI uri, ConnectionMixinFactory.ConnectionMixinOptions options) throws DataSourceException {
+		super(uri, options);
+		file = new File(options.getWorkingDirectory(), (uri.getHost() == null ? "" : uri.getHost()) + uri.getPath());
+	}
+
+	public synchronized List<String[]> keySet() {
+		List<String[]> list = new ArrayList<String[]>(data.size());
+		for (String key : data.keySet()) {
+			list.add(key.split("\\."));
+		}
+		return list;
+	}
+
+	@Override
+	public synchronized List<String> stringKeySet() {
+		return new ArrayList<String>(data.keySet());
+	}
+
+	public synchronized String get(String[] key, boolean bypassTransient) throws DataSourceException {
+		if (!bypassTransient) {
+			checkGet();
+		}
+		return data.get(StringUtils.Join(key, "."));
+	}
+
+	public synchronized boolean set(String[] key, String value) throws ReadOnlyException, DataSourceException, IOException {
+		checkSet();
+		if (hasModifier(DataSourceModifier.TRANSIENT)) {
+			//Someone else may have written to the log since we last looked
+			populate();
+		}
+		String k = StringUtils.Join(key, ".");
+		String old = data.get(k);
+		if ((old == null && value == null) || (old != null && old.equals(value))) {
+			return false;
+		}
+		if (file.length() > readOffset) {
+			//A partially written record from a crash. Get rid of it, so our record starts on a new line.
+			truncate(readOffset);
+		}
+		byte[] record = (value == null ? "D " + escape(k) : "S " + escape(k) + " " + escape(value)).concat("\n").getBytes(CHARSET);
+		OutputStream out = new FileOutputStream(file, true);
+		try {
+			out.write(record);
+		} finally {
+			out.close();
+		}
+		readOffset += record.length;
+		if (old != null) {
+			garbage++;
+		}
+		if (value == null) {
+			data.remove(k);
+			//The delete record itself is garbage too, once compacted
+			garbage++;
+		} else {
+			data.put(k, value);
+		}
+		if (garbage >= MIN_COMPACTION_GARBAGE && garbage > data.size()) {
+			compact();
+		}
+		return true;
+	}
+
+	/**
+	 * Replays the log. The first time, the whole log is read. After that, only
+	 * records appended since the last time are read, unless the log has been
+	 * compacted by someone else, in which case it is replayed from the start.
+	 * @throws DataSourceException
+	 */
+	public synchronized void populate() throws DataSourceException {
+		if (!file.exists()) {
+			if (!hasModifier(DataSourceModifier.READONLY)) {
+				if (file.getAbsoluteFile().getParentFile() != null) {
+					file.getAbsoluteFile().getParentFile().mkdirs();
+				}
+				try {
+					file.createNewFile();
+				} catch (IOException ex) {
+					throw new DataSourceException("Could not create " + file.getAbsolutePath(), ex);
+				}
+			}
+			data = new HashMap<String, String>();
+			garbage = 0;
+			readOffset = 0;
+			generation = "";
+			return;
+		}
+		try {
+			//If it was compacted out from under us, the new log may well be longer than what
+			//we've read so far, so the length alone can't tell us. The generation can.
+			if (readOffset > 0 && (file.length() < readOffset || !generation.equals(readGeneration()))) {
+				data = new HashMap<String, String>();
+				garbage = 0;
+				readOffset = 0;
+				generation = "";
+			}
+			replay();
+		} catch (IOException ex) {
+			throw new DataSourceException("Could not read " + file.getAbsolutePath(), ex);
+		}
+	}
+
+	private void replay() throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			long skipped = 0;
+			while (skipped < readOffset) {
+				long s = in.skip(readOffset - skipped);
+				if (s <= 0) {
+					return;
+				}
+				skipped += s;
+			}
+			ByteArrayOutputStream line = new ByteArrayOutputStream();
+			long offset = readOffset;
+			int b;
+			while ((b = in.read()) != -1) {
+				offset++;
+				if (b == '\n') {
+					apply(new String(line.toByteArray(), CHARSET));
+					line.reset();
+					//Only complete records count as read
+					readOffset = offset;
+				} else {
+					line.write(b);
+				}
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads the generation at the start of the log, without replaying anything.
+	 * @return
+	 * @throws IOException
+	 */
+	private String readGeneration() throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			ByteArrayOutputStream line = new ByteArrayOutputStream();
+			int b;
+			while ((b = in.read()) != -1 && b != '\n') {
+				line.write(b);
+			}
+			String first = new String(line.toByteArray(), CHARSET);
+			return first.startsWith("G ") ? first.substring(2) : "";
+		} finally {
+			in.close();
+		}
+	}
+
+	private void apply(String record) {
+		String[] parts = record.split(" ", -1);
+		if (parts.length == 2 && parts[0].equals("G")) {
+			generation = parts[1];
+		} else if (parts.length == 3 && parts[0].equals("S")) {
+			if (data.put(unescape(parts[1]), unescape(parts[2])) != null) {
+				garbage++;
+			}
+		} else if (parts.length == 2 && parts[0].equals("D")) {
+			if (data.remove(unescape(parts[1])) != null) {
+				garbage++;
+			}
+			garbage++;
+		} else {
+			Logger.getLogger(LogDataSource.class.getName()).log(Level.WARNING,
+					"Skipping malformed record in " + file.getAbsolutePath() + ": " + record);
+			garbage++;
+		}
+	}
+
+	/**
+	 * Rewrites the log with only the live records.
+	 * @throws IOException
+	 */
+	private void compact() throws IOException {
+		File temp = new File(file.getPath() + ".compact");
+		String newGeneration = UUID.randomUUID().toString();
+		long length = 0;
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(temp));
+		try {
+			byte[] header = ("G " + newGeneration + "\n").getBytes(CHARSET);
+			out.write(header);
+			length += header.length;
+			for (Map.Entry<String, String> entry : data.entrySet()) {
+				byte[] record = ("S " + escape(entry.getKey()) + " " + escape(entry.getValue()) + "\n").getBytes(CHARSET);
+				out.write(record);
+				length += record.length;
+			}
+		} finally {
+			out.close();
+		}
+		if (!temp.renameTo(file)) {
+			//Some platforms won't rename over an existing file
+			file.delete();
+			if (!temp.renameTo(file)) {
+				throw new IOException("Could not rename " + temp + " to " + file);
+			}
+		}
+		readOffset = length;
+		garbage = 0;
+		generation = newGeneration;
+	}
+
+	private void truncate(long length) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(length);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static String escape(String s) {
+		StringBuilder b = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+				case '\\':
+					b.append("\\\\");
+					break;
+				case ' ':
+					b.append("\\s");
+					break;
+				case '\n':
+					b.append("\\n");
+					break;
+				case '\r':
+					b.append("\\r");
+					break;
+				default:
+					b.append(c);
+			}
+		}
+		return b.toString();
+	}
+
+	private static String unescape(String s) {
+		StringBuilder b = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '\\' && i + 1 < s.length()) {
+				char n = s.charAt(++i);
+				switch (n) {
+					case 's':
+						b.append(' ');
+						break;
+					case 'n':
+						b.append('\n');
+						break;
+					case 'r':
+						b.append('\r');
+						break;
+					default:
+						b.append(n);
+				}
+			} else {
+				b.append(c);
+			}
+		}
+		return b.toString();
+	}
+
+	public DataSourceModifier[] implicitModifiers() {
+		return null;
+	}
+
+	public DataSourceModifier[] invalidModifiers() {
+		return new DataSourceModifier[]{DataSourceModifier.HTTP, DataSourceModifier.HTTPS,
+					DataSourceModifier.SSH, DataSourceModifier.PRETTYPRINT};
+	}
+
+	public String docs() {
+		return "Log {log:///path/to/file.log} This type stores data as a log of changes."
+				+ " Each change only appends a single line to the end of the file, instead"
+				+ " of rewriting the whole file like the yml, json or ini types, which makes"
+				+ " it well suited to data that changes often. The whole log is replayed when"
+				+ " the data is loaded, and the log is compacted from time to time, so that it"
+				+ " doesn't grow without bound. If the server crashes in the middle of a write,"
+				+ " only that change is lost. The file is plain text, but since it contains"
+				+ " every change, not just the current values, it isn't meant to be edited by hand.";
+	}
+
+	public CHVersion since() {
+		return CHVersion.V3_3_1;
+	}
+}
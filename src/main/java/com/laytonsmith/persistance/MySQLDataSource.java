@@ -1,44 +1,93 @@
 package com.laytonsmith.persistance;
 
+import com.laytonsmith.annotations.datasource;
 import com.laytonsmith.core.CHVersion;
+import com.laytonsmith.database.ConnectionPool;
 import com.laytonsmith.persistance.io.ConnectionMixinFactory;
-import java.io.IOException;
 import java.net.URI;
-import java.util.List;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Properties;
 
 /**
  *
  * @author lsmith
  */
-//@datasource("mysql")
-public class MySQLDataSource extends AbstractDataSource{
+@datasource("mysql")
+public class MySQLDataSource extends SQLDataSource{
+	
+	private static final int DEFAULT_PORT = 3306;
+	private static final int POOL_SIZE = 10;
+	private final String url;
+	private final Properties info = new Properties();
+	private final String table;
 	
 	public MySQLDataSource(URI uri, ConnectionMixinFactory.ConnectionMixinOptions options) throws DataSourceException{
 		super(uri, options);
+		if(uri.getHost() == null){
+			throw new DataSourceException("No host was specified in " + uri);
+		}
+		String[] path = uri.getPath() == null ? new String[0] : uri.getPath().replaceFirst("^/", "").split("/");
+		if(path.length != 2 || path[0].isEmpty() || path[1].isEmpty()){
+			throw new DataSourceException("MySQL connections must specify the database and table, as in mysql://host/database/table, but " + uri + " was given.");
+		}
+		if(uri.getUserInfo() != null){
+			String[] userInfo = uri.getUserInfo().split(":", 2);
+			info.setProperty("user", userInfo[0]);
+			if(userInfo.length > 1){
+				info.setProperty("password", userInfo[1]);
+			}
+		}
+		//Without this, an update that doesn't change anything is still counted, and set() couldn't tell
+		info.setProperty("useAffectedRows", "true");
+		url = "jdbc:mysql://" + uri.getHost() + ":" + (uri.getPort() == -1 ? DEFAULT_PORT : uri.getPort())
+				+ "/" + ValidateTable(path[0]);
+		table = ValidateTable(path[1]);
 	}
 
-	public List<String[]> keySet() {
-		throw new UnsupportedOperationException("Not supported yet.");
+	@Override
+	protected ConnectionPool getPool() throws DataSourceException {
+		try {
+			Class.forName("com.mysql.jdbc.Driver");
+		} catch (ClassNotFoundException ex) {
+			throw new DataSourceException("Cannot load the MySQL driver. Check your installation and try again", ex);
+		}
+		return ConnectionPool.GetPool(url, info, POOL_SIZE);
 	}
 
-	public String get(String[] key, boolean bypassTransient) throws DataSourceException {
-		throw new UnsupportedOperationException("Not supported yet.");
+	@Override
+	protected String getTable() {
+		return table;
 	}
 
-	public boolean set(String[] key, String value) throws ReadOnlyException, DataSourceException, IOException {
-		throw new UnsupportedOperationException("Not supported yet.");
+	@Override
+	protected String getCreateTableQuery() {
+		//utf8_bin makes key comparisons case sensitive
+		return "CREATE TABLE IF NOT EXISTS " + table + " (" + KEY_COLUMN + " VARCHAR(255) CHARACTER SET utf8 COLLATE utf8_bin NOT NULL PRIMARY KEY, "
+				+ VALUE_COLUMN + " MEDIUMTEXT CHARACTER SET utf8)";
 	}
 
-	public void populate() throws DataSourceException {
-		throw new UnsupportedOperationException("Not supported yet.");
+	private String upsertQuery(){
+		return "INSERT INTO " + table + " (" + KEY_COLUMN + ", " + VALUE_COLUMN + ") VALUES (?, ?)"
+				+ " ON DUPLICATE KEY UPDATE " + VALUE_COLUMN + "=VALUES(" + VALUE_COLUMN + ")";
 	}
 
-	public DataSourceModifier[] implicitModifiers() {
-		return null;
+	@Override
+	protected boolean upsert(ConnectionPool.PooledConnection c, String key, String value) throws SQLException {
+		PreparedStatement prep = c.prepare(upsertQuery());
+		prep.setString(1, key);
+		prep.setString(2, value);
+		//1 for an insert, 2 for an update, 0 if it was already this value
+		return prep.executeUpdate() > 0;
 	}
 
-	public DataSourceModifier[] invalidModifiers() {
-		return null;
+	@Override
+	protected PreparedStatement batchUpsert(ConnectionPool.PooledConnection c, String key, String value) throws SQLException {
+		PreparedStatement prep = c.prepare(upsertQuery());
+		prep.setString(1, key);
+		prep.setString(2, value);
+		prep.addBatch();
+		return prep;
 	}
 
 	public String docs() {
@@ -50,12 +99,14 @@ public class MySQLDataSource extends AbstractDataSource{
 			+ " from multiple data sink/sources at once, which is not"
 			+ " possible without the potential for corruption in file"
 			+ " based data sources, without risking either data corruption,"
-			+ " or extremely low efficiency. The layout of the table"
-			+ " in the database is required to be of a specific format: TODO";
+			+ " or extremely low efficiency. The table is created if it"
+			+ " doesn't already exist, and has two columns, " + KEY_COLUMN
+			+ ", which is a case sensitive VARCHAR(255) primary key, and "
+			+ VALUE_COLUMN + ", which is a MEDIUMTEXT.";
 	}
 
 	public CHVersion since() {
-		return CHVersion.V0_0_0;
+		return CHVersion.V3_3_1;
 	}
 	
 }
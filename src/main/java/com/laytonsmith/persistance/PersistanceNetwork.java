@@ -10,7 +10,10 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * A persistance network is a group of data sources that can act transparently
@@ -21,12 +24,16 @@ import java.util.TreeMap;
  * network are setting values, getting values, and getting multiple values at once, based on a
  * namespace match. All other aspects of how the data is stored and retrieved are abstracted,
  * so you needn't worry about any of those details.
+ * <p>
+ * The network is thread safe. Each data source has its own read/write lock, so a slow
+ * write to one data source (a remote one, for instance) only blocks other operations on
+ * that same data source, and reads from a data source can happen at the same time.
  * @author lsmith
  */
 public class PersistanceNetwork {
     
     private DataSourceFilter filter;
-    private Map<URI, DataSource> dsCache;
+    private ConcurrentMap<URI, Source> dsCache;
     private ConnectionMixinFactory.ConnectionMixinOptions options;
     /**
      * Given a configuration and a default URI, constructs a new
@@ -49,22 +56,57 @@ public class PersistanceNetwork {
      */
     public PersistanceNetwork(String configuration, URI defaultURI, ConnectionMixinFactory.ConnectionMixinOptions options) throws DataSourceException{
         filter = new DataSourceFilter(configuration, defaultURI);
-        dsCache = new TreeMap<URI, DataSource>();
+        dsCache = new ConcurrentHashMap<URI, Source>();
 	this.options = options;
         //Data sources are lazily loaded, so we don't need to do anything right now to load them.
     }
     
     /**
-     * Returns the data source object for this URI.
+     * A data source, along with the lock that guards it. The data source itself is
+     * created the first time it is needed, under the source's own monitor, so creating
+     * one data source doesn't hold up any of the others.
+     */
+    private static final class Source {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private volatile DataSource ds;
+    }
+    
+    /**
+     * Returns the data source holder for this URI, with the data source loaded.
      * @param uri
      * @return
      * @throws DataSourceException 
      */
-    private DataSource getDataSource(URI uri) throws DataSourceException{        
-        if(!dsCache.containsKey(uri)){
-            dsCache.put(uri, DataSourceFactory.GetDataSource(uri, options));
+    private Source getSource(URI uri) throws DataSourceException{
+        Source source = dsCache.get(uri);
+        if(source == null){
+            Source newSource = new Source();
+            source = dsCache.putIfAbsent(uri, newSource);
+            if(source == null){
+                source = newSource;
+            }
+        }
+        if(source.ds == null){
+            synchronized(source){
+                if(source.ds == null){
+                    source.ds = DataSourceFactory.GetDataSource(uri, options);
+                }
+            }
+        }
+        return source;
+    }
+    
+    /**
+     * Returns the lock to hold while reading from this source. Transient data
+     * sources reload themselves when read, so they need the write lock.
+     * @param source
+     * @return 
+     */
+    private static Lock readLock(Source source){
+        if(source.ds.getModifiers().contains(DataSource.DataSourceModifier.TRANSIENT)){
+            return source.lock.writeLock();
         }
-        return dsCache.get(uri);
+        return source.lock.readLock();
     }
     
     /**
@@ -73,9 +115,15 @@ public class PersistanceNetwork {
      * @return
      * @throws DataSourceException 
      */
-    public synchronized String get(String [] key) throws DataSourceException{        
-        DataSource ds = getDataSource(filter.getConnection(key));
-        return ds.get(key, false);
+    public String get(String [] key) throws DataSourceException{        
+        Source source = getSource(filter.getConnection(key));
+        Lock lock = readLock(source);
+        lock.lock();
+        try{
+            return source.ds.get(key, false);
+        } finally {
+            lock.unlock();
+        }
     }
     
     /**
@@ -88,9 +136,43 @@ public class PersistanceNetwork {
      * @throws ReadOnlyException
      * @throws IOException 
      */
-    public synchronized boolean set(String [] key, String value) throws DataSourceException, ReadOnlyException, IOException{
-        DataSource ds = getDataSource(filter.getConnection(key));
-        return ds.set(key, value);
+    public boolean set(String [] key, String value) throws DataSourceException, ReadOnlyException, IOException{
+        Source source = getSource(filter.getConnection(key));
+        source.lock.writeLock().lock();
+        try{
+            return source.ds.set(key, value);
+        } finally {
+            source.lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Sets all the values at once. The values are grouped by the data source
+     * they map to, so each data source can store its values in one go, which
+     * for some data sources, (databases, for instance) is much faster.
+     * @param values
+     * @throws DataSourceException
+     * @throws ReadOnlyException
+     * @throws IOException 
+     */
+    public void set(Map<String[], String> values) throws DataSourceException, ReadOnlyException, IOException{
+        Map<URI, Map<String[], String>> grouped = new HashMap<URI, Map<String[], String>>();
+        for(Map.Entry<String[], String> entry : values.entrySet()){
+            URI uri = filter.getConnection(entry.getKey());
+            if(!grouped.containsKey(uri)){
+                grouped.put(uri, new HashMap<String[], String>());
+            }
+            grouped.get(uri).put(entry.getKey(), entry.getValue());
+        }
+        for(Map.Entry<URI, Map<String[], String>> entry : grouped.entrySet()){
+            Source source = getSource(entry.getKey());
+            source.lock.writeLock().lock();
+            try{
+                source.ds.set(entry.getValue());
+            } finally {
+                source.lock.writeLock().unlock();
+            }
+        }
     }
     
     /**
@@ -100,9 +182,15 @@ public class PersistanceNetwork {
      * @return
      * @throws DataSourceException 
      */
-    public synchronized boolean hasKey(String[] key) throws DataSourceException{
-	    DataSource ds = getDataSource(filter.getConnection(key));
-	    return ds.hasKey(key);
+    public boolean hasKey(String[] key) throws DataSourceException{
+	    Source source = getSource(filter.getConnection(key));
+	    Lock lock = readLock(source);
+	    lock.lock();
+	    try{
+		    return source.ds.hasKey(key);
+	    } finally {
+		    lock.unlock();
+	    }
     }
     
     /**
@@ -111,9 +199,14 @@ public class PersistanceNetwork {
      * @return
      * @throws DataSourceException 
      */
-    public synchronized void clearKey(String[] key) throws DataSourceException, ReadOnlyException, IOException{
-	    DataSource ds = getDataSource(filter.getConnection(key));
-	    ds.clearKey(key);
+    public void clearKey(String[] key) throws DataSourceException, ReadOnlyException, IOException{
+	    Source source = getSource(filter.getConnection(key));
+	    source.lock.writeLock().lock();
+	    try{
+		    source.ds.clearKey(key);
+	    } finally {
+		    source.lock.writeLock().unlock();
+	    }
     }
     
     /**
@@ -122,7 +215,7 @@ public class PersistanceNetwork {
      * @param namespace
      * @return 
      */
-    public synchronized Map<String[], String> getNamespace(String [] namespace) throws DataSourceException, UnresolvedCaptureException{
+    public Map<String[], String> getNamespace(String [] namespace) throws DataSourceException, UnresolvedCaptureException{
         List<URI> uris = filter.getAllConnections(namespace);
         //First we have to get the namespaces. We can get a list of all the connections
         //we need to search, then grab all the data in them, but then we need to use
@@ -130,7 +223,14 @@ public class PersistanceNetwork {
         //want to accidentally grab a "hidden" value in another data source.
         List<String[]> keysToGrab = new ArrayList<String[]>();
         for(URI uri : uris){
-            keysToGrab.addAll(getDataSource(uri).getNamespace(namespace));
+            Source source = getSource(uri);
+            Lock lock = readLock(source);
+            lock.lock();
+            try{
+                keysToGrab.addAll(source.ds.getNamespace(namespace));
+            } finally {
+                lock.unlock();
+            }
         }
         //Ok, now the keys to grab are all populated, so let's walk through them and build our map
         Map<String[], String> map = new HashMap<String[], String>();
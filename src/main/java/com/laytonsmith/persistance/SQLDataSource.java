@@ -0,0 +1,320 @@
+package com.laytonsmith.persistance;
+
+import com.laytonsmith.PureUtilities.StringUtils;
+import com.laytonsmith.database.ConnectionPool;
+import com.laytonsmith.persistance.io.ConnectionMixinFactory;
+import java.io.IOException;
+import java.net.URI;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The base class for data sources that are backed by a SQL database. The data is
+ * stored in a two column table, with the full key (a.b.c) as the primary key, so
+ * lookups and namespace queries use the table's index, instead of having to load
+ * all the data into memory like the file based data sources. Connections and their
+ * prepared statements are pooled, see {@link ConnectionPool}.
+ * <p>
+ * Subclasses provide the pool, the statement that creates the table, and the
+ * statements that insert or update a value, since that varies between databases.
+ *
+ * @author lsmith
+ */
+public abstract class SQLDataSource extends AbstractDataSource {
+
+	protected static final String KEY_COLUMN = "data_key";
+	protected static final String VALUE_COLUMN = "data_value";
+	private boolean initialized = false;
+
+	protected SQLDataSource(URI uri, ConnectionMixinFactory.ConnectionMixinOptions options) throws DataSourceException {
+		super(uri, options);
+	}
+
+	/**
+	 * Returns the connection pool for this database.
+	 *
+	 * @return
+	 * @throws DataSourceException
+	 */
+	protected abstract ConnectionPool getPool() throws DataSourceException;
+
+	/**
+	 * Returns the (already validated) name of the table the data is stored in.
+	 *
+	 * @return
+	 */
+	protected abstract String getTable();
+
+	/**
+	 * Returns the statement that creates the table if it doesn't already exist.
+	 * The table must have the columns {@link #KEY_COLUMN}, which is the primary key,
+	 * and {@link #VALUE_COLUMN}, and the key must be compared case sensitively.
+	 *
+	 * @return
+	 */
+	protected abstract String getCreateTableQuery();
+
+	/**
+	 * Inserts or updates the value, and returns true if the stored value
+	 * actually changed. The value will not be null.
+	 *
+	 * @param c
+	 * @param key
+	 * @param value
+	 * @return
+	 * @throws SQLException
+	 */
+	protected abstract boolean upsert(ConnectionPool.PooledConnection c, String key, String value) throws SQLException;
+
+	/**
+	 * Adds an insert or update of this value to the batch. The batched statement
+	 * must be the same for every key, so that all the values can be sent at once.
+	 *
+	 * @param c
+	 * @param key
+	 * @param value
+	 * @return The statement the value was added to
+	 * @throws SQLException
+	 */
+	protected abstract PreparedStatement batchUpsert(ConnectionPool.PooledConnection c, String key, String value) throws SQLException;
+
+	/**
+	 * Runs a query against the database. Subclasses implement this interface
+	 * so the borrowing and releasing of the connection is all handled in one place.
+	 */
+	protected interface Query<T> {
+
+		T run(ConnectionPool.PooledConnection c) throws SQLException;
+	}
+
+	/**
+	 * Borrows a connection, runs the query with it, and gives the connection back.
+	 * If the query fails in any way, the connection is discarded, in case the connection
+	 * itself was the problem.
+	 *
+	 * @param <T>
+	 * @param query
+	 * @return
+	 * @throws DataSourceException
+	 */
+	protected final <T> T run(Query<T> query) throws DataSourceException {
+		ConnectionPool pool = getPool();
+		ConnectionPool.PooledConnection c;
+		try {
+			c = pool.borrow();
+		} catch (SQLException ex) {
+			throw new DataSourceException("Could not connect to the database for " + uri, ex);
+		}
+		boolean valid = false;
+		try {
+			T ret = query.run(c);
+			valid = true;
+			return ret;
+		} catch (SQLException ex) {
+			throw new DataSourceException("Error while querying the database for " + uri, ex);
+		} finally {
+			if (valid) {
+				pool.release(c);
+			} else {
+				pool.discard(c);
+			}
+		}
+	}
+
+	public void populate() throws DataSourceException {
+		if (initialized || hasModifier(DataSourceModifier.READONLY)) {
+			//Nothing is cached, so there is nothing to reload, and we can't create the table if we're readonly
+			return;
+		}
+		run(new Query<Void>() {
+			public Void run(ConnectionPool.PooledConnection c) throws SQLException {
+				c.prepare(getCreateTableQuery()).executeUpdate();
+				return null;
+			}
+		});
+		initialized = true;
+	}
+
+	public String get(String[] key, boolean bypassTransient) throws DataSourceException {
+		//The database is always up to date, so the transient modifier doesn't need to be checked
+		final String k = StringUtils.Join(key, ".");
+		return run(new Query<String>() {
+			public String run(ConnectionPool.PooledConnection c) throws SQLException {
+				PreparedStatement prep = c.prepare("SELECT " + VALUE_COLUMN + " FROM " + getTable()
+						+ " WHERE " + KEY_COLUMN + "=?");
+				prep.setString(1, k);
+				ResultSet rs = prep.executeQuery();
+				try {
+					return rs.next() ? rs.getString(1) : null;
+				} finally {
+					rs.close();
+				}
+			}
+		});
+	}
+
+	public boolean set(String[] key, final String value) throws ReadOnlyException, DataSourceException, IOException {
+		checkSet();
+		final String k = StringUtils.Join(key, ".");
+		return run(new Query<Boolean>() {
+			public Boolean run(ConnectionPool.PooledConnection c) throws SQLException {
+				if (value == null) {
+					PreparedStatement prep = c.prepare("DELETE FROM " + getTable() + " WHERE " + KEY_COLUMN + "=?");
+					prep.setString(1, k);
+					return prep.executeUpdate() > 0;
+				}
+				return upsert(c, k, value);
+			}
+		});
+	}
+
+	/**
+	 * Sets all the values in a single transaction, using batched statements,
+	 * which is much faster than setting them one at a time.
+	 *
+	 * @param values
+	 * @throws ReadOnlyException
+	 * @throws DataSourceException
+	 * @throws IOException
+	 */
+	@Override
+	public void set(final Map<String[], String> values) throws ReadOnlyException, DataSourceException, IOException {
+		checkSet();
+		if (values.isEmpty()) {
+			return;
+		}
+		run(new Query<Void>() {
+			public Void run(ConnectionPool.PooledConnection c) throws SQLException {
+				Connection conn = c.getConnection();
+				boolean autoCommit = conn.getAutoCommit();
+				conn.setAutoCommit(false);
+				try {
+					PreparedStatement delete = null;
+					PreparedStatement upsert = null;
+					for (Map.Entry<String[], String> entry : values.entrySet()) {
+						String k = StringUtils.Join(entry.getKey(), ".");
+						if (entry.getValue() == null) {
+							if (delete == null) {
+								delete = c.prepare("DELETE FROM " + getTable() + " WHERE " + KEY_COLUMN + "=?");
+							}
+							delete.setString(1, k);
+							delete.addBatch();
+						} else {
+							upsert = batchUpsert(c, k, entry.getValue());
+						}
+					}
+					if (delete != null) {
+						delete.executeBatch();
+					}
+					if (upsert != null) {
+						upsert.executeBatch();
+					}
+					conn.commit();
+				} catch (SQLException ex) {
+					conn.rollback();
+					throw ex;
+				} finally {
+					conn.setAutoCommit(autoCommit);
+				}
+				return null;
+			}
+		});
+	}
+
+	public List<String[]> keySet() {
+		List<String[]> list = new ArrayList<String[]>();
+		for (String key : stringKeySet()) {
+			list.add(key.split("\\."));
+		}
+		return list;
+	}
+
+	@Override
+	public List<String> stringKeySet() {
+		try {
+			return run(new Query<List<String>>() {
+				public List<String> run(ConnectionPool.PooledConnection c) throws SQLException {
+					return keys(c.prepare("SELECT " + KEY_COLUMN + " FROM " + getTable()));
+				}
+			});
+		} catch (DataSourceException ex) {
+			//keySet can't throw a checked exception
+			throw new RuntimeException(ex);
+		}
+	}
+
+	/**
+	 * Finds the keys in the namespace with a single range query on the key index.
+	 * Everything that starts with "a.b." sorts between "a.b." and "a.b/", since '/'
+	 * is the character after '.', so this works the same in every database, as long
+	 * as the keys are compared case sensitively.
+	 *
+	 * @param namespace
+	 * @return
+	 * @throws DataSourceException
+	 */
+	@Override
+	public List<String[]> getNamespace(String[] namespace) throws DataSourceException {
+		final String ns = StringUtils.Join(namespace, ".");
+		List<String> keys = run(new Query<List<String>>() {
+			public List<String> run(ConnectionPool.PooledConnection c) throws SQLException {
+				if (ns.isEmpty()) {
+					return keys(c.prepare("SELECT " + KEY_COLUMN + " FROM " + getTable()));
+				}
+				PreparedStatement prep = c.prepare("SELECT " + KEY_COLUMN + " FROM " + getTable()
+						+ " WHERE " + KEY_COLUMN + "=? OR (" + KEY_COLUMN + ">=? AND " + KEY_COLUMN + "<?)");
+				prep.setString(1, ns);
+				prep.setString(2, ns + ".");
+				prep.setString(3, ns + "/");
+				return keys(prep);
+			}
+		});
+		List<String[]> list = new ArrayList<String[]>(keys.size());
+		for (String key : keys) {
+			list.add(key.split("\\."));
+		}
+		return list;
+	}
+
+	private static List<String> keys(PreparedStatement prep) throws SQLException {
+		List<String> keys = new ArrayList<String>();
+		ResultSet rs = prep.executeQuery();
+		try {
+			while (rs.next()) {
+				keys.add(rs.getString(1));
+			}
+		} finally {
+			rs.close();
+		}
+		return keys;
+	}
+
+	/**
+	 * Checks that the table name is safe to put directly into a query, since
+	 * table names can't be parameters.
+	 *
+	 * @param table
+	 * @return
+	 * @throws DataSourceException
+	 */
+	protected static String ValidateTable(String table) throws DataSourceException {
+		if (!table.matches("[a-zA-Z_][a-zA-Z0-9_]*")) {
+			throw new DataSourceException("Invalid table name \"" + table + "\". Table names may only contain letters, numbers and underscores.");
+		}
+		return table;
+	}
+
+	public DataSourceModifier[] implicitModifiers() {
+		return null;
+	}
+
+	public DataSourceModifier[] invalidModifiers() {
+		return new DataSourceModifier[]{DataSourceModifier.HTTP, DataSourceModifier.HTTPS,
+					DataSourceModifier.SSH, DataSourceModifier.PRETTYPRINT};
+	}
+}
@@ -1,51 +1,88 @@
 package com.laytonsmith.persistance;
 
+import com.laytonsmith.annotations.datasource;
 import com.laytonsmith.core.CHVersion;
+import com.laytonsmith.database.ConnectionPool;
 import com.laytonsmith.persistance.io.ConnectionMixinFactory;
-import java.io.IOException;
+import java.io.File;
 import java.net.URI;
-import java.util.List;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 
 /**
  *
  * @author lsmith
  */
-//@datasource("sqlite")
-public class SQLiteDataSource extends AbstractDataSource{
+@datasource("sqlite")
+public class SQLiteDataSource extends SQLDataSource{
+	
+	private static final String TABLE = "persistance";
+	private final File file;
+	
 	public SQLiteDataSource(URI uri, ConnectionMixinFactory.ConnectionMixinOptions options) throws DataSourceException{
 		super(uri, options);
+		file = new File(options.getWorkingDirectory(), (uri.getHost() == null ? "" : uri.getHost()) + uri.getPath());
 	}
 
-	public List<String[]> keySet() {
-		throw new UnsupportedOperationException("Not supported yet.");
+	@Override
+	protected ConnectionPool getPool() throws DataSourceException {
+		try {
+			Class.forName("org.sqlite.JDBC");
+		} catch (ClassNotFoundException ex) {
+			throw new DataSourceException("Cannot load SQLite. Check your installation and try again", ex);
+		}
+		if(file.getAbsoluteFile().getParentFile() != null){
+			file.getAbsoluteFile().getParentFile().mkdirs();
+		}
+		//SQLite locks the whole file while writing, so more than one connection would only get in each other's way
+		return ConnectionPool.GetPool("jdbc:sqlite:" + file.getAbsolutePath(), null, 1);
 	}
 
-	public String get(String[] key, boolean bypassTransient) throws DataSourceException {
-		throw new UnsupportedOperationException("Not supported yet.");
+	@Override
+	protected String getTable() {
+		return TABLE;
 	}
 
-	public boolean set(String[] key, String value) throws ReadOnlyException, DataSourceException, IOException {
-		throw new UnsupportedOperationException("Not supported yet.");
+	@Override
+	protected String getCreateTableQuery() {
+		return "CREATE TABLE IF NOT EXISTS " + TABLE + " (" + KEY_COLUMN + " TEXT NOT NULL PRIMARY KEY, "
+				+ VALUE_COLUMN + " TEXT)";
 	}
 
-	public void populate() throws DataSourceException {
-		throw new UnsupportedOperationException("Not supported yet.");
+	@Override
+	protected boolean upsert(ConnectionPool.PooledConnection c, String key, String value) throws SQLException {
+		PreparedStatement update = c.prepare("UPDATE " + TABLE + " SET " + VALUE_COLUMN + "=? WHERE "
+				+ KEY_COLUMN + "=? AND " + VALUE_COLUMN + " IS NOT ?");
+		update.setString(1, value);
+		update.setString(2, key);
+		update.setString(3, value);
+		if(update.executeUpdate() > 0){
+			return true;
+		}
+		//Either it's not there, or it's already this value
+		PreparedStatement insert = c.prepare("INSERT OR IGNORE INTO " + TABLE + " (" + KEY_COLUMN + ", " + VALUE_COLUMN + ") VALUES (?, ?)");
+		insert.setString(1, key);
+		insert.setString(2, value);
+		return insert.executeUpdate() > 0;
 	}
 
-	public DataSourceModifier[] implicitModifiers() {
-		return null;
-	}
-
-	public DataSourceModifier[] invalidModifiers() {
-		return null;
+	@Override
+	protected PreparedStatement batchUpsert(ConnectionPool.PooledConnection c, String key, String value) throws SQLException {
+		PreparedStatement prep = c.prepare("INSERT OR REPLACE INTO " + TABLE + " (" + KEY_COLUMN + ", " + VALUE_COLUMN + ") VALUES (?, ?)");
+		prep.setString(1, key);
+		prep.setString(2, value);
+		prep.addBatch();
+		return prep;
 	}
 
 	public String docs() {
-		return "SQLite {sqlite:// TODO} This type store data in a SQLite database."
-			+ " All the pros and cons of MySQL apply here.";
+		return "SQLite {sqlite://path/to/file.db} This type store data in a SQLite database."
+			+ " All the pros and cons of MySQL apply here, except that the database is a single local"
+			+ " file, so no database server needs to be set up. The data is stored in a table named"
+			+ " " + TABLE + ", which is created if it doesn't already exist.";
 	}
 
 	public CHVersion since() {
-		return CHVersion.V0_0_0;
+		return CHVersion.V3_3_1;
 	}
 }
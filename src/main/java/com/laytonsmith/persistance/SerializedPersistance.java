@@ -14,7 +14,17 @@ import java.util.logging.Logger;
 /**
  * This file allows for simple data storage across many different data sources.
  * In general, the most common methods used are getValue and setValue. Note that
- * getValue, setValue, save, and load are synchronized.
+ * getValue, setValue, and load are synchronized. save writes a snapshot of the data,
+ * so it only holds the lock while the snapshot is taken.
+ * <p>
+ * By default, each change is written to disk immediately. If write behind is enabled
+ * with {@link #setWriteBehind(long, int)}, changes are only made in memory, and a background
+ * thread writes them out in batches. In either case, the database is written to a temporary
+ * file first, which is then renamed over the real one, so a crash during a save can't
+ * corrupt the database.
+ * <p>
+ * Namespace queries use a sorted copy of the data, which is built the first time it's needed,
+ * so finding the keys in a namespace is a range lookup, instead of a scan of every key.
  *
  * @author layton
  */
@@ -27,12 +37,35 @@ public class SerializedPersistance extends AbstractDataSource implements Persist
      * this ever, or it will break all current serialized databases.
      */
     private HashMap<String, String> data = new HashMap<String, String>();
+    /**
+     * The same data, sorted by key, or null if it needs to be rebuilt. All the keys in a namespace
+     * are next to each other, so namespace queries only have to look at the keys that match.
+     * This is never serialized.
+     */
+    private TreeMap<String, String> index = null;
     private boolean isLoaded = false;
     private boolean finishedInitializing = false;
     /**
      * The storage location of the persistance database.
      */
     private File storageLocation;
+    /**
+     * Incremented each time the data changes, so that an older snapshot is never
+     * written over a newer one.
+     */
+    private long version = 0;
+    /**
+     * The version that was last written to disk. Guarded by fileLock.
+     */
+    private long writtenVersion = -1;
+    private final Object fileLock = new Object();
+    /**
+     * The number of changes that haven't been written yet, if write behind is enabled.
+     */
+    private int dirty = 0;
+    private long writeBehindInterval = 0;
+    private int writeBehindThreshold = 0;
+    private Thread flusher = null;
 
     public SerializedPersistance(File database) throws DataSourceException {
         super(database.toURI(), new ConnectionMixinFactory.ConnectionMixinOptions());
@@ -51,7 +84,9 @@ public class SerializedPersistance extends AbstractDataSource implements Persist
      *
      * @return
      */
-    public Map<String, String> rawData() {
+    public synchronized Map<String, String> rawData() {
+        //The caller may change the data, so the index has to be rebuilt
+        index = null;
         return data;
     }
 
@@ -60,8 +95,10 @@ public class SerializedPersistance extends AbstractDataSource implements Persist
      * the entire database, don't use this method. You must manually call save
      * after this, if you wish the changes to be written out to disk.
      */
-    public void clearAllData() {
+    public synchronized void clearAllData() {
         data = new HashMap<String, String>();
+        index = null;
+        version++;
     }
 
     /**
@@ -78,6 +115,7 @@ public class SerializedPersistance extends AbstractDataSource implements Persist
                 fis = new FileInputStream(storageLocation);
                 in = new ObjectInputStream(fis);
                 data = (HashMap<String, String>) in.readObject();
+                index = null;
                 in.close();
                 isLoaded = true;
             }
@@ -91,27 +129,168 @@ public class SerializedPersistance extends AbstractDataSource implements Persist
     }
 
     /**
-     * Causes the database to be saved to disk
+     * Causes the database to be saved to disk, including any changes that are
+     * waiting to be written by the write behind thread.
      *
      * @throws IOException
      */
-    public synchronized void save() throws IOException {
-        try {
-            FileOutputStream fos = null;
-            ObjectOutputStream out = null;
-            if(storageLocation.getParentFile() != null){
-                storageLocation.getParentFile().mkdirs();
+    public void save() throws IOException {
+        HashMap<String, String> snapshot;
+        long snapshotVersion;
+        int snapshotDirty;
+        synchronized (this) {
+            snapshot = new HashMap<String, String>(data);
+            snapshotVersion = version;
+            snapshotDirty = dirty;
+        }
+        write(snapshot, snapshotVersion);
+        written(snapshotDirty);
+    }
+
+    /**
+     * Takes the changes that were just written out of the count of unsaved changes. This
+     * is only done once the write succeeded, so that failed changes are written again.
+     * @param count
+     */
+    private synchronized void written(int count) {
+        dirty = Math.max(0, dirty - count);
+    }
+
+    /**
+     * Writes the snapshot to a temporary file, then renames it over the database. If a newer
+     * snapshot has already been written, this does nothing.
+     * @param snapshot
+     * @param snapshotVersion
+     * @throws IOException 
+     */
+    private void write(HashMap<String, String> snapshot, long snapshotVersion) throws IOException {
+        synchronized (fileLock) {
+            if (snapshotVersion <= writtenVersion) {
+                return;
             }
-            if (!storageLocation.exists()) {
-                storageLocation.createNewFile();
+            File parent = storageLocation.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
             }
-            fos = new FileOutputStream(storageLocation);
-            out = new ObjectOutputStream(fos);
-            out.writeObject(data);
-            out.close();
+            File temp = new File(parent, storageLocation.getName() + ".tmp");
+            ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                out.writeObject(snapshot);
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(storageLocation)) {
+                //Some platforms won't rename over an existing file
+                storageLocation.delete();
+                if (!temp.renameTo(storageLocation)) {
+                    throw new IOException("Could not rename " + temp + " to " + storageLocation);
+                }
+            }
+            writtenVersion = snapshotVersion;
         }
-        catch (IOException ex) {
-            throw ex;
+    }
+
+    /**
+     * Enables or disables write behind mode. In write behind mode, setValue only changes
+     * the data in memory, and a background thread saves the changes once interval milliseconds
+     * have passed since the first unsaved change, or once there are threshold unsaved changes,
+     * whichever comes first. If interval is 0 or less, write behind is disabled, any pending changes
+     * are saved, and each change is saved immediately, as before.
+     * @param interval The maximum number of milliseconds a change will wait to be saved
+     * @param threshold The number of changes that causes a save right away. If 0 or less,
+     * only the interval is used.
+     */
+    public void setWriteBehind(long interval, int threshold) {
+        Thread toStop = null;
+        synchronized (this) {
+            writeBehindInterval = interval;
+            writeBehindThreshold = threshold;
+            if (interval > 0 && flusher == null) {
+                flusher = new Thread(new Runnable() {
+                    public void run() {
+                        flushLoop();
+                    }
+                }, "CommandHelperPersistanceWriter");
+                flusher.setDaemon(true);
+                flusher.start();
+            } else if (interval <= 0 && flusher != null) {
+                toStop = flusher;
+                flusher = null;
+            }
+            notifyAll();
+        }
+        if (toStop != null) {
+            stopFlusher(toStop);
+        }
+    }
+
+    /**
+     * Stops the write behind thread, if it is running, and saves any pending changes.
+     * This should be called when the plugin is disabled.
+     */
+    public void close() {
+        setWriteBehind(0, 0);
+    }
+
+    private void stopFlusher(Thread toStop) {
+        try {
+            toStop.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        //Anything the flusher didn't get to
+        try {
+            save();
+        } catch (IOException ex) {
+            Logger.getLogger(SerializedPersistance.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    private void flushLoop() {
+        Thread me = Thread.currentThread();
+        while (true) {
+            HashMap<String, String> snapshot;
+            long snapshotVersion;
+            int snapshotDirty;
+            synchronized (this) {
+                try {
+                    while (flusher == me && dirty == 0) {
+                        wait();
+                    }
+                    //Give more changes a chance to come in, so they're all written at once
+                    long deadline = System.currentTimeMillis() + writeBehindInterval;
+                    long now;
+                    while (flusher == me && (writeBehindThreshold <= 0 || dirty < writeBehindThreshold)
+                            && (now = System.currentTimeMillis()) < deadline) {
+                        wait(deadline - now);
+                    }
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                if (flusher != me) {
+                    //We've been stopped. Whoever stopped us saves the remaining changes.
+                    return;
+                }
+                snapshot = new HashMap<String, String>(data);
+                snapshotVersion = version;
+                snapshotDirty = dirty;
+            }
+            try {
+                write(snapshot, snapshotVersion);
+                written(snapshotDirty);
+            } catch (IOException ex) {
+                Logger.getLogger(SerializedPersistance.class.getName()).log(Level.SEVERE, null, ex);
+                //The changes are still counted, so wait a full interval before trying again
+                synchronized (this) {
+                    try {
+                        if (flusher == me) {
+                            wait(writeBehindInterval);
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
         }
     }
 
@@ -119,7 +298,7 @@ public class SerializedPersistance extends AbstractDataSource implements Persist
      * You should not usually use this method. Please see
      * <code>setValue(String[] key, Serializable value)</code>
      */
-    private synchronized String setValue(String key, String value) {
+    private synchronized String setValue(String key, String value) throws IOException {
         //defer loading until we actually try and use the data structure
         if (isLoaded == false) {
             try {
@@ -132,15 +311,24 @@ public class SerializedPersistance extends AbstractDataSource implements Persist
         String oldVal = data.get(key);
         if (value == null) {
             data.remove(key);
+            if (index != null) {
+                index.remove(key);
+            }
         } else {
             data.put(key, value);
+            if (index != null) {
+                index.put(key, value);
+            }
         }
-        try {
-            save();
-        }
-        catch (Exception ex) {
-            Logger.getLogger(SerializedPersistance.class.getName()).log(Level.SEVERE, null, ex);
+        version++;
+        if (flusher != null) {
+            //The write behind thread will get it
+            dirty++;
+            notifyAll();
+            return oldVal;
         }
+        //The caller needs to know if the value didn't make it to disk
+        save();
         return oldVal;
     }
 
@@ -181,8 +369,10 @@ public class SerializedPersistance extends AbstractDataSource implements Persist
      * removed.
      * @return The object that was in this key, or null if the value did not
      * exist.
+     * @throws IOException If write behind is disabled, and the database could
+     * not be saved. The value is still changed in memory.
      */
-    public synchronized String setValue(String[] key, String value) {
+    public synchronized String setValue(String[] key, String value) throws IOException {
         return setValue(getNamespace0(key), (String) value);
     }
 
@@ -220,28 +410,8 @@ public class SerializedPersistance extends AbstractDataSource implements Persist
      * @return
      */
     public synchronized boolean isNamespaceSet(String[] partialKey) {
-        String m = getNamespace0(partialKey);
-        partialKey = m.split("\\.");
-        Iterator i = data.entrySet().iterator();
-        while (i.hasNext()) {
-            String key = ( (Map.Entry) i.next() ).getKey().toString();
-            String[] namespace = key.split("\\.");
-            boolean match = true;
-            for (int k = 0; k < partialKey.length; k++) {
-                if (namespace.length < k) {
-                    match = false;
-                    continue;
-                }
-                if (!namespace[k].equals(partialKey[k])) {
-                    match = false;
-                    continue;
-                }
-            }
-            if (match) {
-                return true;
-            }
-        }
-        return false;
+        String ns = namespaceKey(partialKey);
+        return data.containsKey(ns) || !subNamespace(ns).isEmpty();
     }
 
     /**
@@ -253,8 +423,7 @@ public class SerializedPersistance extends AbstractDataSource implements Persist
     public synchronized List<Map.Entry<String, Object>> getNamespaceValues(String[] partialKey) {
 
         List<Map.Entry<String, Object>> matches = new ArrayList<Map.Entry<String, Object>>();
-        String m = getNamespace0(partialKey);
-        partialKey = m.split("\\.");
+        String ns = namespaceKey(partialKey);
         if (!isLoaded) {
             try {
                 load();
@@ -263,29 +432,59 @@ public class SerializedPersistance extends AbstractDataSource implements Persist
                 Logger.getLogger(SerializedPersistance.class.getName()).log(Level.SEVERE, null, ex);
             }
         }
-        Iterator i = data.entrySet().iterator();
-        while (i.hasNext()) {
-            Map.Entry entry = (Map.Entry) i.next();
-            String key = entry.getKey().toString();
-            String[] namespace = key.split("\\.");
-            boolean match = true;
-            for (int k = 0; k < partialKey.length; k++) {
-                if (namespace.length < partialKey.length) {
-                    match = false;
-                    continue;
-                }
-                if (!namespace[k].equals(partialKey[k])) {
-                    match = false;
-                    continue;
-                }
-            }
-            if (match) {
-                matches.add(entry);
-            }
+        if (data.containsKey(ns)) {
+            matches.add(new AbstractMap.SimpleImmutableEntry<String, Object>(ns, data.get(ns)));
+        }
+        for (Map.Entry<String, String> entry : subNamespace(ns).entrySet()) {
+            matches.add(new AbstractMap.SimpleImmutableEntry<String, Object>(entry.getKey(), entry.getValue()));
         }
         return matches;
     }
 
+    /**
+     * Combines the partial key into a namespace. Trailing empty parts are ignored,
+     * so for instance get_values('') returns everything in storage.
+     *
+     * @param partialKey
+     * @return
+     */
+    private static String namespaceKey(String[] partialKey) {
+        String ns = getNamespace0(partialKey);
+        int end = ns.length();
+        while (end > 0 && ns.charAt(end - 1) == '.') {
+            end--;
+        }
+        return ns.substring(0, end);
+    }
+
+    /**
+     * Returns the values under this namespace, not including the namespace itself.
+     * Every key that starts with "a.b." sorts between "a.b." and "a.b/", since '/'
+     * is the character after '.'.
+     *
+     * @param ns
+     * @return
+     */
+    private SortedMap<String, String> subNamespace(String ns) {
+        if (index == null) {
+            index = new TreeMap<String, String>(data);
+        }
+        return index.subMap(ns + ".", ns + "/");
+    }
+
+    @Override
+    public synchronized List<String[]> getNamespace(String[] namespace) {
+        List<String[]> list = new ArrayList<String[]>();
+        String ns = getNamespace0(namespace);
+        if (data.containsKey(ns)) {
+            list.add(ns.split("\\."));
+        }
+        for (String key : subNamespace(ns).keySet()) {
+            list.add(key.split("\\."));
+        }
+        return list;
+    }
+
     /**
      * Combines the String array into a single string
      *
@@ -348,8 +547,8 @@ public class SerializedPersistance extends AbstractDataSource implements Persist
 
     public boolean set(String[] key, String value) throws ReadOnlyException, IOException {
         checkSet();
+        //setValue saves, or schedules the save, itself
         setValue(key, value);
-        save();
         return true;
     }
 
@@ -3,6 +3,8 @@ package com.laytonsmith.persistance;
 import com.laytonsmith.persistance.io.ConnectionMixinFactory;
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -54,6 +56,24 @@ public abstract class StringDataSource extends AbstractDataSource {
 		return model.keySet();
 	}
 
+	/**
+	 * Walks only the part of the model under the namespace, instead of
+	 * checking every key.
+	 *
+	 * @param namespace
+	 * @return
+	 * @throws DataSourceException
+	 */
+	@Override
+	public List<String[]> getNamespace(String[] namespace) throws DataSourceException {
+		List<String[]> list = new ArrayList<String[]>();
+		Iterator<String[]> it = model.keyIterator(namespace);
+		while (it.hasNext()) {
+			list.add(it.next());
+		}
+		return list;
+	}
+
 	public String get(String[] key, boolean bypassTransient) throws DataSourceException {
 		if (!bypassTransient) {
 			checkGet();
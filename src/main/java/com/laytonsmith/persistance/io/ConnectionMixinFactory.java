@@ -29,6 +29,14 @@ public class ConnectionMixinFactory {
 			this.workingDirectory = workingDirectory;
 		}		
 		
+		/**
+		 * Returns the working directory, or null if none was set.
+		 * @return 
+		 */
+		public File getWorkingDirectory(){
+			return workingDirectory;
+		}
+		
 	}
 	
 	/**
@@ -20,7 +20,6 @@ import com.laytonsmith.core.MethodScriptCompiler;
 import com.laytonsmith.core.MethodScriptComplete;
 import com.laytonsmith.core.ParseTree;
 import com.laytonsmith.core.Static;
-import com.laytonsmith.core.Threader;
 import com.laytonsmith.core.constructs.CArray;
 import com.laytonsmith.core.constructs.CString;
 import com.laytonsmith.core.constructs.IVariable;
@@ -40,6 +39,9 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -323,6 +325,17 @@ public class Interpreter {
 		
 		private static int runnableID = 0;
 		private static List<Integer> runnableList = new ArrayList<Integer>();
+		/**
+		 * Timers sleep for as long as they are scheduled, so they get their own
+		 * threads, instead of holding on to the userland threads.
+		 */
+		private static final ExecutorService timers = Executors.newCachedThreadPool(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "interpreter-timer");
+				t.setDaemon(true);
+				return t;
+			}
+		});
 
 		public int SetFutureRunnable(final long ms, final Runnable r) {
 			final int id = ++runnableID;
@@ -340,7 +353,7 @@ public class Interpreter {
 				}
 			};
 			runnableList.add(id);
-			Threader.GetThreader().submit(m);
+			timers.submit(m);
 			return id;
 		}
 
@@ -374,7 +387,7 @@ public class Interpreter {
 			};
 			
 			runnableList.add(id);
-			Threader.GetThreader().submit(m);
+			timers.submit(m);
 			return id;
 		}
 
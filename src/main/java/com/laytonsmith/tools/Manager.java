@@ -283,7 +283,12 @@ public class Manager {
             return false;
         }
         if(db.isKeySet(new String[]{key})){
-            db.setValue(new String[]{key}, null);
+            try {
+                db.setValue(new String[]{key}, null);
+            } catch (Exception ex) {
+                pl(RED + ex.getMessage());
+                return false;
+            }
             return true;
         } else {
             return false;
@@ -0,0 +1,69 @@
+package com.laytonsmith.PureUtilities;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author lsmith
+ */
+public class BoundedExecutorTest {
+
+    @Test(timeout = 10000)
+    public void testBounded() throws Exception {
+        BoundedExecutor e = new BoundedExecutor(2, 3, Executors.defaultThreadFactory());
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger ran = new AtomicInteger();
+        Runnable task = new Runnable() {
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    //
+                }
+                ran.incrementAndGet();
+            }
+        };
+        for (int i = 0; i < 5; i++) {
+            e.submit(task);
+        }
+        //Both threads and the whole queue are now busy, so the next task is rejected,
+        //rather than being run here
+        final AtomicInteger ranHere = new AtomicInteger();
+        try {
+            e.submit(new Runnable() {
+                public void run() {
+                    ranHere.incrementAndGet();
+                }
+            });
+            fail("Expected the task to be rejected");
+        } catch (RejectedExecutionException ex) {
+            //Expected
+        }
+        assertEquals(0, ranHere.get());
+        BoundedExecutor.Stats stats = e.getStats();
+        assertEquals(2, stats.getThreads());
+        assertEquals(3, stats.getQueueDepth());
+        assertEquals(1, stats.getRejected());
+        release.countDown();
+        assertTrue(e.drain(5, TimeUnit.SECONDS));
+        assertEquals(5, ran.get());
+        assertEquals(6, e.getStats().getSubmitted());
+        assertTrue(e.getStats().getLatencyP99() >= e.getStats().getLatencyP50());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testDrained() throws Exception {
+        BoundedExecutor e = new BoundedExecutor(1, 0, Executors.defaultThreadFactory());
+        e.drain(1, TimeUnit.SECONDS);
+        e.submit(new Runnable() {
+            public void run() {
+            }
+        });
+    }
+}
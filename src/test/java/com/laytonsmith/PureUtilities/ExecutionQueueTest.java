@@ -0,0 +1,35 @@
+package com.laytonsmith.PureUtilities;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author lsmith
+ */
+public class ExecutionQueueTest {
+
+    @Test(timeout = 10000)
+    public void testUsableAfterDrain() throws Exception {
+        ExecutionQueue queue = new ExecutionQueue("test", "default");
+        final CountDownLatch first = new CountDownLatch(1);
+        queue.push(null, new Runnable() {
+            public void run() {
+                first.countDown();
+            }
+        });
+        assertTrue(queue.drain(5, TimeUnit.SECONDS));
+        assertEquals(0, first.getCount());
+        //The plugin drains the queue when it is disabled, and must be able to use it once it is enabled again
+        final CountDownLatch second = new CountDownLatch(1);
+        queue.push(null, new Runnable() {
+            public void run() {
+                second.countDown();
+            }
+        });
+        assertTrue(second.await(5, TimeUnit.SECONDS));
+        queue.drain(1, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,22 @@
+package com.laytonsmith.core;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Layton
+ */
+public class AliasCoreTest {
+
+    @Test
+    public void testNewerReloadDiscardsBackgroundReload() {
+        AliasCore ac = new AliasCore(null, null, null, null, null, null);
+        int background = ac.beginReload();
+        assertTrue(ac.isCurrentReload(background));
+        //A reload started while the background reload was still loading
+        int sync = ac.beginReload();
+        assertFalse("The background reload should have been discarded", ac.isCurrentReload(background));
+        assertTrue(ac.isCurrentReload(sync));
+    }
+}
@@ -0,0 +1,58 @@
+package com.laytonsmith.core;
+
+import com.laytonsmith.core.exceptions.ConfigCompileException;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author Layton
+ */
+public class AliasRouterTest {
+
+    static List<Script> scripts;
+
+    @BeforeClass
+    public static void setUpClass() throws ConfigCompileException {
+        StringBuilder b = new StringBuilder();
+        b.append("/shared $x = msg(1)\n");
+        b.append("/shared a = msg(2)\n");
+        for (int i = 0; i < 10000; i++) {
+            b.append("/cmd").append(i).append(" sub $x = msg($x)\n");
+        }
+        b.append("/Mixed Case = msg(3)\n");
+        scripts = MethodScriptCompiler.preprocess(MethodScriptCompiler.lex(b.toString(), null), new Env());
+        for (Script s : scripts) {
+            s.compile();
+        }
+    }
+
+    @Test
+    public void testOnlyCandidatesAreReturned() {
+        AliasRouter router = new AliasRouter(scripts, false);
+        List<Script> candidates = router.getCandidates("/cmd5000 sub value");
+        assertEquals(1, candidates.size());
+        assertTrue(candidates.get(0).match("/cmd5000 sub value"));
+        assertEquals(0, router.getCandidates("/cmd5000 other value").size());
+        assertEquals(0, router.getCandidates("/nope").size());
+    }
+
+    @Test
+    public void testCandidatesKeepScriptOrder() {
+        AliasRouter router = new AliasRouter(scripts, false);
+        List<Script> candidates = router.getCandidates("/shared a");
+        assertEquals(2, candidates.size());
+        assertEquals(scripts.get(0), candidates.get(0));
+        assertEquals(scripts.get(1), candidates.get(1));
+    }
+
+    @Test
+    public void testCaseSensitivity() {
+        assertEquals(1, new AliasRouter(scripts, false).getCandidates("/mixed case").size());
+        assertEquals(0, new AliasRouter(scripts, true).getCandidates("/mixed case").size());
+        assertEquals(1, new AliasRouter(scripts, true).getCandidates("/Mixed Case").size());
+    }
+}
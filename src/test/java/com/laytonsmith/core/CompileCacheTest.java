@@ -0,0 +1,99 @@
+package com.laytonsmith.core;
+
+import com.laytonsmith.PureUtilities.FileUtility;
+import com.laytonsmith.core.constructs.Target;
+import com.laytonsmith.core.functions.IncludeCache;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Layton
+ */
+public class CompileCacheTest {
+
+    @Test
+    public void testHash() {
+        assertEquals(CompileCache.Hash("msg('hi')"), CompileCache.Hash("msg('hi')"));
+        assertFalse(CompileCache.Hash("msg('hi')").equals(CompileCache.Hash("msg('hi!')")));
+    }
+
+    @Test
+    public void testChangedFilesAreNotReused() throws Exception {
+        CompileCache cache = new CompileCache();
+        File main = new File("main.ms");
+        File aliases = new File("aliases.msa");
+        Map<File, String> noIncludes = new HashMap<File, String>();
+        ParseTree tree = MethodScriptCompiler.compile(MethodScriptCompiler.lex("msg('hi')", main));
+        Script script = MethodScriptCompiler.preprocess(MethodScriptCompiler.lex("/cmd = msg('hi')", aliases), new Env()).get(0).compile();
+        List<List<ParseTree>> compiled = new ArrayList<List<ParseTree>>();
+        compiled.add(script.getCompiledRight());
+        cache.putTree(main, CompileCache.Hash("msg('hi')"), tree, noIncludes);
+        cache.putAliases(aliases, CompileCache.Hash("/cmd = msg('hi')"), compiled, noIncludes);
+
+        assertSame(tree, cache.getTree(main, CompileCache.Hash("msg('hi')")));
+        assertNull(cache.getTree(main, CompileCache.Hash("msg('bye')")));
+        assertEquals(compiled, cache.getAliases(aliases, CompileCache.Hash("/cmd = msg('hi')")));
+
+        //Removed files are forgotten
+        cache.retain(Arrays.asList(aliases));
+        assertNull(cache.getTree(main, CompileCache.Hash("msg('hi')")));
+        assertNotNull(cache.getAliases(aliases, CompileCache.Hash("/cmd = msg('hi')")));
+    }
+
+    @Test
+    public void testChangedIncludesAreNotReused() throws Exception {
+        Prefs.init(new File("plugins/CommandHelper/preferences.txt"));
+        File include = new File("compilecache_include.ms");
+        FileUtility.write("msg('one')", include);
+        try {
+            IncludeCache.clearCache();
+            IncludeCache.startRecording();
+            IncludeCache.get(include, Target.UNKNOWN);
+            Map<File, String> includes = IncludeCache.stopRecording();
+            assertTrue(includes.containsKey(include));
+
+            CompileCache cache = new CompileCache();
+            File main = new File("main.ms");
+            ParseTree tree = MethodScriptCompiler.compile(MethodScriptCompiler.lex("msg('hi')", main));
+            cache.putTree(main, CompileCache.Hash("msg('hi')"), tree, includes);
+            IncludeCache.clearChanged();
+            assertSame(tree, cache.getTree(main, CompileCache.Hash("msg('hi')")));
+
+            FileUtility.write("msg('two')", include);
+            IncludeCache.clearChanged();
+            assertNull(cache.getTree(main, CompileCache.Hash("msg('hi')")));
+        } finally {
+            include.delete();
+            IncludeCache.clearCache();
+        }
+    }
+
+    @Test
+    public void testScriptsAreNotReused() throws Exception {
+        CompileCache cache = new CompileCache();
+        File aliases = new File("aliases.msa");
+        List<Script> first = new ArrayList<Script>();
+        List<Script> second = new ArrayList<Script>();
+        for (List<Script> scripts : Arrays.asList(first, second)) {
+            AliasCore.LocalPackage localPackages = new AliasCore.LocalPackage();
+            localPackages.appendMSA("/cmd = msg('hi')\n/other [$x] = msg($x)", aliases);
+            localPackages.precompile(cache);
+            localPackages.compileMSA(scripts, null);
+        }
+        assertEquals(2, first.size());
+        assertEquals(2, second.size());
+        for (int i = 0; i < first.size(); i++) {
+            //Each reload gets its own Scripts, which share the compiled right side
+            assertNotSame(first.get(i), second.get(i));
+            assertFalse(second.get(i).uncompilable());
+            assertSame(first.get(i).getCompiledRight().get(0), second.get(i).getCompiledRight().get(0));
+        }
+    }
+}
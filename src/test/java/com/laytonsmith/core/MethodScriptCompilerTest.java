@@ -5,11 +5,14 @@ package com.laytonsmith.core;
 import com.laytonsmith.abstraction.MCPlayer;
 import com.laytonsmith.abstraction.MCServer;
 import com.laytonsmith.commandhelper.CommandHelperPlugin;
+import com.laytonsmith.core.constructs.CFunction;
+import com.laytonsmith.core.constructs.IVariable;
 import com.laytonsmith.core.constructs.Target;
 import com.laytonsmith.core.constructs.Token;
 import com.laytonsmith.core.constructs.Variable;
 import com.laytonsmith.core.exceptions.ConfigCompileException;
 import com.laytonsmith.core.exceptions.ConfigRuntimeException;
+import com.laytonsmith.core.functions.Echoes;
 import com.laytonsmith.testing.StaticTest;
 import static com.laytonsmith.testing.StaticTest.SRun;
 import java.io.File;
@@ -94,6 +97,20 @@ public class MethodScriptCompilerTest {
             }
         }
     }
+    @Test
+    public void testLexLineEndings() throws Exception {
+        String config = "/cmd = msg('a b')\n/cmd2 = msg(-1) # comment\n";
+        List<Token> unix = MethodScriptCompiler.lex(config, null);
+        List<Token> windows = MethodScriptCompiler.lex(config.replace("\n", "\r\n"), null);
+        assertEquals(unix, windows);
+        for (int i = 0; i < unix.size(); i++) {
+            assertEquals(unix.get(i).target.line(), windows.get(i).target.line());
+            assertEquals(unix.get(i).target.col(), windows.get(i).target.col());
+        }
+        assertEquals(Token.TType.LIT, unix.get(15).type);
+        assertEquals("-1", unix.get(15).value);
+    }
+
     @Test(expected=ConfigCompileException.class)
     public void testSmartStrings() throws ConfigCompileException{
         
@@ -472,6 +489,22 @@ public class MethodScriptCompilerTest {
         verify(fakePlayer, times(2)).sendMessage("success");
     }
 
+    @Test
+    public void testDollarVarsAreBoundPerRun() throws ConfigCompileException{
+        AliasCore ac = mock(AliasCore.class);
+        ac.autoIncludes = new ArrayList<File>();
+        PowerMockito.mockStatic(CommandHelperPlugin.class);
+        when(CommandHelperPlugin.getCore()).thenReturn(ac);
+        String config = "/cmd $var = msg($var) msg($var)";
+        env.SetPlayer(fakePlayer);
+        Script s = MethodScriptCompiler.preprocess(MethodScriptCompiler.lex(config, null), env).get(0);
+        s.compile();
+        s.run(s.getVariables("/cmd one"), env, null);
+        s.run(s.getVariables("/cmd two"), env, null);
+        verify(fakePlayer, times(2)).sendMessage("one");
+        verify(fakePlayer, times(2)).sendMessage("two");
+    }
+
     @Test
     public void testCompile2() {
         try {
@@ -880,6 +913,43 @@ public class MethodScriptCompilerTest {
 		SRun("'This \"should work\" correctly, and not throw an exception'", null);
 	}
     
+    @Test
+    public void testCompileLinksFunctions() throws ConfigCompileException{
+        ParseTree tree = MethodScriptCompiler.compile(MethodScriptCompiler.lex("msg(@a) _proc()", null));
+        ParseTree autoconcat = tree.getChildAt(0);
+        CFunction msg = (CFunction)autoconcat.getChildAt(0).getData();
+        CFunction proc = (CFunction)autoconcat.getChildAt(1).getData();
+        assertTrue(msg.getFunction() instanceof Echoes.msg);
+        assertTrue(proc.isProcedure());
+        assertNull(proc.getFunction());
+    }
+    
+    @Test
+    public void testCompileAssignsVariableSlots() throws Exception{
+        ParseTree tree = MethodScriptCompiler.compile(MethodScriptCompiler.lex("assign(@a, 1) assign(@b, @a) proc(_p, @b, msg(@a))", null));
+        ParseTree autoconcat = tree.getChildAt(0);
+        assertEquals(0, ((IVariable)autoconcat.getChildAt(0).getChildAt(0).getData()).getSlot());
+        assertEquals(1, ((IVariable)autoconcat.getChildAt(1).getChildAt(0).getData()).getSlot());
+        assertEquals(0, ((IVariable)autoconcat.getChildAt(1).getChildAt(1).getData()).getSlot());
+        //Procs get their own scope, with the parameters first, and then @arguments
+        ParseTree proc = autoconcat.getChildAt(2);
+        assertEquals(0, ((IVariable)proc.getChildAt(1).getData()).getSlot());
+        assertEquals(2, ((IVariable)proc.getChildAt(2).getChildAt(0).getData()).getSlot());
+    }
+    
+    @Test
+    public void testProcSlotsMatchRuntime() throws Exception{
+        ParseTree tree = MethodScriptCompiler.compile(MethodScriptCompiler.lex("assign(@c, 1) proc(_p, @a, assign(@b, @c), assign(@x, 1) msg(@arguments))", null));
+        ParseTree proc = tree.getChildAt(0).getChildAt(1);
+        assertEquals(0, ((IVariable)proc.getChildAt(1).getData()).getSlot());
+        assertEquals(1, ((IVariable)proc.getChildAt(2).getChildAt(0).getData()).getSlot());
+        //The default value is evaluated where the proc is defined
+        assertEquals(0, ((IVariable)proc.getChildAt(2).getChildAt(1).getData()).getSlot());
+        ParseTree body = proc.getChildAt(3);
+        assertEquals(3, ((IVariable)body.getChildAt(0).getChildAt(0).getData()).getSlot());
+        assertEquals(2, ((IVariable)body.getChildAt(1).getChildAt(0).getData()).getSlot());
+    }
+    
     //TODO: Once the lexer is rewritten, this should work
 //    @Test
 //    public void testAssignmentWithEquals1() throws ConfigCompileException{
@@ -0,0 +1,34 @@
+package com.laytonsmith.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+/**
+ *
+ * @author Layton
+ */
+public class PermissionCacheTest {
+
+    @Test
+    public void testInvalidation() {
+        PermissionCache.Put("player", "world", "func", "label", true);
+        PermissionCache.Put("player2", "world", "func", "label", false);
+        assertEquals(true, PermissionCache.Get("player", "world", "func", "label"));
+        assertNull(PermissionCache.Get("player", "world_nether", "func", "label"));
+        PermissionCache.Invalidate("player");
+        assertNull(PermissionCache.Get("player", "world", "func", "label"));
+        assertEquals(false, PermissionCache.Get("player2", "world", "func", "label"));
+        PermissionCache.Clear();
+        assertNull(PermissionCache.Get("player2", "world", "func", "label"));
+    }
+
+    @Test
+    public void testNodes() {
+        assertArrayEquals(new String[]{"ch.func.use.func", "commandhelper.func.use.func"}, PermissionCache.FunctionNodes("func"));
+        assertArrayEquals(new String[]{"ch.alias.label", "commandhelper.alias.label"}, PermissionCache.LabelNodes("label"));
+        assertArrayEquals(new String[]{"custom.node"}, PermissionCache.LabelNodes("custom.node"));
+        assertArrayEquals(new String[]{"group1", "group2"}, PermissionCache.LabelNodes("~group1/group2"));
+    }
+}
@@ -73,6 +73,20 @@ public class GeneralTest {
         verify(fakePlayer).sendMessage("success");
     }
     
+    @Test
+    public void testUnbindUpdatesIndex() throws ConfigCompileException{
+        SRun("assign(@id, bind(player_join, null, null, @event, msg('first')))"
+                + " bind(player_join, null, null, @event, msg('second'))"
+                + " unbind(@id)", null);
+        
+        MCPlayerJoinEvent mcpje = mock(MCPlayerJoinEvent.class);        
+        when(mcpje.getPlayer()).thenReturn(fakePlayer);
+        EventUtils.TriggerListener(Driver.PLAYER_JOIN, "player_join", mcpje);
+        
+        verify(fakePlayer).sendMessage("second");
+        verify(fakePlayer, Mockito.never()).sendMessage("first");
+    }
+    
     //This is an invalid test. It's working as expected, because the proc is not in scope
     //When the event is run.
 //    @Test 
@@ -4,11 +4,15 @@ package com.laytonsmith.core.events;
 
 import com.laytonsmith.core.constructs.Construct;
 import com.laytonsmith.core.events.Prefilters.PrefilterType;
-import com.laytonsmith.core.exceptions.PrefilterNonMatchException;
+import com.laytonsmith.core.exceptions.ConfigRuntimeException;
+import com.laytonsmith.core.functions.Exceptions.ExceptionType;
 import com.laytonsmith.testing.C;
 import java.util.HashMap;
 import java.util.Map;
 import org.junit.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 /**
@@ -43,107 +47,82 @@ public class PrefiltersTest {
     public void testRegexMatch() {
         Map<String, Construct> map = new HashMap<String, Construct>();
         map.put("x", C.String("/1|2|3/"));
-        try {
-            Prefilters.match(map, "x", C.Int(2), PrefilterType.REGEX);
-        } catch (PrefilterNonMatchException e) {
-            fail("Expected a match here");
-        }
-        try {
-            Prefilters.match(map, "x", C.Int(4), PrefilterType.REGEX);
-            fail("Did not expect a match here");
-        } catch (PrefilterNonMatchException e) {
-        }
+        assertTrue("Expected a match here", Prefilters.match(map, "x", C.Int(2), PrefilterType.REGEX));
+        assertFalse("Did not expect a match here", Prefilters.match(map, "x", C.Int(4), PrefilterType.REGEX));
     }
 
     @Test
     public void testItemMatch() {
         Map<String, Construct> map = new HashMap<String, Construct>();
         map.put("x", C.String("35:2"));
-        try {
-            Prefilters.match(map, "x", "35:4", PrefilterType.ITEM_MATCH);
-        } catch (PrefilterNonMatchException e) {
-            fail("Expected a match here");
-        }
-        try {
-            Prefilters.match(map, "x", "35", PrefilterType.ITEM_MATCH);
-        } catch (PrefilterNonMatchException e) {
-            fail("Expected a match here");
-        }
-        try {
-            Prefilters.match(map, "x", "36:2", PrefilterType.ITEM_MATCH);
-            fail("Did not expect a match here");
-        } catch (PrefilterNonMatchException e) {
-        }
+        assertTrue("Expected a match here", Prefilters.match(map, "x", "35:4", PrefilterType.ITEM_MATCH));
+        assertTrue("Expected a match here", Prefilters.match(map, "x", "35", PrefilterType.ITEM_MATCH));
+        assertFalse("Did not expect a match here", Prefilters.match(map, "x", "36:2", PrefilterType.ITEM_MATCH));
 
     }
 
+    @Test
+    public void testColonOnlyPrefilter() {
+        Map<String, Construct> map = new HashMap<String, Construct>();
+        map.put("x", C.String(":"));
+        Map<String, Construct> compiled = Prefilters.Compile(map);
+        assertTrue("Expected a match here", Prefilters.match(compiled, "x", ":", PrefilterType.STRING_MATCH));
+        assertTrue("Expected a match here", Prefilters.match(compiled, "x", ":3", PrefilterType.ITEM_MATCH));
+        assertFalse("Did not expect a match here", Prefilters.match(compiled, "x", "35:2", PrefilterType.ITEM_MATCH));
+    }
+
     @Test
     public void testStringMatch() {
         Map<String, Construct> map = new HashMap<String, Construct>();
         map.put("x", C.String("test"));
-        try {
-            Prefilters.match(map, "x", "test", PrefilterType.STRING_MATCH);
-        } catch (PrefilterNonMatchException e) {
-            fail("Expected a match here");
-        }
-        try {
-            Prefilters.match(map, "x", "nope", PrefilterType.STRING_MATCH);
-            fail("Did not expect a match here");
-        } catch (PrefilterNonMatchException e) {
-        }
+        assertTrue("Expected a match here", Prefilters.match(map, "x", "test", PrefilterType.STRING_MATCH));
+        assertFalse("Did not expect a match here", Prefilters.match(map, "x", "nope", PrefilterType.STRING_MATCH));
     }
     
     @Test public void testMathMatch(){
         Map<String, Construct> map = new HashMap<String, Construct>();
         map.put("x", C.String("2"));
-        try {
-            Prefilters.match(map, "x", "2.0", PrefilterType.MATH_MATCH);
-        } catch (PrefilterNonMatchException e) {
-            fail("Expected a match here");
-        }
-        try {
-            Prefilters.match(map, "x", "2.00001", PrefilterType.MATH_MATCH);
-            fail("Did not expect a match here");
-        } catch (PrefilterNonMatchException e) {
-        }
+        assertTrue("Expected a match here", Prefilters.match(map, "x", "2.0", PrefilterType.MATH_MATCH));
+        assertFalse("Did not expect a match here", Prefilters.match(map, "x", "2.00001", PrefilterType.MATH_MATCH));
     }
     
     @Test public void testExpressionMatch(){
         Map<String, Construct> map = new HashMap<String, Construct>();
         map.put("x", C.String("(x > 4)"));
-        try {
-            Prefilters.match(map, "x", "5", PrefilterType.EXPRESSION);
-        } catch (PrefilterNonMatchException e) {
-            fail("Expected a match here");
-        }
-        try {
-            Prefilters.match(map, "x", "4", PrefilterType.EXPRESSION);
-            fail("Did not expect a match here");
-        } catch (PrefilterNonMatchException e) {
-        }
+        assertTrue("Expected a match here", Prefilters.match(map, "x", "5", PrefilterType.EXPRESSION));
+        assertFalse("Did not expect a match here", Prefilters.match(map, "x", "4", PrefilterType.EXPRESSION));
         
         map.put("x", C.String("(x == 5)"));
-        try {
-            Prefilters.match(map, "x", "5", PrefilterType.EXPRESSION);
-        } catch (PrefilterNonMatchException e) {
-            fail("Expected a match here");
-        }
-        try {
-            Prefilters.match(map, "x", "4", PrefilterType.EXPRESSION);
-            fail("Did not expect a match here");
-        } catch (PrefilterNonMatchException e) {
-        }
+        assertTrue("Expected a match here", Prefilters.match(map, "x", "5", PrefilterType.EXPRESSION));
+        assertFalse("Did not expect a match here", Prefilters.match(map, "x", "4", PrefilterType.EXPRESSION));
         
         map.put("x", C.String("(2 + 3)"));
-        try {
-            Prefilters.match(map, "x", "5", PrefilterType.EXPRESSION);
-        } catch (PrefilterNonMatchException e) {
-            fail("Expected a match here");
-        }
-        try {
-            Prefilters.match(map, "x", "4", PrefilterType.EXPRESSION);
-            fail("Did not expect a match here");
-        } catch (PrefilterNonMatchException e) {
+        assertTrue("Expected a match here", Prefilters.match(map, "x", "5", PrefilterType.EXPRESSION));
+        assertFalse("Did not expect a match here", Prefilters.match(map, "x", "4", PrefilterType.EXPRESSION));
+    }
+    
+    @Test public void testExpressionMatchNonNumeric(){
+        Map<String, Construct> map = new HashMap<String, Construct>();
+        map.put("x", C.String("(x > 4)"));
+        try{
+            Prefilters.match(map, "x", "five", PrefilterType.EXPRESSION);
+            fail("Expected a FormatException");
+        } catch(ConfigRuntimeException e){
+            assertEquals(ExceptionType.FormatException, e.getExceptionType());
         }
     }
+    
+    @Test public void testCompiledMatch(){
+        Map<String, Construct> map = new HashMap<String, Construct>();
+        map.put("x", C.String("/1|2|3/"));
+        map.put("y", C.String("(y > 4)"));
+        map.put("z", C.String("35:2"));
+        Map<String, Construct> compiled = Prefilters.Compile(map);
+        assertTrue("Expected a match here", Prefilters.match(compiled, "x", C.Int(2), PrefilterType.MACRO));
+        assertFalse("Did not expect a match here", Prefilters.match(compiled, "x", C.Int(4), PrefilterType.MACRO));
+        assertTrue("Expected a match here", Prefilters.match(compiled, "y", "5", PrefilterType.EXPRESSION));
+        assertFalse("Did not expect a match here", Prefilters.match(compiled, "y", "4", PrefilterType.EXPRESSION));
+        assertTrue("Expected a match here", Prefilters.match(compiled, "z", "35", PrefilterType.ITEM_MATCH));
+        assertTrue("Expected a match here", Prefilters.match(compiled, "unset", "anything", PrefilterType.STRING_MATCH));
+    }
 }
@@ -127,6 +127,14 @@ public class DataHandlingTest {
         verify(fakePlayer).sendMessage("2");
     }
 
+    @Test(timeout = 10000)
+    public void testForeachAssociative() throws ConfigCompileException{
+        SRun("assign(@a, array(a: 1, b: 2, c: 3)) foreach(@a, @i, if(equals(@i, 1), array_remove(@a, 'b')) msg(@i))", fakePlayer);
+        verify(fakePlayer).sendMessage("1");
+        verify(fakePlayer, never()).sendMessage("2");
+        verify(fakePlayer).sendMessage("3");
+    }
+
     @Test(timeout = 10000)
     public void testCallProcIsProc() throws ConfigCompileException {
         when(fakePlayer.isOp()).thenReturn(true);
@@ -0,0 +1,81 @@
+package com.laytonsmith.persistance;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author lsmith
+ */
+public class DataSourceModelTest {
+
+	private static List<String> keys(Iterator<String[]> it) {
+		List<String> keys = new ArrayList<String>();
+		while (it.hasNext()) {
+			StringBuilder b = new StringBuilder();
+			for (String part : it.next()) {
+				b.append(b.length() == 0 ? "" : ".").append(part);
+			}
+			keys.add(b.toString());
+		}
+		return keys;
+	}
+
+	@Test
+	public void testManyChildren() {
+		DataSourceModel model = new DataSourceModel((Map<String, Object>) null);
+		for (int i = 0; i < 50000; i++) {
+			model.set(new String[]{"player", Integer.toString(i), "name"}, "name" + i);
+		}
+		assertEquals("name1234", model.get(new String[]{"player", "1234", "name"}));
+		assertNull(model.get(new String[]{"player", "50000", "name"}));
+		assertNull(model.get(new String[]{"player", "1234"}));
+		assertEquals(50000, model.keySet().size());
+		assertEquals(1, keys(model.keyIterator(new String[]{"player", "1234"})).size());
+	}
+
+	@Test
+	public void testNamespace() {
+		DataSourceModel model = new DataSourceModel((Map<String, Object>) null);
+		model.set(new String[]{"a", "b"}, "1");
+		model.set(new String[]{"a", "b", "c"}, "2");
+		model.set(new String[]{"a", "bc"}, "3");
+		model.set(new String[]{"z"}, "4");
+		List<String> ns = keys(model.keyIterator(new String[]{"a", "b"}));
+		assertEquals(2, ns.size());
+		assertTrue(ns.contains("a.b"));
+		assertTrue(ns.contains("a.b.c"));
+		assertEquals(4, keys(model.keyIterator(new String[0])).size());
+		assertTrue(keys(model.keyIterator(new String[]{"nope"})).isEmpty());
+	}
+
+	@Test
+	public void testClearRemovesChildren() {
+		DataSourceModel model = new DataSourceModel((Map<String, Object>) null);
+		model.set(new String[]{"a", "b"}, "1");
+		model.set(new String[]{"a", "b", "c"}, "2");
+		model.clearKey(new String[]{"a", "b"});
+		assertNull(model.get(new String[]{"a", "b", "c"}));
+		model.clearKey(new String[]{"x", "y"});
+		assertFalse(model.toMap().containsKey("x"));
+	}
+
+	@Test
+	public void testMapRoundTrip() {
+		Map<String, Object> inner = new HashMap<String, Object>();
+		inner.put("_", "1");
+		inner.put("c", "2");
+		Map<String, Object> map = new HashMap<String, Object>();
+		map.put("b", inner);
+		map.put("d", "3");
+		DataSourceModel model = new DataSourceModel(map);
+		assertEquals("1", model.get(new String[]{"b"}));
+		assertEquals("2", model.get(new String[]{"b", "c"}));
+		assertEquals(map, model.toMap());
+	}
+}
@@ -4,12 +4,16 @@ import com.laytonsmith.PureUtilities.FileUtility;
 import com.laytonsmith.PureUtilities.StringUtils;
 import com.laytonsmith.PureUtilities.Util;
 import com.laytonsmith.PureUtilities.ZipReader;
+import com.laytonsmith.database.ConnectionPool;
 import com.laytonsmith.persistance.io.ConnectionMixinFactory;
 import com.laytonsmith.persistance.io.ReadWriteFileConnection;
 import static com.laytonsmith.testing.StaticTest.*;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -157,6 +161,21 @@ public class TestPersistance {
 		assertEquals("yml://yes.yml", getConnection("a.b.c.d", "a.b.(c).(*)=yml://yes.yml", "a.b.**=yml://no.yml"));
 	}
 
+	@Test
+	public void testMatchManyFilters() throws Exception {
+		List<String> mapping = new ArrayList<String>();
+		for (int i = 0; i < 60; i++) {
+			mapping.add("rule" + i + ".**=yml://rule" + i + ".yml");
+		}
+		mapping.add("*.special=yml://special.yml");
+		mapping.add("(*).players.(*)=yml://$1-$2.yml");
+		String[] m = mapping.toArray(new String[mapping.size()]);
+		assertEquals("yml://rule42.yml", getConnection("rule42.a.b", m));
+		assertEquals("yml://special.yml", getConnection("rule42.special", m));
+		assertEquals("yml://rule42-bob.yml", getConnection("rule42.players.bob", m));
+		assertEquals("", getConnection("rule420", m));
+	}
+
 	@Test
 	public void testMatchCapture1() throws Exception {
 		assertEquals("yml://yes.yml", getConnection("a.b.yes", "a.b.(*)=yml://$1.yml"));
@@ -201,6 +220,210 @@ public class TestPersistance {
 		deleteFiles("folder/");
 	}
 
+	@Test
+	public void testSerializedWriteBehind() throws Exception {
+		File db = new File("writebehind.ser");
+		toDelete.add(db);
+		SerializedPersistance p = new SerializedPersistance(db);
+		p.setWriteBehind(60000, 0);
+		p.setValue(new String[]{"a", "b"}, "value1");
+		assertFalse("Value should not have been written yet", db.exists());
+		p.close();
+		assertTrue(db.exists());
+		assertFalse(new File("writebehind.ser.tmp").exists());
+		assertEquals("value1", new SerializedPersistance(db).getValue(new String[]{"a", "b"}));
+	}
+
+	@Test
+	public void testSerializedWriteBehindRetriesFailedWrites() throws Exception {
+		File db = new File("writebehindretry.ser");
+		toDelete.add(db);
+		//A non empty directory in the way of the database makes the write fail
+		File blocker = new File(db, "blocker");
+		db.mkdirs();
+		blocker.createNewFile();
+		SerializedPersistance p = new SerializedPersistance(db);
+		p.setWriteBehind(50, 1);
+		p.setValue(new String[]{"a", "b"}, "value1");
+		Thread.sleep(200);
+		blocker.delete();
+		db.delete();
+		//The failed change is still pending, so the write behind thread tries it again
+		for (int i = 0; i < 40 && !db.isFile(); i++) {
+			Thread.sleep(50);
+		}
+		assertTrue(db.isFile());
+		p.close();
+		assertEquals("value1", new SerializedPersistance(db).getValue(new String[]{"a", "b"}));
+	}
+
+	@Test
+	public void testSerializedFailedSaveIsReported() throws Exception {
+		File db = new File("failedsave.ser");
+		toDelete.add(db);
+		//A non empty directory in the way of the database makes the write fail
+		File blocker = new File(db, "blocker");
+		db.mkdirs();
+		blocker.createNewFile();
+		try {
+			SerializedPersistance p = new SerializedPersistance(db);
+			try {
+				p.setValue(new String[]{"a", "b"}, "value1");
+				fail("Expected the failed save to be reported");
+			} catch (IOException e) {
+				//Expected
+			}
+		} finally {
+			blocker.delete();
+		}
+	}
+
+	@Test
+	public void testSerializedNamespaceValues() throws Exception {
+		File db = new File("namespace.ser");
+		toDelete.add(db);
+		SerializedPersistance p = new SerializedPersistance(db);
+		p.setWriteBehind(60000, 0);
+		p.setValue(new String[]{"user", "bob", "aliases", "0"}, "alias0");
+		assertEquals(1, p.getNamespaceValues(new String[]{"user", "bob", "aliases"}).size());
+		p.setValue(new String[]{"user", "bob", "aliases", "1"}, "alias1");
+		p.setValue(new String[]{"user", "bobby", "aliases", "0"}, "other");
+		p.setValue(new String[]{"user", "bob-2", "aliases", "0"}, "other");
+		p.setValue(new String[]{"user", "bob"}, "self");
+		List<Map.Entry<String, Object>> values = p.getNamespaceValues(new String[]{"user", "bob"});
+		assertEquals(3, values.size());
+		for (Map.Entry<String, Object> e : values) {
+			assertTrue(e.getKey().equals("user.bob") || e.getKey().startsWith("user.bob.aliases."));
+		}
+		p.setValue(new String[]{"user", "bob", "aliases", "0"}, null);
+		assertEquals(1, p.getNamespaceValues(new String[]{"user", "bob", "aliases"}).size());
+		assertEquals(4, p.getNamespaceValues(new String[]{"user", ""}).size());
+		assertTrue(p.isNamespaceSet(new String[]{"user", "bobby"}));
+		assertFalse(p.isNamespaceSet(new String[]{"user", "bo"}));
+		p.close();
+	}
+
+	@Test
+	public void testLog() throws Exception {
+		PersistanceNetwork network = new PersistanceNetwork("**=log://folder/default.log", new URI("default"), options);
+		network.set(new String[]{"a", "b"}, "value 1\nwith \\ escapes");
+		network.set(new String[]{"key"}, "old");
+		network.set(new String[]{"key"}, "new");
+		network.set(new String[]{"gone"}, "value");
+		network.clearKey(new String[]{"gone"});
+		//A crash in the middle of a write leaves a partial record at the end
+		FileOutputStream out = new FileOutputStream(new File("folder/default.log"), true);
+		out.write("S partial".getBytes("UTF-8"));
+		out.close();
+		network = new PersistanceNetwork("**=log://folder/default.log", new URI("default"), options);
+		assertEquals("value 1\nwith \\ escapes", network.get(new String[]{"a", "b"}));
+		assertEquals("new", network.get(new String[]{"key"}));
+		assertFalse(network.hasKey(new String[]{"gone"}));
+		assertFalse(network.hasKey(new String[]{"partial"}));
+		network.set(new String[]{"after"}, "value");
+		network = new PersistanceNetwork("**=log://folder/default.log", new URI("default"), options);
+		assertEquals("value", network.get(new String[]{"after"}));
+		deleteFiles("folder/");
+	}
+
+	@Test
+	public void testLogCompaction() throws Exception {
+		PersistanceNetwork network = new PersistanceNetwork("**=log://folder/default.log", new URI("default"), options);
+		network.set(new String[]{"other"}, "value");
+		for (int i = 0; i < 1500; i++) {
+			network.set(new String[]{"key"}, "value" + i);
+		}
+		//Only the records written since the last compaction are left
+		String log = FileUtility.read(new File("folder/default.log"));
+		assertTrue(log.startsWith("G "));
+		assertTrue(log.split("\n").length < 1000);
+		network = new PersistanceNetwork("**=log://folder/default.log", new URI("default"), options);
+		assertEquals("value1499", network.get(new String[]{"key"}));
+		assertEquals("value", network.get(new String[]{"other"}));
+		deleteFiles("folder/");
+	}
+
+	@Test
+	public void testLogTransient() throws Exception {
+		PersistanceNetwork writer = new PersistanceNetwork("**=transient:log://folder/default.log", new URI("default"), options);
+		PersistanceNetwork reader = new PersistanceNetwork("**=transient:log://folder/default.log", new URI("default"), options);
+		writer.set(new String[]{"gone"}, "value");
+		assertEquals("value", reader.get(new String[]{"gone"}));
+		writer.clearKey(new String[]{"gone"});
+		for (int i = 0; i < 1500; i++) {
+			writer.set(new String[]{"key"}, "value" + i);
+		}
+		//The compacted log is longer than what the reader has read so far, and doesn't
+		//contain the removal, so the reader has to notice the compaction to see it
+		assertTrue(new File("folder/default.log").length() > 20);
+		assertEquals("value1499", reader.get(new String[]{"key"}));
+		assertFalse(reader.hasKey(new String[]{"gone"}));
+		reader.set(new String[]{"key"}, "from reader");
+		assertEquals("from reader", writer.get(new String[]{"key"}));
+		deleteFiles("folder/");
+	}
+
+	@Test
+	public void testSQLite() throws Exception {
+		PersistanceNetwork network = new PersistanceNetwork("**=sqlite://folder/default.db", new URI("default"), options);
+		assertTrue(network.set(new String[]{"a", "b"}, "value1"));
+		assertFalse(network.set(new String[]{"a", "b"}, "value1"));
+		assertTrue(network.set(new String[]{"a", "b"}, "value2"));
+		Map<String[], String> batch = new HashMap<String[], String>();
+		batch.put(new String[]{"a", "b", "c"}, "value3");
+		batch.put(new String[]{"a", "bc"}, "value4");
+		batch.put(new String[]{"A", "b", "d"}, "value5");
+		network.set(batch);
+		assertEquals("value2", network.get(new String[]{"a", "b"}));
+		assertEquals("value3", network.get(new String[]{"a", "b", "c"}));
+		Map<String[], String> ns = network.getNamespace(new String[]{"a", "b"});
+		assertEquals(2, ns.size());
+		for (String[] key : ns.keySet()) {
+			assertTrue(StringUtils.Join(key, ".").equals("a.b") || StringUtils.Join(key, ".").equals("a.b.c"));
+		}
+		network.clearKey(new String[]{"a", "b"});
+		assertFalse(network.hasKey(new String[]{"a", "b"}));
+		network = new PersistanceNetwork("**=sqlite://folder/default.db", new URI("default"), options);
+		assertEquals("value4", network.get(new String[]{"a", "bc"}));
+		ConnectionPool.CloseAll();
+		deleteFiles("folder/");
+	}
+
+	@Test
+	public void testConcurrentAccess() throws Exception {
+		final PersistanceNetwork network = new PersistanceNetwork("**=log://folder/default.log\nother.**=log://folder/other.log", new URI("default"), options);
+		final List<Throwable> errors = new ArrayList<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			//Half the threads write to each file
+			final String[] prefix = t % 2 == 0 ? new String[]{"other", "t" + t} : new String[]{"main", "t" + t};
+			threads.add(new Thread(new Runnable() {
+				public void run() {
+					try {
+						for (int i = 0; i < 100; i++) {
+							String[] key = new String[]{prefix[0], prefix[1], Integer.toString(i)};
+							network.set(key, Integer.toString(i));
+							assertEquals(Integer.toString(i), network.get(key));
+						}
+					} catch (Throwable e) {
+						synchronized (errors) {
+							errors.add(e);
+						}
+					}
+				}
+			}));
+		}
+		for (Thread t : threads) {
+			t.start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		assertTrue(errors.toString(), errors.isEmpty());
+		assertEquals(200, network.getNamespace(new String[]{"other"}).size());
+		deleteFiles("folder/");
+	}
+
 	@Test
 	public void testClearValue1() throws Exception {
 		PersistanceNetwork network = new PersistanceNetwork("**=json://folder/default.json", new URI("default"), options);
@@ -225,6 +448,25 @@ public class TestPersistance {
 		deleteFiles("folder/");
 	}
 	
+	@Test
+	public void testConnectionPoolTimeout() throws Exception {
+		Class.forName("org.sqlite.JDBC");
+		new File("folder").mkdirs();
+		ConnectionPool pool = new ConnectionPool("jdbc:sqlite:folder/pool.db", null, 1);
+		pool.setBorrowTimeout(100);
+		ConnectionPool.PooledConnection c = pool.borrow();
+		try {
+			pool.borrow();
+			fail("Expected the second borrow to time out");
+		} catch (SQLException e) {
+			//Expected
+		}
+		pool.release(c);
+		assertSame(c, pool.borrow());
+		pool.close();
+		deleteFiles("folder/");
+	}
+
 	@Test
 	public void testTransient() throws Exception{
 		PersistanceNetwork network = new PersistanceNetwork("**=transient:json://folder/default.json", new URI("default"), options);
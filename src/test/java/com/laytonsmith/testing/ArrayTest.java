@@ -4,6 +4,9 @@ package com.laytonsmith.testing;
 
 import com.laytonsmith.abstraction.MCPlayer;
 import com.laytonsmith.core.Static;
+import com.laytonsmith.core.constructs.CArray;
+import com.laytonsmith.core.constructs.CEntry;
+import com.laytonsmith.core.constructs.Target;
 import com.laytonsmith.core.exceptions.ConfigCompileException;
 import com.laytonsmith.core.exceptions.ConfigRuntimeException;
 import com.laytonsmith.persistance.DataSourceException;
@@ -375,5 +378,49 @@ public class ArrayTest {
         SRun("msg(array(0, 1, 2)[0])", fakePlayer);
         verify(fakePlayer).sendMessage("0");
     }
+    
+    @Test public void testCopyOnWriteIsolation(){
+        CArray template = new CArray(Target.UNKNOWN);
+        template.set("key", "value");
+        template.set("nested", new CArray(Target.UNKNOWN, C.Int(1), C.Int(2)));
+        CArray view1 = template.copyOnWrite();
+        CArray view2 = template.copyOnWrite();
+        view1.set("key", "changed");
+        ((CArray)view1.get("nested")).push(C.Int(3));
+        assertEquals("{key: changed, nested: {1, 2, 3}}", view1.val());
+        assertEquals("{key: value, nested: {1, 2}}", view2.val());
+        assertEquals("{key: value, nested: {1, 2}}", template.val());
+    }
+    
+    @Test public void testCopyOnWriteReadsShareIdentity(){
+        CArray template = new CArray(Target.UNKNOWN);
+        template.set("key", "value");
+        template.set("nested", new CArray(Target.UNKNOWN, C.Int(1), C.Int(2)));
+        CArray view = template.copyOnWrite();
+        CArray nested = (CArray)view.get("nested");
+        assertSame(nested, view.get("nested"));
+        //Writing to the parent after the nested array was handed out keeps the same nested array
+        view.set("key", "changed");
+        nested.push(C.Int(3));
+        assertSame(nested, view.get("nested"));
+        assertEquals("{key: changed, nested: {1, 2, 3}}", view.val());
+        assertEquals("{key: value, nested: {1, 2}}", template.val());
+    }
+    
+    @Test public void testAssociativePush(){
+        CArray array = new CArray(Target.UNKNOWN);
+        array.set("key", "value");
+        for(int i = 0; i < 10000; i++){
+            array.push(C.Int(i));
+        }
+        assertEquals(10001, array.size());
+        assertEquals("9999", array.get(10000).val());
+        array.remove(C.Int(10000));
+        array.push(C.String("again"));
+        assertEquals("again", array.get(10000).val());
+        assertEquals("{-1: negative, 1: 0, 2: 1, 3: 2}", new CArray(Target.UNKNOWN, 
+                new CEntry(C.String("-1"), C.String("negative"), Target.UNKNOWN),
+                new CEntry(C.String("1"), C.Int(0), Target.UNKNOWN), C.Int(1), C.Int(2)).val());
+    }
 
 }